@@ -0,0 +1,86 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import java.net.SocketAddress;
+
+import org.jboss.netty.channel.AbstractChannel;
+import org.jboss.netty.channel.AbstractChannelSink;
+import org.jboss.netty.channel.ChannelConfig;
+import org.jboss.netty.channel.ChannelEvent;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelState;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.DefaultChannelConfig;
+import org.jboss.netty.channel.local.LocalAddress;
+
+/**
+ * A connected, in-memory channel which drops all downstream events except close requests.
+ * Used to drive pipelines in benchmarks without any I/O.
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+final class BenchmarkChannel extends AbstractChannel {
+
+    private static final SocketAddress ADDRESS = new LocalAddress("benchmark");
+    
+    private final ChannelConfig config = new DefaultChannelConfig();
+    
+    BenchmarkChannel(ChannelPipeline pipeline) {
+        super(null, null, pipeline, new AbstractChannelSink() {
+            
+            @Override
+            public void eventSunk(ChannelPipeline pipeline, ChannelEvent event) {
+                if (event instanceof ChannelStateEvent) {
+                    final ChannelStateEvent stateEvent = ChannelStateEvent.class.cast(event);
+                    if (stateEvent.getState() == ChannelState.OPEN && Boolean.FALSE.equals(stateEvent.getValue())) {
+                        BenchmarkChannel.class.cast(event.getChannel()).setClosed();
+                    }
+                }
+                event.getFuture().setSuccess();
+            }
+            
+        });
+    }
+    
+    @Override
+    public ChannelConfig getConfig() {
+        return config;
+    }
+    
+    @Override
+    public boolean isBound() {
+        return true;
+    }
+    
+    @Override
+    public boolean isConnected() {
+        return true;
+    }
+    
+    @Override
+    public SocketAddress getLocalAddress() {
+        return ADDRESS;
+    }
+    
+    @Override
+    public SocketAddress getRemoteAddress() {
+        return ADDRESS;
+    }
+    
+}
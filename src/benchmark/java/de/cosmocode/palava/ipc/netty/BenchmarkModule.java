@@ -0,0 +1,93 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.Channels;
+
+import com.google.common.collect.ImmutableList;
+import com.google.inject.Binder;
+import com.google.inject.Module;
+import com.google.inject.Provides;
+import com.google.inject.Singleton;
+import com.google.inject.TypeLiteral;
+
+import de.cosmocode.palava.core.Registry;
+import de.cosmocode.palava.ipc.IpcConnectionCreateEvent;
+import de.cosmocode.palava.ipc.IpcConnectionDestroyEvent;
+import de.cosmocode.palava.ipc.protocol.Protocol;
+
+/**
+ * Binds everything a server channel factory and a {@link ChannelPipelineFactoryModule} need
+ * without booting a framework. The provided pipeline frames messages using a {@link FramingDecoder}
+ * and a {@link FramingEncoder} without checksums and answers every request with an echo.
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+final class BenchmarkModule implements Module {
+
+    static final int MAX_FRAME_LENGTH = 1024 * 1024;
+    
+    private final Module transport;
+    
+    BenchmarkModule(Module transport) {
+        this.transport = transport;
+    }
+    
+    @Override
+    public void configure(Binder binder) {
+        binder.bind(ExecutorService.class).annotatedWith(Boss.class).toInstance(Executors.newCachedThreadPool());
+        binder.bind(ExecutorService.class).annotatedWith(Worker.class).toInstance(Executors.newCachedThreadPool());
+        binder.install(transport);
+        
+        binder.bind(IpcConnectionCreateEvent.class).annotatedWith(Registry.Proxy.class).toInstance(
+            Benchmarks.noop(IpcConnectionCreateEvent.class));
+        binder.bind(IpcConnectionDestroyEvent.class).annotatedWith(Registry.SilentProxy.class).toInstance(
+            Benchmarks.noop(IpcConnectionDestroyEvent.class));
+        binder.install(new DefaultConnectionManagerModule());
+        
+        binder.bind(new TypeLiteral<Iterable<Protocol>>() { }).toInstance(
+            ImmutableList.of(Benchmarks.echo(ChannelBuffer.class)));
+        binder.bind(ProtocolHandler.class).in(Singleton.class);
+        
+        binder.install(new ChannelPipelineFactoryModule());
+    }
+    
+    /**
+     * Provides a framed, echoing pipeline.
+     * 
+     * @since 2.0
+     * @param manager the connection manager
+     * @param handler the protocol handler
+     * @return a new {@link ChannelPipeline}
+     */
+    @Provides
+    ChannelPipeline provideChannelPipeline(ConnectionManager manager, ProtocolHandler handler) {
+        return Channels.pipeline(
+            new FramingDecoder(MAX_FRAME_LENGTH, false),
+            new FramingEncoder(MAX_FRAME_LENGTH, false),
+            manager,
+            handler
+        );
+    }
+    
+}
@@ -0,0 +1,104 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import de.cosmocode.palava.ipc.protocol.Protocol;
+
+/**
+ * Static utility class for benchmarks.
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+final class Benchmarks {
+
+    private Benchmarks() {
+        
+    }
+    
+    /**
+     * Creates an implementation of the given interface which ignores all calls.
+     * 
+     * @since 2.0
+     * @param <T> the generic interface type
+     * @param type the interface class
+     * @return a new no-op instance of type
+     */
+    static <T> T noop(Class<T> type) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, new InvocationHandler() {
+            
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getDeclaringClass() == Object.class) {
+                    return identity(proxy, method, args);
+                } else {
+                    return null;
+                }
+            }
+            
+        }));
+    }
+    
+    /**
+     * Creates a {@link Protocol} which supports all requests of the given type
+     * and answers each request with the request itself.
+     * 
+     * @since 2.0
+     * @param type the supported request type
+     * @return a new echoing protocol
+     */
+    static Protocol echo(final Class<?> type) {
+        return Protocol.class.cast(Proxy.newProxyInstance(Protocol.class.getClassLoader(), 
+            new Class<?>[] {Protocol.class}, new InvocationHandler() {
+            
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    if (method.getDeclaringClass() == Object.class) {
+                        return identity(proxy, method, args);
+                    } else if ("supports".equals(method.getName())) {
+                        return type.isInstance(args[0]);
+                    } else if ("process".equals(method.getName())) {
+                        return args[0];
+                    } else {
+                        // onError
+                        return args[1];
+                    }
+                }
+                
+                @Override
+                public String toString() {
+                    return "EchoProtocol(" + type.getSimpleName() + ")";
+                }
+                
+            }));
+    }
+    
+    private static Object identity(Object proxy, Method method, Object[] args) {
+        if ("equals".equals(method.getName())) {
+            return proxy == args[0];
+        } else if ("hashCode".equals(method.getName())) {
+            return System.identityHashCode(proxy);
+        } else {
+            return Proxy.getInvocationHandler(proxy).toString();
+        }
+    }
+    
+}
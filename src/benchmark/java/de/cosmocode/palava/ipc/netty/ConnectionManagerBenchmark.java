@@ -0,0 +1,156 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.SimpleChannelHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import de.cosmocode.palava.ipc.IpcConnectionCreateEvent;
+import de.cosmocode.palava.ipc.IpcConnectionDestroyEvent;
+import de.cosmocode.palava.ipc.protocol.DetachedConnection;
+
+/**
+ * Compares the {@link ConnectionManager} implementations, both for per request
+ * lookups and for connection churn, using pipelines of realistic length.
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class ConnectionManagerBenchmark {
+
+    private static final int CHANNELS = 1024;
+    
+    // codecs and stages which precede the manager when all stages are enabled
+    private static final int HANDLERS = 12;
+    
+    @Param({"default", "channel-local"})
+    private String manager;
+    
+    private ConnectionManager unit;
+    
+    private Channel[] channels;
+    
+    /**
+     * Connects {@link #CHANNELS} channels.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        final IpcConnectionCreateEvent createEvent = Benchmarks.noop(IpcConnectionCreateEvent.class);
+        final IpcConnectionDestroyEvent destroyEvent = Benchmarks.noop(IpcConnectionDestroyEvent.class);
+        if ("default".equals(manager)) {
+            unit = new DefaultConnectionManager(createEvent, destroyEvent);
+        } else {
+            unit = new ChannelLocalConnectionManager(createEvent, destroyEvent);
+        }
+        
+        channels = new Channel[CHANNELS];
+        for (int i = 0; i < CHANNELS; i++) {
+            channels[i] = connect();
+        }
+    }
+    
+    private Channel connect() {
+        final ChannelPipeline pipeline = Channels.pipeline();
+        for (int i = 0; i < HANDLERS; i++) {
+            pipeline.addLast("handler-" + i, new SimpleChannelHandler());
+        }
+        pipeline.addLast("connection-manager", unit);
+        final Channel channel = new BenchmarkChannel(pipeline);
+        Channels.fireChannelConnected(channel, channel.getRemoteAddress());
+        return channel;
+    }
+    
+    /**
+     * State of a benchmark thread.
+     *
+     * @since 2.0
+     * @author Willi Schoenborn
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        
+        private int index;
+        
+        private int next() {
+            index = (index + 1) & (CHANNELS - 1);
+            return index;
+        }
+        
+    }
+    
+    /**
+     * Looks up the connection of a connected channel.
+     * 
+     * @param cursor the per thread cursor
+     * @return the connection
+     */
+    @Benchmark
+    public DetachedConnection lookup(Cursor cursor) {
+        return unit.get(channels[cursor.next()]);
+    }
+    
+    /**
+     * Connects and closes a channel.
+     * 
+     * @return the closed channel
+     */
+    @Benchmark
+    public Channel churn() {
+        final Channel channel = connect();
+        channel.close();
+        Channels.fireChannelClosed(channel);
+        return channel;
+    }
+    
+    /**
+     * Runs this benchmark.
+     * 
+     * @param args ignored
+     * @throws RunnerException if the benchmark failed
+     */
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ConnectionManagerBenchmark.class.getSimpleName()).build()).run();
+    }
+    
+}
@@ -0,0 +1,121 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.ChannelDownstreamHandler;
+import org.jboss.netty.handler.codec.embedder.DecoderEmbedder;
+import org.jboss.netty.handler.codec.embedder.EncoderEmbedder;
+import org.jboss.netty.handler.codec.frame.LengthFieldBasedFrameDecoder;
+import org.jboss.netty.handler.codec.frame.LengthFieldPrepender;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the {@link FramingDecoder} with netty's {@link LengthFieldBasedFrameDecoder},
+ * decoding a received buffer containing {@link #FRAMES} frames.
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FramingBenchmark {
+
+    static final int FRAMES = 16;
+    
+    @Param({"netty", "framing", "framing-crc"})
+    private String codec;
+    
+    @Param({"64", "4096"})
+    private int payloadSize;
+    
+    private DecoderEmbedder<ChannelBuffer> decoder;
+    
+    private ChannelBuffer received;
+    
+    /**
+     * Encodes the received buffer and creates the decoder.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        final boolean checksum = "framing-crc".equals(codec);
+        final ChannelDownstreamHandler encoder;
+        if ("netty".equals(codec)) {
+            decoder = new DecoderEmbedder<ChannelBuffer>(
+                new LengthFieldBasedFrameDecoder(BenchmarkModule.MAX_FRAME_LENGTH, 0, 4, 0, 4));
+            encoder = new LengthFieldPrepender(4);
+        } else {
+            decoder = new DecoderEmbedder<ChannelBuffer>(
+                new FramingDecoder(BenchmarkModule.MAX_FRAME_LENGTH, checksum));
+            encoder = new FramingEncoder(BenchmarkModule.MAX_FRAME_LENGTH, checksum);
+        }
+        
+        final EncoderEmbedder<ChannelBuffer> embedder = new EncoderEmbedder<ChannelBuffer>(encoder);
+        received = ChannelBuffers.dynamicBuffer();
+        for (int i = 0; i < FRAMES; i++) {
+            embedder.offer(ChannelBuffers.wrappedBuffer(new byte[payloadSize]));
+            received.writeBytes(embedder.poll());
+        }
+    }
+    
+    /**
+     * Decodes all frames of one received buffer.
+     * 
+     * @return the number of payload bytes
+     */
+    @Benchmark
+    public int decode() {
+        decoder.offer(received.duplicate());
+        int bytes = 0;
+        for (ChannelBuffer frame = decoder.poll(); frame != null; frame = decoder.poll()) {
+            bytes += frame.readableBytes();
+        }
+        return bytes;
+    }
+    
+    /**
+     * Runs this benchmark.
+     * 
+     * @param args ignored
+     * @throws RunnerException if the benchmark failed
+     */
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(FramingBenchmark.class.getSimpleName()).build()).run();
+    }
+    
+}
@@ -0,0 +1,114 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferOutputStream;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares serializing a response through a {@link ChannelBufferOutputStream} on a dynamic buffer
+ * with a {@link ChunkedChannelBufferOutputStream}, writing in small pieces like typical encoders do.
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OutputStreamBenchmark {
+
+    @Param({"1024", "65536", "1048576"})
+    private int size;
+    
+    private final byte[] piece = new byte[100];
+    
+    /**
+     * Fills the written piece.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        for (int i = 0; i < piece.length; i++) {
+            piece[i] = (byte) i;
+        }
+    }
+    
+    private void write(OutputStream stream) throws IOException {
+        for (int written = 0; written < size; written += piece.length) {
+            stream.write(piece);
+        }
+    }
+    
+    /**
+     * Writes into a dynamic buffer.
+     * 
+     * @return the written buffer
+     * @throws IOException should not happen
+     */
+    @Benchmark
+    public ChannelBuffer dynamic() throws IOException {
+        final ChannelBufferOutputStream stream = new ChannelBufferOutputStream(ChannelBuffers.dynamicBuffer());
+        write(stream);
+        return stream.buffer();
+    }
+    
+    /**
+     * Writes into chunks.
+     * 
+     * @return the written buffer
+     * @throws IOException should not happen
+     */
+    @Benchmark
+    public ChannelBuffer chunked() throws IOException {
+        final ChunkedChannelBufferOutputStream stream = new ChunkedChannelBufferOutputStream();
+        write(stream);
+        return stream.buffer();
+    }
+    
+    /**
+     * Runs this benchmark.
+     * 
+     * @param args ignored
+     * @throws RunnerException if the benchmark failed
+     */
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(OutputStreamBenchmark.class.getSimpleName()).build()).run();
+    }
+    
+}
@@ -0,0 +1,87 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelPipelineFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.google.inject.Guice;
+
+/**
+ * Measures pipeline creation through the {@link ChannelPipelineFactory}
+ * bound by {@link ChannelPipelineFactoryModule}, which happens once per accepted connection.
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PipelineFactoryBenchmark {
+
+    private ChannelPipelineFactory factory;
+    
+    /**
+     * Creates the pipeline factory.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        factory = Guice.createInjector(new BenchmarkModule(new LocalServerChannelFactoryModule())).getInstance(
+            ChannelPipelineFactory.class);
+    }
+    
+    /**
+     * Creates one pipeline.
+     * 
+     * @return the new pipeline
+     * @throws Exception if pipeline creation failed
+     */
+    @Benchmark
+    public ChannelPipeline create() throws Exception {
+        return factory.getPipeline();
+    }
+    
+    /**
+     * Runs this benchmark.
+     * 
+     * @param args ignored
+     * @throws RunnerException if the benchmark failed
+     */
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(PipelineFactoryBenchmark.class.getSimpleName()).build()).run();
+    }
+    
+}
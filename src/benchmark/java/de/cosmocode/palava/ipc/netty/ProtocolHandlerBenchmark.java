@@ -0,0 +1,118 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.Channels;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.google.common.collect.Lists;
+
+import de.cosmocode.palava.ipc.IpcConnectionCreateEvent;
+import de.cosmocode.palava.ipc.IpcConnectionDestroyEvent;
+import de.cosmocode.palava.ipc.protocol.Protocol;
+
+/**
+ * Measures the dispatch of a single request through a {@link ProtocolHandler},
+ * including protocol lookup, connection lookup and the response write.
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProtocolHandlerBenchmark {
+
+    /**
+     * The number of configured protocols, the request is only supported by the last one.
+     */
+    @Param({"1", "8", "32"})
+    private int protocols;
+    
+    /**
+     * Every n-th request is timed for the latency histogram.
+     */
+    @Param({"1", "64"})
+    private int latencySampleRate;
+    
+    private Channel channel;
+    
+    private final Object request = "request";
+    
+    /**
+     * Connects a channel to a pipeline consisting of a connection manager and a protocol handler.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        final List<Protocol> list = Lists.newArrayList();
+        for (int i = 1; i < protocols; i++) {
+            list.add(Benchmarks.echo(Long.class));
+        }
+        list.add(Benchmarks.echo(String.class));
+        
+        final ConnectionManager manager = new DefaultConnectionManager(
+            Benchmarks.noop(IpcConnectionCreateEvent.class), Benchmarks.noop(IpcConnectionDestroyEvent.class));
+        final ProtocolHandler handler = new ProtocolHandler(manager, list);
+        handler.setLatencySampleRate(latencySampleRate);
+        
+        channel = new BenchmarkChannel(Channels.pipeline(manager, handler));
+        Channels.fireChannelConnected(channel, channel.getRemoteAddress());
+    }
+    
+    /**
+     * Dispatches one request.
+     * 
+     * @return the channel
+     */
+    @Benchmark
+    public Channel dispatch() {
+        Channels.fireMessageReceived(channel, request);
+        return channel;
+    }
+    
+    /**
+     * Runs this benchmark.
+     * 
+     * @param args ignored
+     * @throws RunnerException if the benchmark failed
+     */
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ProtocolHandlerBenchmark.class.getSimpleName()).build()).run();
+    }
+    
+}
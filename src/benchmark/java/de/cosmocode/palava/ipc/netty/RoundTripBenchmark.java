@@ -0,0 +1,228 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.netty.bootstrap.ClientBootstrap;
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFactory;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelPipelineFactory;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.ServerChannelFactory;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.channel.local.DefaultLocalClientChannelFactory;
+import org.jboss.netty.channel.local.LocalAddress;
+import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
+import org.jboss.netty.handler.codec.frame.LengthFieldBasedFrameDecoder;
+import org.jboss.netty.handler.codec.frame.LengthFieldPrepender;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Module;
+
+import de.cosmocode.palava.core.lifecycle.Initializable;
+
+/**
+ * Measures synchronous request/response round trips against an echoing server,
+ * either over {@link LocalServerChannelFactoryModule}, the nio transport
+ * bound by {@link NioServerSocketChannelFactoryModule} or the blocking transport
+ * bound by {@link VirtualOioServerSocketChannelFactoryModule}.
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoundTripBenchmark {
+
+    /**
+     * The server side, shared by all benchmark threads.
+     *
+     * @since 2.0
+     * @author Willi Schoenborn
+     */
+    @State(Scope.Benchmark)
+    public static class Server {
+        
+        @Param({"local", "nio", "virtual-oio"})
+        private String transport;
+        
+        @Param({"64", "4096"})
+        private int payloadSize;
+        
+        private ServerChannelFactory serverFactory;
+        
+        private ChannelFactory clientFactory;
+        
+        private Channel channel;
+        
+        /**
+         * Binds the server.
+         * 
+         * @throws Exception if initializing the server channel factory failed
+         */
+        @Setup(Level.Trial)
+        public void bind() throws Exception {
+            final Module module;
+            final SocketAddress address;
+            
+            if ("local".equals(transport)) {
+                module = new LocalServerChannelFactoryModule();
+                address = new LocalAddress("benchmark-" + UUID.randomUUID());
+                clientFactory = new DefaultLocalClientChannelFactory();
+            } else if ("virtual-oio".equals(transport)) {
+                module = new VirtualOioServerSocketChannelFactoryModule();
+                address = new InetSocketAddress("127.0.0.1", 0);
+                clientFactory = new NioClientSocketChannelFactory(
+                    Executors.newCachedThreadPool(), Executors.newCachedThreadPool());
+            } else {
+                module = new NioServerSocketChannelFactoryModule();
+                address = new InetSocketAddress("127.0.0.1", 0);
+                clientFactory = new NioClientSocketChannelFactory(
+                    Executors.newCachedThreadPool(), Executors.newCachedThreadPool());
+            }
+            
+            final Injector injector = Guice.createInjector(new BenchmarkModule(module));
+            serverFactory = injector.getInstance(ServerChannelFactory.class);
+            if (serverFactory instanceof Initializable) {
+                Initializable.class.cast(serverFactory).initialize();
+            }
+            
+            final ServerBootstrap bootstrap = new ServerBootstrap(serverFactory);
+            bootstrap.setPipelineFactory(injector.getInstance(ChannelPipelineFactory.class));
+            bootstrap.setOption("child.tcpNoDelay", true);
+            channel = bootstrap.bind(address);
+        }
+        
+        /**
+         * Unbinds the server and releases all resources.
+         */
+        @TearDown(Level.Trial)
+        public void unbind() {
+            channel.close().awaitUninterruptibly();
+            clientFactory.releaseExternalResources();
+            serverFactory.releaseExternalResources();
+        }
+        
+    }
+    
+    /**
+     * A connected client, one per benchmark thread.
+     *
+     * @since 2.0
+     * @author Willi Schoenborn
+     */
+    @State(Scope.Thread)
+    public static class Client {
+        
+        private final BlockingQueue<Object> responses = new LinkedBlockingQueue<Object>();
+        
+        private ChannelBuffer payload;
+        
+        private Channel channel;
+        
+        /**
+         * Connects to the server.
+         * 
+         * @param server the server
+         */
+        @Setup(Level.Trial)
+        public void connect(Server server) {
+            payload = ChannelBuffers.wrappedBuffer(new byte[server.payloadSize]);
+            
+            final ClientBootstrap bootstrap = new ClientBootstrap(server.clientFactory);
+            bootstrap.setOption("tcpNoDelay", true);
+            bootstrap.setPipeline(Channels.pipeline(
+                new LengthFieldBasedFrameDecoder(BenchmarkModule.MAX_FRAME_LENGTH, 0, 4, 0, 4),
+                new LengthFieldPrepender(4),
+                new SimpleChannelUpstreamHandler() {
+                    
+                    @Override
+                    public void messageReceived(ChannelHandlerContext context, MessageEvent event) {
+                        responses.add(event.getMessage());
+                    }
+                    
+                }
+            ));
+            channel = bootstrap.connect(server.channel.getLocalAddress()).awaitUninterruptibly().getChannel();
+        }
+        
+        /**
+         * Disconnects from the server.
+         */
+        @TearDown(Level.Trial)
+        public void disconnect() {
+            channel.close().awaitUninterruptibly();
+        }
+        
+    }
+    
+    /**
+     * Sends one request and waits for its response.
+     * 
+     * @param client the calling client
+     * @return the response
+     * @throws InterruptedException if interrupted while waiting
+     */
+    @Benchmark
+    public Object roundTrip(Client client) throws InterruptedException {
+        client.channel.write(client.payload.duplicate());
+        return client.responses.take();
+    }
+    
+    /**
+     * Runs this benchmark.
+     * 
+     * @param args ignored
+     * @throws RunnerException if the benchmark failed
+     */
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(RoundTripBenchmark.class.getSimpleName()).build()).run();
+    }
+    
+}
@@ -0,0 +1,217 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelEvent;
+import org.jboss.netty.channel.ChannelHandler;
+import org.jboss.netty.channel.ChannelHandler.Sharable;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelState;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.ChannelUpstreamHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+
+/**
+ * A {@link ChannelHandler} which decides whether a new channel is admitted as soon as it
+ * is opened, based on the total number of connections, the number of connections per
+ * remote address and the accept rate. Rejected channels are closed and none of their
+ * events reach the following handlers, so no connection is ever created for them.
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+@Sharable
+@ThreadSafe
+final class AdmissionHandler implements ChannelUpstreamHandler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AdmissionHandler.class);
+    
+    private static final Object REJECTED = new Object();
+    
+    private static final Object ADMITTED = new Object();
+    
+    private final int maxConnections;
+    
+    private final int maxConnectionsPerAddress;
+    
+    private final TokenBucket bucket;
+    
+    private final AtomicInteger connections = new AtomicInteger();
+    
+    @GuardedBy("itself")
+    private final Map<InetAddress, Integer> addresses = Maps.newHashMap();
+    
+    private final AtomicLong rejected = new AtomicLong();
+    
+    /**
+     * Creates a new admission handler. Limits which are not positive are disabled.
+     * 
+     * @param maxConnections the maximum number of connections
+     * @param maxConnectionsPerAddress the maximum number of connections per remote address
+     * @param acceptRate the maximum number of accepted connections per second
+     * @param acceptBurst the number of connections which may be accepted at once 
+     *        in excess of the accept rate
+     */
+    AdmissionHandler(int maxConnections, int maxConnectionsPerAddress, int acceptRate, int acceptBurst) {
+        this.maxConnections = maxConnections;
+        this.maxConnectionsPerAddress = maxConnectionsPerAddress;
+        this.bucket = acceptRate > 0 ? new TokenBucket(acceptRate, Math.max(1, acceptBurst)) : null;
+    }
+    
+    @Override
+    public void handleUpstream(ChannelHandlerContext context, ChannelEvent event) throws Exception {
+        if (isOpen(event)) {
+            context.setAttachment(admit(event.getChannel()));
+        }
+        
+        final Object admission = context.getAttachment();
+        if (admission == REJECTED) {
+            return;
+        } else if (isClosed(event) && admission != null) {
+            context.setAttachment(null);
+            release(admission);
+        }
+        context.sendUpstream(event);
+    }
+    
+    private boolean isOpen(ChannelEvent event) {
+        if (event instanceof ChannelStateEvent) {
+            final ChannelStateEvent stateEvent = ChannelStateEvent.class.cast(event);
+            return stateEvent.getState() == ChannelState.OPEN && Boolean.TRUE.equals(stateEvent.getValue());
+        } else {
+            return false;
+        }
+    }
+    
+    private boolean isClosed(ChannelEvent event) {
+        if (event instanceof ChannelStateEvent) {
+            final ChannelStateEvent stateEvent = ChannelStateEvent.class.cast(event);
+            return stateEvent.getState() == ChannelState.OPEN && Boolean.FALSE.equals(stateEvent.getValue());
+        } else {
+            return false;
+        }
+    }
+    
+    private Object admit(Channel channel) {
+        if (bucket != null && !bucket.tryAcquire()) {
+            return reject(channel, "accept rate exceeded");
+        }
+        
+        final int count = connections.incrementAndGet();
+        if (maxConnections > 0 && count > maxConnections) {
+            connections.decrementAndGet();
+            return reject(channel, "connection limit reached");
+        }
+        
+        if (maxConnectionsPerAddress <= 0) return ADMITTED;
+        
+        final SocketAddress remoteAddress = channel.getRemoteAddress();
+        if (!(remoteAddress instanceof InetSocketAddress)) return ADMITTED;
+        
+        final InetAddress address = InetSocketAddress.class.cast(remoteAddress).getAddress();
+        synchronized (addresses) {
+            final Integer current = addresses.get(address);
+            final int value = current == null ? 0 : current.intValue();
+            if (value < maxConnectionsPerAddress) {
+                addresses.put(address, value + 1);
+                return address;
+            }
+        }
+        
+        connections.decrementAndGet();
+        return reject(channel, "connection limit per address reached");
+    }
+    
+    private Object reject(Channel channel, String reason) {
+        rejected.incrementAndGet();
+        LOG.debug("Rejecting {}: {}", channel, reason);
+        channel.close();
+        return REJECTED;
+    }
+    
+    private void release(Object admission) {
+        connections.decrementAndGet();
+        if (admission == ADMITTED) return;
+        
+        final InetAddress address = InetAddress.class.cast(admission);
+        synchronized (addresses) {
+            final int value = addresses.get(address).intValue();
+            if (value == 1) {
+                addresses.remove(address);
+            } else {
+                addresses.put(address, value - 1);
+            }
+        }
+    }
+    
+    long getRejected() {
+        return rejected.get();
+    }
+    
+    /**
+     * A token bucket which refills continuously.
+     *
+     * @since 2.0
+     * @author Willi Schoenborn
+     */
+    private static final class TokenBucket {
+        
+        private final double tokensPerNano;
+        
+        private final double capacity;
+        
+        @GuardedBy("this")
+        private double tokens;
+        
+        @GuardedBy("this")
+        private long last = System.nanoTime();
+        
+        private TokenBucket(int rate, int capacity) {
+            Preconditions.checkArgument(rate > 0, "Rate must be positive, but was %s", rate);
+            this.tokensPerNano = (double) rate / TimeUnit.SECONDS.toNanos(1);
+            this.capacity = capacity;
+            this.tokens = capacity;
+        }
+        
+        private synchronized boolean tryAcquire() {
+            final long now = System.nanoTime();
+            tokens = Math.min(capacity, tokens + (now - last) * tokensPerNano);
+            last = now;
+            if (tokens < 1) return false;
+            tokens -= 1;
+            return true;
+        }
+        
+    }
+    
+}
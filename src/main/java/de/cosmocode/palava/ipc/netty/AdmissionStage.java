@@ -0,0 +1,108 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import org.jboss.netty.channel.ChannelPipeline;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+
+import de.cosmocode.palava.core.lifecycle.Initializable;
+import de.cosmocode.palava.core.lifecycle.LifecycleException;
+
+/**
+ * Configurable stage which limits the admission of new connections
+ * using an {@link AdmissionHandler}.
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+final class AdmissionStage implements Initializable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AdmissionStage.class);
+    
+    static final String NAME = "admission-handler";
+    
+    private String name = "netty";
+    
+    private int maxConnections;
+    
+    private int maxConnectionsPerAddress;
+    
+    private int acceptRate;
+    
+    private int acceptBurst = -1;
+    
+    private AdmissionHandler handler;
+    
+    @Inject(optional = true)
+    void setName(@Named(NettyServiceConfig.NAME) String name) {
+        this.name = Preconditions.checkNotNull(name, "Name");
+    }
+    
+    @Inject(optional = true)
+    void setMaxConnections(@Named(NettyServiceConfig.MAX_CONNECTIONS) int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+    
+    @Inject(optional = true)
+    void setMaxConnectionsPerAddress(
+        @Named(NettyServiceConfig.MAX_CONNECTIONS_PER_ADDRESS) int maxConnectionsPerAddress) {
+        this.maxConnectionsPerAddress = maxConnectionsPerAddress;
+    }
+    
+    @Inject(optional = true)
+    void setAcceptRate(@Named(NettyServiceConfig.ACCEPT_RATE) int acceptRate) {
+        this.acceptRate = acceptRate;
+    }
+    
+    @Inject(optional = true)
+    void setAcceptBurst(@Named(NettyServiceConfig.ACCEPT_BURST) int acceptBurst) {
+        this.acceptBurst = acceptBurst;
+    }
+    
+    @Override
+    public void initialize() throws LifecycleException {
+        if (maxConnections <= 0 && maxConnectionsPerAddress <= 0 && acceptRate <= 0) return;
+        final int burst = acceptBurst < 0 ? acceptRate : acceptBurst;
+        LOG.info("Limiting {} to {} connection(s), {} per address and {} accept(s) per second with a burst of {}", 
+            new Object[] {
+                name, maxConnections, maxConnectionsPerAddress, acceptRate, burst
+            });
+        handler = new AdmissionHandler(maxConnections, maxConnectionsPerAddress, acceptRate, burst);
+    }
+    
+    /**
+     * Installs this stage as the first handler of the given pipeline. Has to be
+     * installed after all other stages.
+     * 
+     * @since 2.0
+     * @param pipeline the pipeline of a new channel
+     */
+    void install(ChannelPipeline pipeline) {
+        if (handler == null) return;
+        pipeline.addFirst(NAME, handler);
+    }
+    
+    long getRejected() {
+        return handler == null ? 0 : handler.getRejected();
+    }
+    
+}
@@ -0,0 +1,118 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+
+import org.jboss.netty.channel.AbstractChannel;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelConfig;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelSink;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.DefaultChannelConfig;
+import org.jboss.netty.channel.socket.DefaultSocketChannelConfig;
+
+/**
+ * {@link Channel} of a connection accepted by a {@link BlockingServerChannel}.
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+final class BlockingChannel extends AbstractChannel {
+
+    final java.nio.channels.SocketChannel socket;
+    
+    final Object interestOpsLock = new Object();
+    
+    final Object writeLock = new Object();
+    
+    private final ChannelConfig config;
+    
+    private volatile SocketAddress remoteAddress;
+    
+    BlockingChannel(BlockingServerChannel parent, ChannelPipeline pipeline, ChannelSink sink,
+        java.nio.channels.SocketChannel socket) {
+        super(parent, parent.getFactory(), pipeline, sink);
+        this.socket = socket;
+        this.config = newConfig(socket);
+        Channels.fireChannelOpen(this);
+    }
+    
+    private static ChannelConfig newConfig(java.nio.channels.SocketChannel socket) {
+        try {
+            // tcp connections honor the usual child options, unix domain sockets don't support them
+            return new DefaultSocketChannelConfig(socket.socket());
+        } catch (UnsupportedOperationException e) {
+            return new DefaultChannelConfig();
+        }
+    }
+    
+    @Override
+    public ChannelConfig getConfig() {
+        return config;
+    }
+    
+    @Override
+    public SocketAddress getLocalAddress() {
+        return getParent().getLocalAddress();
+    }
+    
+    @Override
+    public SocketAddress getRemoteAddress() {
+        if (remoteAddress == null) {
+            try {
+                remoteAddress = socket.getRemoteAddress();
+            } catch (IOException e) {
+                return null;
+            }
+        }
+        return remoteAddress;
+    }
+    
+    @Override
+    public boolean isBound() {
+        return isOpen() && socket.isOpen();
+    }
+    
+    @Override
+    public boolean isConnected() {
+        return isOpen() && socket.isConnected();
+    }
+    
+    @Override
+    protected boolean setClosed() {
+        return super.setClosed();
+    }
+    
+    @Override
+    protected void setInterestOpsNow(int interestOps) {
+        super.setInterestOpsNow(interestOps);
+    }
+    
+    @Override
+    public ChannelFuture write(Object message, SocketAddress address) {
+        if (address == null || address.equals(getRemoteAddress())) {
+            return super.write(message, null);
+        } else {
+            return getUnsupportedOperationFuture();
+        }
+    }
+    
+}
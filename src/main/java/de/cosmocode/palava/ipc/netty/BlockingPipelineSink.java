@@ -0,0 +1,371 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.Executor;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.AbstractChannelSink;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelEvent;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelSink;
+import org.jboss.netty.channel.ChannelState;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.MessageEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * {@link ChannelSink} for {@link BlockingServerChannel}s and their accepted {@link BlockingChannel}s.
+ * Works like netty's oio transport: connections are accepted by one boss task per server channel,
+ * every connection is read by its own worker task using blocking reads and writes block the calling thread.
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+final class BlockingPipelineSink extends AbstractChannelSink {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BlockingPipelineSink.class);
+    
+    private static final int BUFFER_SIZE = 16 * 1024;
+    
+    private final Executor boss;
+    
+    private final Executor worker;
+    
+    BlockingPipelineSink(Executor boss, Executor worker) {
+        this.boss = Preconditions.checkNotNull(boss, "Boss");
+        this.worker = Preconditions.checkNotNull(worker, "Worker");
+    }
+    
+    @Override
+    public void eventSunk(ChannelPipeline pipeline, ChannelEvent event) throws Exception {
+        final Channel channel = event.getChannel();
+        if (channel instanceof BlockingServerChannel) {
+            handleServer(BlockingServerChannel.class.cast(channel), event);
+        } else if (channel instanceof BlockingChannel) {
+            handleAccepted(BlockingChannel.class.cast(channel), event);
+        }
+    }
+    
+    private void handleServer(BlockingServerChannel channel, ChannelEvent event) {
+        if (!(event instanceof ChannelStateEvent)) return;
+        final ChannelStateEvent stateEvent = ChannelStateEvent.class.cast(event);
+        final Object value = stateEvent.getValue();
+        
+        if (stateEvent.getState() == ChannelState.OPEN && Boolean.FALSE.equals(value)) {
+            close(channel, event.getFuture());
+        } else if (stateEvent.getState() == ChannelState.BOUND) {
+            if (value == null) {
+                close(channel, event.getFuture());
+            } else {
+                bind(channel, event.getFuture(), SocketAddress.class.cast(value));
+            }
+        }
+    }
+    
+    private void handleAccepted(BlockingChannel channel, ChannelEvent event) {
+        if (event instanceof MessageEvent) {
+            write(channel, event.getFuture(), MessageEvent.class.cast(event).getMessage());
+        } else if (event instanceof ChannelStateEvent) {
+            final ChannelStateEvent stateEvent = ChannelStateEvent.class.cast(event);
+            final Object value = stateEvent.getValue();
+            switch (stateEvent.getState()) {
+                case OPEN: {
+                    if (Boolean.FALSE.equals(value)) {
+                        close(channel, event.getFuture());
+                    }
+                    break;
+                }
+                case BOUND:
+                case CONNECTED: {
+                    if (value == null) {
+                        close(channel, event.getFuture());
+                    }
+                    break;
+                }
+                case INTEREST_OPS: {
+                    setInterestOps(channel, event.getFuture(), Integer.class.cast(value).intValue());
+                    break;
+                }
+                default: {
+                    break;
+                }
+            }
+        }
+    }
+    
+    private void bind(BlockingServerChannel channel, ChannelFuture future, SocketAddress address) {
+        boolean bound = false;
+        boolean started = false;
+        try {
+            final SocketAddress localAddress;
+            if (channel.isInherited()) {
+                localAddress = channel.socket.getLocalAddress();
+                LOG.info("Adopting inherited {} instead of binding {}", localAddress, address);
+            } else {
+                if (UnixDomainSockets.isUnixDomainAddress(address)) {
+                    UnixDomainSockets.deleteIfStale(address);
+                }
+                channel.socket.bind(address);
+                // resolves ephemeral ports
+                localAddress = channel.socket.getLocalAddress();
+            }
+            channel.setLocalAddress(localAddress);
+            bound = true;
+            future.setSuccess();
+            Channels.fireChannelBound(channel, localAddress);
+            boss.execute(new Acceptor(channel));
+            started = true;
+        /* CHECKSTYLE:OFF */
+        } catch (Throwable e) {
+        /* CHECKSTYLE:ON */
+            future.setFailure(e);
+            Channels.fireExceptionCaught(channel, e);
+        } finally {
+            if (bound && !started) {
+                close(channel, future);
+            }
+        }
+    }
+    
+    private void close(BlockingServerChannel channel, ChannelFuture future) {
+        final boolean bound = channel.isBound();
+        try {
+            channel.socket.close();
+            // wait for the acceptor, no connection must be accepted once the future is notified
+            channel.shutdownLock.lock();
+            try {
+                future.setSuccess();
+                if (channel.setClosed()) {
+                    if (bound) {
+                        delete(channel);
+                        Channels.fireChannelUnbound(channel);
+                    }
+                    Channels.fireChannelClosed(channel);
+                }
+            } finally {
+                channel.shutdownLock.unlock();
+            }
+        } catch (IOException e) {
+            future.setFailure(e);
+            Channels.fireExceptionCaught(channel, e);
+        }
+    }
+    
+    private void delete(BlockingServerChannel channel) {
+        final SocketAddress address = channel.getLocalAddress();
+        // inherited socket files belong to the parent process
+        if (channel.isInherited() || !UnixDomainSockets.isUnixDomainAddress(address)) return;
+        if (!UnixDomainSockets.fileOf(address).delete()) {
+            LOG.warn("Unable to delete unix domain socket {}", address);
+        }
+    }
+    
+    private void write(BlockingChannel channel, ChannelFuture future, Object message) {
+        try {
+            final ChannelBuffer buffer = ChannelBuffer.class.cast(message);
+            final int length = buffer.readableBytes();
+            // gathering writes avoid copying composite buffers
+            final ByteBuffer[] buffers = buffer.toByteBuffers();
+            synchronized (channel.writeLock) {
+                for (long remaining = length; remaining > 0;) {
+                    remaining -= channel.socket.write(buffers);
+                }
+            }
+            Channels.fireWriteComplete(channel, length);
+            future.setSuccess();
+        /* CHECKSTYLE:OFF */
+        } catch (Throwable e) {
+        /* CHECKSTYLE:ON */
+            future.setFailure(e);
+            Channels.fireExceptionCaught(channel, e);
+        }
+    }
+    
+    private void setInterestOps(BlockingChannel channel, ChannelFuture future, int interestOps) {
+        // writability is not controlled by the user
+        final int ops = (interestOps & ~Channel.OP_WRITE) | (channel.getInterestOps() & Channel.OP_WRITE);
+        future.setSuccess();
+        if (channel.getInterestOps() == ops) return;
+        synchronized (channel.interestOpsLock) {
+            channel.setInterestOpsNow(ops);
+            // interrupting the reader would close the socket
+            channel.interestOpsLock.notifyAll();
+        }
+        Channels.fireChannelInterestChanged(channel);
+    }
+    
+    private void close(BlockingChannel channel, ChannelFuture future) {
+        final boolean connected = channel.isConnected();
+        final boolean bound = channel.isBound();
+        try {
+            channel.socket.close();
+            synchronized (channel.interestOpsLock) {
+                channel.interestOpsLock.notifyAll();
+            }
+            future.setSuccess();
+            if (channel.setClosed()) {
+                if (connected) {
+                    Channels.fireChannelDisconnected(channel);
+                }
+                if (bound) {
+                    Channels.fireChannelUnbound(channel);
+                }
+                Channels.fireChannelClosed(channel);
+            }
+        } catch (IOException e) {
+            future.setFailure(e);
+            Channels.fireExceptionCaught(channel, e);
+        }
+    }
+    
+    /**
+     * Accepts connections on a {@link BlockingServerChannel} until it gets closed.
+     *
+     * @since 2.0
+     * @author Willi Schoenborn
+     */
+    private final class Acceptor implements Runnable {
+        
+        private final BlockingServerChannel channel;
+        
+        Acceptor(BlockingServerChannel channel) {
+            this.channel = channel;
+        }
+        
+        @Override
+        public void run() {
+            channel.shutdownLock.lock();
+            try {
+                while (channel.isBound()) {
+                    final SocketChannel socket;
+                    try {
+                        socket = channel.socket.accept();
+                    } catch (ClosedChannelException e) {
+                        break;
+                    } catch (IOException e) {
+                        LOG.warn("Failed to accept a connection on " + channel, e);
+                        if (pause()) continue;
+                        break;
+                    }
+                    accept(socket);
+                }
+            } finally {
+                channel.shutdownLock.unlock();
+            }
+        }
+        
+        private boolean pause() {
+            // errors like running out of file descriptors usually persist for a while
+            try {
+                Thread.sleep(1000);
+                return true;
+            } catch (InterruptedException e) {
+                return false;
+            }
+        }
+        
+        private void accept(SocketChannel socket) {
+            try {
+                final ChannelPipeline pipeline = channel.getConfig().getPipelineFactory().getPipeline();
+                final BlockingChannel accepted = new BlockingChannel(
+                    channel, pipeline, BlockingPipelineSink.this, socket);
+                worker.execute(new Reader(accepted));
+            /* CHECKSTYLE:OFF */
+            } catch (Exception e) {
+            /* CHECKSTYLE:ON */
+                LOG.warn("Failed to initialize an accepted connection on " + channel, e);
+                try {
+                    socket.close();
+                } catch (IOException inner) {
+                    LOG.warn("Failed to close partially accepted connection " + socket, inner);
+                }
+            }
+        }
+        
+    }
+    
+    /**
+     * Reads from a {@link BlockingChannel} until it gets closed.
+     *
+     * @since 2.0
+     * @author Willi Schoenborn
+     */
+    private final class Reader implements Runnable {
+        
+        private final BlockingChannel channel;
+        
+        Reader(BlockingChannel channel) {
+            this.channel = channel;
+        }
+        
+        @Override
+        public void run() {
+            Channels.fireChannelConnected(channel, channel.getRemoteAddress());
+            final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            
+            while (channel.isOpen() && awaitReadable()) {
+                final int read;
+                try {
+                    buffer.clear();
+                    read = channel.socket.read(buffer);
+                } catch (IOException e) {
+                    if (channel.socket.isOpen()) {
+                        Channels.fireExceptionCaught(channel, e);
+                    }
+                    break;
+                }
+                
+                if (read < 0) break;
+                if (read == 0) continue;
+                buffer.flip();
+                // the read buffer is reused, handlers may keep what they receive
+                final ChannelBuffer received = channel.getConfig().getBufferFactory().getBuffer(read);
+                received.writeBytes(buffer);
+                Channels.fireMessageReceived(channel, received);
+            }
+            
+            close(channel, Channels.succeededFuture(channel));
+        }
+        
+        private boolean awaitReadable() {
+            synchronized (channel.interestOpsLock) {
+                while (!channel.isReadable() && channel.isOpen()) {
+                    try {
+                        channel.interestOpsLock.wait();
+                    } catch (InterruptedException e) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+        
+    }
+
+}
@@ -0,0 +1,108 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.jboss.netty.channel.AbstractServerChannel;
+import org.jboss.netty.channel.ChannelConfig;
+import org.jboss.netty.channel.ChannelException;
+import org.jboss.netty.channel.ChannelFactory;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelSink;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.DefaultServerChannelConfig;
+import org.jboss.netty.channel.ServerChannel;
+
+/**
+ * {@link ServerChannel} accepting connections on a blocking {@link java.nio.channels.ServerSocketChannel},
+ * which is either opened for tcp or a unix domain socket or inherited from the parent process.
+ * Used by the {@link VirtualOioServerSocketChannelFactory}, the {@link UnixDomainServerSocketChannelFactory}
+ * and the {@link InheritedServerChannelFactory}.
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+final class BlockingServerChannel extends AbstractServerChannel {
+
+    final java.nio.channels.ServerSocketChannel socket;
+    
+    final Lock shutdownLock = new ReentrantLock();
+    
+    private final boolean inherited;
+    
+    private final ChannelConfig config = new DefaultServerChannelConfig();
+    
+    private volatile SocketAddress localAddress;
+    
+    BlockingServerChannel(ChannelFactory factory, ChannelPipeline pipeline, ChannelSink sink,
+        java.nio.channels.ServerSocketChannel socket, boolean inherited) {
+        super(factory, pipeline, sink);
+        this.socket = socket;
+        this.inherited = inherited;
+        try {
+            socket.configureBlocking(true);
+        } catch (IOException e) {
+            throw new ChannelException("Failed to configure " + socket + " to block", e);
+        }
+        Channels.fireChannelOpen(this);
+    }
+    
+    /**
+     * Checks whether the underlying socket has been inherited, in which case
+     * it is already bound and binding this channel adopts its address.
+     * 
+     * @since 2.0
+     * @return true if the socket has been inherited, false otherwise
+     */
+    boolean isInherited() {
+        return inherited;
+    }
+    
+    @Override
+    public ChannelConfig getConfig() {
+        return config;
+    }
+    
+    void setLocalAddress(SocketAddress localAddress) {
+        this.localAddress = localAddress;
+    }
+    
+    @Override
+    public SocketAddress getLocalAddress() {
+        return localAddress;
+    }
+    
+    @Override
+    public SocketAddress getRemoteAddress() {
+        return null;
+    }
+    
+    @Override
+    public boolean isBound() {
+        return isOpen() && localAddress != null;
+    }
+    
+    @Override
+    protected boolean setClosed() {
+        return super.setClosed();
+    }
+    
+}
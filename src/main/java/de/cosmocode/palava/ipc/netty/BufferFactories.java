@@ -0,0 +1,96 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import java.lang.reflect.InvocationTargetException;
+
+import org.jboss.netty.buffer.ChannelBufferFactory;
+import org.jboss.netty.buffer.DirectChannelBufferFactory;
+import org.jboss.netty.buffer.HeapChannelBufferFactory;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Static utility class for parsing {@link ChannelBufferFactory} specifications,
+ * as used for the {@code bufferFactory} and {@code child.bufferFactory}
+ * entries of {@link NettyServiceConfig#OPTIONS}.
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+final class BufferFactories {
+
+    private static final String HEAP = "heap";
+    
+    private static final String DIRECT = "direct";
+    
+    private BufferFactories() {
+        
+    }
+    
+    /**
+     * Parses a single buffer factory specification. Supported formats are {@code heap}
+     * for the default heap buffers, {@code direct} for direct buffers sliced from shared
+     * preallocated chunks of 1 MiB, {@code direct:capacity} for direct buffers sliced
+     * from preallocated chunks of the given capacity in bytes and the fully qualified class
+     * name of a {@link ChannelBufferFactory} implementation with a public no-arg constructor.
+     * 
+     * @since 2.0
+     * @param value the specification
+     * @return the specified buffer factory
+     * @throws NullPointerException if value is null
+     * @throws IllegalArgumentException if value is not a valid specification
+     */
+    static ChannelBufferFactory parse(String value) {
+        Preconditions.checkNotNull(value, "Value");
+        final String specification = value.trim();
+        
+        if (HEAP.equals(specification)) {
+            return HeapChannelBufferFactory.getInstance();
+        } else if (DIRECT.equals(specification)) {
+            return DirectChannelBufferFactory.getInstance();
+        } else if (specification.startsWith(DIRECT + ":")) {
+            final int capacity;
+            try {
+                capacity = Integer.parseInt(specification.substring(DIRECT.length() + 1));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid capacity in " + value, e);
+            }
+            Preconditions.checkArgument(capacity > 0, "Capacity must be positive in %s", value);
+            return new DirectChannelBufferFactory(capacity);
+        }
+        
+        try {
+            final Class<? extends ChannelBufferFactory> type = 
+                Class.forName(specification).asSubclass(ChannelBufferFactory.class);
+            return type.getDeclaredConstructor().newInstance();
+        } catch (ClassNotFoundException e) {
+            throw new IllegalArgumentException("Unknown buffer factory " + value, e);
+        } catch (ClassCastException e) {
+            throw new IllegalArgumentException(value + " is no " + ChannelBufferFactory.class.getName(), e);
+        } catch (InstantiationException e) {
+            throw new IllegalArgumentException("Unable to create buffer factory " + value, e);
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("Unable to create buffer factory " + value, e);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException(value + " has no default constructor", e);
+        } catch (InvocationTargetException e) {
+            throw new IllegalArgumentException("Unable to create buffer factory " + value, e.getCause());
+        }
+    }
+    
+}
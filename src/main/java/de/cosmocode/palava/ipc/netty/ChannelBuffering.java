@@ -22,6 +22,10 @@ import java.io.OutputStream;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBufferInputStream;
 import org.jboss.netty.buffer.ChannelBufferOutputStream;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelConfig;
+import org.jboss.netty.channel.ChannelEvent;
+import org.jboss.netty.channel.MessageEvent;
 
 import com.google.common.base.Preconditions;
 
@@ -38,14 +42,14 @@ public final class ChannelBuffering {
     }
     
     /**
-     * Adapts a {@link ChannelBuffer} to an {@link InputStream}.
+     * Adapts a {@link ChannelBuffer} to an {@link InputStream} which reads directly from
+     * the given buffer, including composite and sliced buffers, without copying it.
+     * Reading advances the reader index of the given buffer.
      * 
-     * @deprecated use {@link ChannelBufferInputStream}
      * @param buffer the underlying channel buffer
      * @return an inputstream which reads from the given channel buffer
      * @throws NullPointerException if buffer is null
      */
-    @Deprecated
     public static InputStream asInputStream(final ChannelBuffer buffer) {
         Preconditions.checkNotNull(buffer, "Buffer");
         return new ChannelBufferInputStream(buffer);
@@ -54,7 +58,7 @@ public final class ChannelBuffering {
     /**
      * Adapts a {@link ChannelBuffer} to an {@link OutputStream}.
      * 
-     * @deprecated use {@link ChannelBufferOutputStream}
+     * @deprecated use {@link #newOutputStream(Channel)}
      * @param buffer the underlying channel buffer
      * @return an outputstream which writes to the given channel buffer
      * @throws NullPointerException if buffer is null
@@ -65,4 +69,31 @@ public final class ChannelBuffering {
         return new ChannelBufferOutputStream(buffer);
     }
     
+    /**
+     * Creates a {@link ChunkedChannelBufferOutputStream} which allocates its chunks using the
+     * buffer factory of the given channel, see {@link ChannelConfig#getBufferFactory()}.
+     * The written bytes can be sent using {@code channel.write(stream.buffer())}.
+     * 
+     * @since 2.0
+     * @param channel the channel the written bytes are meant for
+     * @return a new output stream
+     * @throws NullPointerException if channel is null
+     */
+    public static ChunkedChannelBufferOutputStream newOutputStream(Channel channel) {
+        Preconditions.checkNotNull(channel, "Channel");
+        return new ChunkedChannelBufferOutputStream(channel.getConfig().getBufferFactory(),
+            ChunkedChannelBufferOutputStream.DEFAULT_CHUNK_SIZE);
+    }
+    
+    /**
+     * Checks whether the given event carries a {@link ChannelBuffer}.
+     * 
+     * @since 2.0
+     * @param event the event
+     * @return true if event is a {@link MessageEvent} whose message is a {@link ChannelBuffer}
+     */
+    static boolean isBuffer(ChannelEvent event) {
+        return event instanceof MessageEvent && MessageEvent.class.cast(event).getMessage() instanceof ChannelBuffer;
+    }
+    
 }
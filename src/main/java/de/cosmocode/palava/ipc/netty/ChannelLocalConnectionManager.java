@@ -0,0 +1,90 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandler.Sharable;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelLocal;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.SimpleChannelHandler;
+
+import com.google.common.base.Preconditions;
+import com.google.inject.Inject;
+
+import de.cosmocode.palava.core.Registry.Proxy;
+import de.cosmocode.palava.core.Registry.SilentProxy;
+import de.cosmocode.palava.ipc.IpcConnectionCreateEvent;
+import de.cosmocode.palava.ipc.IpcConnectionDestroyEvent;
+import de.cosmocode.palava.ipc.protocol.DetachedConnection;
+
+/**
+ * A {@link ConnectionManager} implementation which stores each connection as
+ * {@link ChannelLocal} state of its channel. Lookups are identity based and do not
+ * depend on the length of the pipeline, and the {@link ProtocolHandler} caches the
+ * result per channel, which turns all subsequent lookups into a field read.
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+@Sharable
+@ThreadSafe
+final class ChannelLocalConnectionManager extends SimpleChannelHandler implements ConnectionManager {
+
+    private final ChannelLocal<DetachedConnection> connections = new ChannelLocal<DetachedConnection>();
+    
+    private final IpcConnectionCreateEvent createEvent;
+    
+    private final IpcConnectionDestroyEvent destroyEvent;
+    
+    @Inject
+    ChannelLocalConnectionManager(
+        @Proxy IpcConnectionCreateEvent createEvent,
+        @SilentProxy IpcConnectionDestroyEvent destroyEvent) {
+        this.createEvent = Preconditions.checkNotNull(createEvent, "CreateEvent");
+        this.destroyEvent = Preconditions.checkNotNull(destroyEvent, "DestroyEvent");
+    }
+    
+    @Override
+    public void channelConnected(ChannelHandlerContext context, ChannelStateEvent event) throws Exception {
+        final DetachedConnection connection = new ChannelConnection(event.getChannel());
+        connections.set(event.getChannel(), connection);
+        createEvent.eventIpcConnectionCreate(connection);
+        super.channelConnected(context, event);
+    }
+    
+    @Override
+    public DetachedConnection get(Channel channel) {
+        Preconditions.checkNotNull(channel, "Channel");
+        final DetachedConnection connection = connections.get(channel);
+        Preconditions.checkState(connection != null, "No connection set for channel %s", channel);
+        return connection;
+    }
+    
+    @Override
+    public void channelClosed(ChannelHandlerContext context, ChannelStateEvent event) throws Exception {
+        final DetachedConnection connection = connections.remove(event.getChannel());
+        if (connection != null) {
+            destroyEvent.eventIpcConnectionDestroy(connection);
+            connection.clear();
+        }
+        super.channelClosed(context, event);
+    }
+    
+}
@@ -0,0 +1,64 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+
+/**
+ * Static utility class for checksums of {@link ChannelBuffer}s.
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+final class Checksums {
+
+    private Checksums() {
+        
+    }
+    
+    /**
+     * Computes the CRC-32 of the given region, reading heap based buffers,
+     * including composite ones, in place.
+     * 
+     * @since 2.0
+     * @param buffer the buffer
+     * @param index the index of the first byte
+     * @param length the number of bytes
+     * @return the CRC-32 of the given region
+     */
+    static int crc32(ChannelBuffer buffer, int index, int length) {
+        final CRC32 crc = new CRC32();
+        if (buffer.hasArray()) {
+            crc.update(buffer.array(), buffer.arrayOffset() + index, length);
+        } else {
+            for (ByteBuffer each : buffer.toByteBuffers(index, length)) {
+                if (each.hasArray()) {
+                    crc.update(each.array(), each.arrayOffset() + each.position(), each.remaining());
+                } else {
+                    final byte[] bytes = new byte[each.remaining()];
+                    each.get(bytes);
+                    crc.update(bytes, 0, bytes.length);
+                }
+            }
+        }
+        return (int) crc.getValue();
+    }
+    
+}
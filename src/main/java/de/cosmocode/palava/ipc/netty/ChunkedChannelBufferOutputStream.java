@@ -0,0 +1,135 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import java.io.OutputStream;
+import java.util.List;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferFactory;
+import org.jboss.netty.buffer.ChannelBufferOutputStream;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.buffer.HeapChannelBufferFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+/**
+ * {@link OutputStream} which writes into a chain of fixed-size chunks and provides
+ * the written bytes as one composite {@link ChannelBuffer}. Unlike a {@link ChannelBufferOutputStream}
+ * on a dynamic buffer, written bytes are never copied again when the stream grows.
+ * 
+ * <p>
+ *   Writes larger than the chunk size get a chunk of their own, which keeps
+ *   the number of components of the resulting buffer low.
+ * </p>
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ * @see ChannelBuffering#newOutputStream(org.jboss.netty.channel.Channel)
+ */
+@NotThreadSafe
+public final class ChunkedChannelBufferOutputStream extends OutputStream {
+
+    public static final int DEFAULT_CHUNK_SIZE = 8 * 1024;
+    
+    private final ChannelBufferFactory factory;
+    
+    private final int chunkSize;
+    
+    private final List<ChannelBuffer> chunks = Lists.newArrayList();
+    
+    private ChannelBuffer current = ChannelBuffers.EMPTY_BUFFER;
+    
+    private int size;
+    
+    /**
+     * Creates a stream which allocates chunks of {@link #DEFAULT_CHUNK_SIZE} bytes on the heap.
+     * 
+     * @since 2.0
+     */
+    public ChunkedChannelBufferOutputStream() {
+        this(HeapChannelBufferFactory.getInstance(), DEFAULT_CHUNK_SIZE);
+    }
+    
+    /**
+     * Creates a stream which allocates chunks of the given size using the given factory.
+     * 
+     * @since 2.0
+     * @param factory the factory used to allocate chunks
+     * @param chunkSize the chunk size in bytes
+     * @throws NullPointerException if factory is null
+     * @throws IllegalArgumentException if chunkSize is not positive
+     */
+    public ChunkedChannelBufferOutputStream(ChannelBufferFactory factory, int chunkSize) {
+        this.factory = Preconditions.checkNotNull(factory, "Factory");
+        Preconditions.checkArgument(chunkSize > 0, "ChunkSize must be positive, but was %s", chunkSize);
+        this.chunkSize = chunkSize;
+    }
+    
+    @Override
+    public void write(int b) {
+        ensureWritable(1);
+        current.writeByte(b);
+        size++;
+    }
+    
+    @Override
+    public void write(byte[] b, int off, int len) {
+        Preconditions.checkPositionIndexes(off, off + len, b.length);
+        int offset = off;
+        int remaining = len;
+        while (remaining > 0) {
+            ensureWritable(remaining);
+            final int length = Math.min(remaining, current.writableBytes());
+            current.writeBytes(b, offset, length);
+            offset += length;
+            remaining -= length;
+        }
+        size += len;
+    }
+    
+    private void ensureWritable(int length) {
+        if (current.writable()) return;
+        current = factory.getBuffer(Math.max(chunkSize, length));
+        chunks.add(current);
+    }
+    
+    /**
+     * Provides the number of bytes written so far.
+     * 
+     * @since 2.0
+     * @return the number of written bytes
+     */
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * Provides the bytes written so far as one buffer, without copying them.
+     * Bytes written afterwards are not visible in the returned buffer.
+     * 
+     * @since 2.0
+     * @return a buffer containing all written bytes
+     */
+    public ChannelBuffer buffer() {
+        return ChannelBuffers.wrappedBuffer(chunks.toArray(new ChannelBuffer[chunks.size()]));
+    }
+    
+}
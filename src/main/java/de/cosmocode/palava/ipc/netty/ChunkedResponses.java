@@ -0,0 +1,124 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.cosmocode.palava.ipc.netty;
+
+import java.io.Closeable;
+import java.util.Iterator;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import org.jboss.netty.handler.stream.ChunkedInput;
+import org.jboss.netty.handler.stream.ChunkedStream;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Static utility class for streamed responses. A protocol streams its response
+ * by returning a {@link ChunkedInput}, whose chunks are encoded and written one
+ * after another as soon as the channel is writable. Streams of bytes can be
+ * returned using a {@link ChunkedStream}.
+ * 
+ * <p>
+ *   Streamed responses have no end marker of their own. Without framing, the chunks are
+ *   written back to back, just like a single response. With framing, every chunk is sent as
+ *   a frame of its own and nothing tells the client which frame is the last one of a response.
+ *   Protocols which stream framed responses therefore have to mark the end of the stream
+ *   within their chunks, e.g. using a final chunk the client recognizes.
+ * </p>
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+public final class ChunkedResponses {
+
+    private ChunkedResponses() {
+        
+    }
+    
+    /**
+     * Creates a lazy chunked response which writes the elements of the given iterator
+     * as individual chunks. Elements are requested only once the previous chunk has
+     * been written. The iterator is closed after the last chunk or if the channel has
+     * been closed, if it implements {@link Closeable}. An empty iterator results
+     * in a single empty buffer, which is sent as an empty frame if framing is enabled.
+     * 
+     * @since 2.0
+     * @param chunks the chunks, must not contain null elements
+     * @return a new chunked response
+     * @throws NullPointerException if chunks is null
+     */
+    public static ChunkedInput of(Iterator<?> chunks) {
+        Preconditions.checkNotNull(chunks, "Chunks");
+        return new IteratorChunkedInput(chunks);
+    }
+    
+    /**
+     * Creates a lazy chunked response which writes the elements of the given iterable
+     * as individual chunks.
+     * 
+     * @since 2.0
+     * @param chunks the chunks, must not contain null elements
+     * @return a new chunked response
+     * @throws NullPointerException if chunks is null
+     * @see #of(Iterator)
+     */
+    public static ChunkedInput of(Iterable<?> chunks) {
+        Preconditions.checkNotNull(chunks, "Chunks");
+        return of(chunks.iterator());
+    }
+    
+    /**
+     * A {@link ChunkedInput} backed by an {@link Iterator}. 
+     *
+     * @since 2.0
+     * @author Willi Schoenborn
+     */
+    @NotThreadSafe
+    private static final class IteratorChunkedInput implements ChunkedInput {
+        
+        private final Iterator<?> chunks;
+        
+        IteratorChunkedInput(Iterator<?> chunks) {
+            this.chunks = chunks;
+        }
+        
+        @Override
+        public boolean hasNextChunk() throws Exception {
+            return chunks.hasNext();
+        }
+        
+        @Override
+        public Object nextChunk() throws Exception {
+            return chunks.hasNext() ? Preconditions.checkNotNull(chunks.next(), "Chunk") : null;
+        }
+        
+        @Override
+        public boolean isEndOfInput() throws Exception {
+            return !chunks.hasNext();
+        }
+        
+        @Override
+        public void close() throws Exception {
+            if (chunks instanceof Closeable) {
+                Closeable.class.cast(chunks).close();
+            }
+        }
+        
+    }
+    
+}
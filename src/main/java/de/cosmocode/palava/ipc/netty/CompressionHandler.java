@@ -0,0 +1,246 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.cosmocode.palava.ipc.netty;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.ChannelHandler.Sharable;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelHandler;
+import org.jboss.netty.handler.codec.frame.CorruptedFrameException;
+import org.jboss.netty.handler.codec.frame.TooLongFrameException;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Compresses and decompresses the payload of frames using deflate. Every payload is prefixed
+ * with a single flag byte which tells whether the payload is compressed and whether the
+ * sender accepts compressed payloads. Payloads are compressed only if the peer announced
+ * that it accepts them and if they are at least as large as the configured threshold.
+ * Both peers use the same handler, right behind the framing codec. Due to the flag byte,
+ * payloads may be at most one byte shorter than the maximum frame length.
+ * 
+ * <p>
+ *   Compression of a response is attributed to the statistics of the protocol which
+ *   produced it, as long as it is written on the thread which processed the request,
+ *   see {@link ProtocolHandler#writing()}. Deflaters and inflaters are pooled and shared
+ *   by all channels, surplus ones are ended right away. The negotiated state is kept
+ *   per channel using the context attachment.
+ * </p>
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+@Sharable
+@ThreadSafe
+public final class CompressionHandler extends SimpleChannelHandler {
+
+    static final int DEFLATED = 0x01;
+    
+    static final int ACCEPTS_DEFLATED = 0x02;
+    
+    private static final int POOL_SIZE = Runtime.getRuntime().availableProcessors() * 2;
+    
+    private final int threshold;
+    
+    private final int maxLength;
+    
+    private final int level;
+    
+    // bounded, because execution threads may be created per task and zlib streams hold native memory
+    private final BlockingQueue<Deflater> deflaters = new ArrayBlockingQueue<Deflater>(POOL_SIZE);
+    
+    private final BlockingQueue<Inflater> inflaters = new ArrayBlockingQueue<Inflater>(POOL_SIZE);
+    
+    private final AtomicLong decompressed = new AtomicLong();
+    
+    /**
+     * Creates a new handler.
+     * 
+     * @since 2.0
+     * @param threshold the minimum payload size in bytes for compression
+     * @param level the deflate level, see {@link Deflater}
+     * @param maxLength the maximum length of a payload in bytes, excluding the flag byte
+     * @throws IllegalArgumentException if threshold is negative, level is not a valid
+     *         deflate level or maxLength is not positive
+     */
+    public CompressionHandler(int threshold, int level, int maxLength) {
+        Preconditions.checkArgument(threshold >= 0, "Threshold must not be negative, but was %s", threshold);
+        Preconditions.checkArgument(level >= Deflater.DEFAULT_COMPRESSION && level <= Deflater.BEST_COMPRESSION,
+            "Level must be between %s and %s, but was %s", 
+            Deflater.DEFAULT_COMPRESSION, Deflater.BEST_COMPRESSION, level);
+        Preconditions.checkArgument(maxLength > 0, "MaxLength must be positive, but was %s", maxLength);
+        this.threshold = threshold;
+        this.maxLength = maxLength;
+        this.level = level;
+    }
+    
+    @Override
+    public void messageReceived(ChannelHandlerContext context, MessageEvent event) throws Exception {
+        if (!(event.getMessage() instanceof ChannelBuffer)) {
+            context.sendUpstream(event);
+            return;
+        }
+        
+        final ChannelBuffer frame = ChannelBuffer.class.cast(event.getMessage());
+        if (!frame.readable()) {
+            throw new CorruptedFrameException("Missing compression flags");
+        }
+        
+        final int flags = frame.readUnsignedByte();
+        if ((flags & ACCEPTS_DEFLATED) != 0 && context.getAttachment() == null) {
+            context.setAttachment(Boolean.TRUE);
+        }
+        
+        if ((flags & DEFLATED) == 0) {
+            Channels.fireMessageReceived(context, frame, event.getRemoteAddress());
+        } else {
+            final ChannelBuffer payload = inflate(frame);
+            decompressed.incrementAndGet();
+            Channels.fireMessageReceived(context, payload, event.getRemoteAddress());
+        }
+    }
+    
+    private ChannelBuffer inflate(ChannelBuffer frame) throws Exception {
+        final Inflater polled = inflaters.poll();
+        final Inflater inflater = polled == null ? new Inflater() : polled;
+        try {
+            setInput(inflater, frame);
+            byte[] output = new byte[Math.min(Math.max(frame.readableBytes() * 4, 256), maxLength)];
+            int length = 0;
+            while (!inflater.finished()) {
+                if (length == output.length) {
+                    if (length == maxLength) {
+                        throw new TooLongFrameException("Decompressed payload exceeds " + maxLength + " bytes");
+                    }
+                    final byte[] larger = new byte[(int) Math.min(length * 2L, maxLength)];
+                    System.arraycopy(output, 0, larger, 0, length);
+                    output = larger;
+                }
+                final int inflated = inflater.inflate(output, length, output.length - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new CorruptedFrameException("Truncated compressed payload");
+                }
+                length += inflated;
+            }
+            return ChannelBuffers.wrappedBuffer(output, 0, length);
+        } catch (DataFormatException e) {
+            throw new CorruptedFrameException(e);
+        } finally {
+            inflater.reset();
+            if (!inflaters.offer(inflater)) {
+                inflater.end();
+            }
+        }
+    }
+    
+    @Override
+    public void writeRequested(ChannelHandlerContext context, MessageEvent event) throws Exception {
+        if (!(event.getMessage() instanceof ChannelBuffer)) {
+            context.sendDownstream(event);
+            return;
+        }
+        
+        final ChannelBuffer payload = ChannelBuffer.class.cast(event.getMessage());
+        if (payload.readableBytes() > maxLength) {
+            throw new TooLongFrameException(String.format(
+                "Payload of %s bytes exceeds maximum of %s bytes, one byte of each frame is used for flags",
+                payload.readableBytes(), maxLength));
+        }
+        
+        final ChannelBuffer frame;
+        if (context.getAttachment() != null && payload.readable() && payload.readableBytes() >= threshold) {
+            frame = deflate(payload);
+        } else {
+            frame = uncompressed(payload);
+        }
+        Channels.write(context, event.getFuture(), frame, event.getRemoteAddress());
+    }
+    
+    private ChannelBuffer deflate(ChannelBuffer payload) {
+        final long start = System.nanoTime();
+        final int length = payload.readableBytes();
+        final Deflater polled = deflaters.poll();
+        final Deflater deflater = polled == null ? new Deflater(level) : polled;
+        
+        // compression has to save at least the flag byte, otherwise the payload is sent as is
+        final byte[] output = new byte[length];
+        output[0] = DEFLATED | ACCEPTS_DEFLATED;
+        final int deflated;
+        final boolean finished;
+        try {
+            setInput(deflater, payload);
+            deflater.finish();
+            deflated = deflater.deflate(output, 1, output.length - 1);
+            finished = deflater.finished();
+        } finally {
+            deflater.reset();
+            if (!deflaters.offer(deflater)) {
+                deflater.end();
+            }
+        }
+        
+        if (!finished) return uncompressed(payload);
+        
+        final ProtocolStatistics stats = ProtocolHandler.writing();
+        if (stats != null) {
+            stats.compressed(length, deflated, System.nanoTime() - start);
+        }
+        return ChannelBuffers.wrappedBuffer(output, 0, deflated + 1);
+    }
+    
+    private static ChannelBuffer uncompressed(ChannelBuffer payload) {
+        return ChannelBuffers.wrappedBuffer(ChannelBuffers.wrappedBuffer(new byte[] {ACCEPTS_DEFLATED}), payload);
+    }
+    
+    private static void setInput(Deflater deflater, ChannelBuffer buffer) {
+        if (buffer.hasArray()) {
+            deflater.setInput(buffer.array(), buffer.arrayOffset() + buffer.readerIndex(), buffer.readableBytes());
+        } else {
+            final byte[] bytes = new byte[buffer.readableBytes()];
+            buffer.getBytes(buffer.readerIndex(), bytes);
+            deflater.setInput(bytes);
+        }
+    }
+    
+    private static void setInput(Inflater inflater, ChannelBuffer buffer) {
+        if (buffer.hasArray()) {
+            inflater.setInput(buffer.array(), buffer.arrayOffset() + buffer.readerIndex(), buffer.readableBytes());
+        } else {
+            final byte[] bytes = new byte[buffer.readableBytes()];
+            buffer.getBytes(buffer.readerIndex(), bytes);
+            inflater.setInput(bytes);
+        }
+    }
+    
+    long getDecompressed() {
+        return decompressed.get();
+    }
+    
+}
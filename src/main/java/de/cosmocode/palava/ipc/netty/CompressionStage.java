@@ -0,0 +1,117 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.cosmocode.palava.ipc.netty;
+
+import java.util.zip.Deflater;
+
+import org.jboss.netty.channel.ChannelPipeline;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+
+import de.cosmocode.palava.core.lifecycle.Initializable;
+import de.cosmocode.palava.core.lifecycle.LifecycleException;
+
+/**
+ * Configurable stage which compresses large responses and decompresses requests
+ * using a {@link CompressionHandler}. Requires the {@link FramingStage}.
+ * 
+ * <p>
+ *   Enabling compression is an incompatible change of the wire format: every frame
+ *   starts with a flag byte, so clients have to enable compression as well. The flag byte
+ *   also reduces the maximum payload length to one byte less than the maximum frame length.
+ * </p>
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+final class CompressionStage implements Initializable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CompressionStage.class);
+    
+    static final String NAME = "compression-handler";
+    
+    private final FramingStage framingStage;
+    
+    private String name = "netty";
+    
+    private boolean enabled;
+    
+    private int threshold = 1024;
+    
+    private int level = Deflater.BEST_SPEED;
+    
+    private CompressionHandler handler;
+    
+    @Inject
+    CompressionStage(FramingStage framingStage) {
+        this.framingStage = Preconditions.checkNotNull(framingStage, "FramingStage");
+    }
+    
+    @Inject(optional = true)
+    void setName(@Named(NettyServiceConfig.NAME) String name) {
+        this.name = Preconditions.checkNotNull(name, "Name");
+    }
+    
+    @Inject(optional = true)
+    void setEnabled(@Named(NettyServiceConfig.COMPRESSION) boolean enabled) {
+        this.enabled = enabled;
+    }
+    
+    @Inject(optional = true)
+    void setThreshold(@Named(NettyServiceConfig.COMPRESSION_THRESHOLD) int threshold) {
+        this.threshold = threshold;
+    }
+    
+    @Inject(optional = true)
+    void setLevel(@Named(NettyServiceConfig.COMPRESSION_LEVEL) int level) {
+        this.level = level;
+    }
+    
+    @Override
+    public void initialize() throws LifecycleException {
+        if (!enabled) return;
+        Preconditions.checkState(framingStage.isEnabled(), "Compression of %s requires framing", name);
+        Preconditions.checkState(framingStage.getMaxFrameLength() > 1, 
+            "Compression of %s requires a maximum frame length of at least 2", name);
+        LOG.info("Compressing responses of {} from {} bytes on using deflate level {}", new Object[] {
+            name, threshold, level
+        });
+        // the flag byte is part of every frame
+        handler = new CompressionHandler(threshold, level, framingStage.getMaxFrameLength() - 1);
+    }
+    
+    /**
+     * Installs this stage right behind the framing codec of the given pipeline.
+     * 
+     * @since 2.0
+     * @param pipeline the pipeline of a new channel
+     */
+    void install(ChannelPipeline pipeline) {
+        if (handler == null) return;
+        pipeline.addAfter(FramingStage.ENCODER_NAME, NAME, handler);
+    }
+    
+    long getDecompressed() {
+        return handler == null ? 0L : handler.getDecompressed();
+    }
+    
+}
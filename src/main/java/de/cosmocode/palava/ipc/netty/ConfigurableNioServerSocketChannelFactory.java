@@ -16,6 +16,7 @@
 
 package de.cosmocode.palava.ipc.netty;
 
+import java.nio.channels.spi.SelectorProvider;
 import java.util.concurrent.ExecutorService;
 
 import org.jboss.netty.channel.ChannelPipeline;
@@ -70,6 +71,8 @@ final class ConfigurableNioServerSocketChannelFactory implements ServerChannelFa
         LOG.trace("Configuring {} with boss {}, worker {} and worker count {}", new Object[] {
             this, boss, worker, workerCount
         });
+        // on linux this is the epoll based provider unless overridden using java.nio.channels.spi.SelectorProvider
+        LOG.info("Using selector provider {}", SelectorProvider.provider().getClass().getName());
         this.factory = new NioServerSocketChannelFactory(boss, worker, workerCount);
     }
     
@@ -0,0 +1,36 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import de.cosmocode.palava.ipc.protocol.Protocol;
+
+/**
+ * Marker interface for {@link Protocol}s whose {@link Protocol#supports(Object)}
+ * does not depend solely on the class of the request.
+ * 
+ * <p>
+ *   {@link ProtocolHandler} caches the protocol which handles a specific request class.
+ *   Protocols implementing this interface are excluded from that assumption
+ *   and will be asked for every request of a cached class.
+ * </p>
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+public interface ContentBasedProtocol extends Protocol {
+
+}
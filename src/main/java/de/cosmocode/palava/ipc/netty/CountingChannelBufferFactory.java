@@ -0,0 +1,102 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.jboss.netty.buffer.AbstractChannelBufferFactory;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferFactory;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * {@link ChannelBufferFactory} decorator which counts the buffers allocated by
+ * its delegate, including their capacity.
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+@ThreadSafe
+final class CountingChannelBufferFactory extends AbstractChannelBufferFactory {
+
+    private final ChannelBufferFactory delegate;
+    
+    private final AtomicLong buffers = new AtomicLong();
+    
+    private final AtomicLong bytes = new AtomicLong();
+    
+    private final AtomicLong directBytes = new AtomicLong();
+    
+    CountingChannelBufferFactory(ChannelBufferFactory delegate) {
+        super(Preconditions.checkNotNull(delegate, "Delegate").getDefaultOrder());
+        this.delegate = delegate;
+    }
+    
+    @Override
+    public ChannelBuffer getBuffer(ByteOrder order, int capacity) {
+        return count(delegate.getBuffer(order, capacity));
+    }
+    
+    @Override
+    public ChannelBuffer getBuffer(ByteOrder order, byte[] array, int offset, int length) {
+        return count(delegate.getBuffer(order, array, offset, length));
+    }
+    
+    @Override
+    public ChannelBuffer getBuffer(ByteBuffer buffer) {
+        return count(delegate.getBuffer(buffer));
+    }
+    
+    private ChannelBuffer count(ChannelBuffer buffer) {
+        final int capacity = buffer.capacity();
+        // empty buffers are shared constants
+        if (capacity == 0) return buffer;
+        buffers.incrementAndGet();
+        bytes.addAndGet(capacity);
+        if (buffer.isDirect()) {
+            directBytes.addAndGet(capacity);
+        }
+        return buffer;
+    }
+    
+    ChannelBufferFactory getDelegate() {
+        return delegate;
+    }
+    
+    long getBuffers() {
+        return buffers.get();
+    }
+    
+    long getBytes() {
+        return bytes.get();
+    }
+    
+    long getDirectBytes() {
+        return directBytes.get();
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("%s [%s]", CountingChannelBufferFactory.class.getSimpleName(), delegate);
+    }
+    
+}
@@ -0,0 +1,49 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import de.cosmocode.palava.ipc.protocol.Protocol;
+
+/**
+ * Defines where {@link ProtocolHandler} executes {@link Protocol}s.
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+public enum ExecutionMode {
+    
+    /**
+     * Requests are processed directly on the netty I/O worker thread.
+     */
+    DIRECT,
+    
+    /**
+     * Requests are handed over to a bounded, memory aware thread pool which
+     * preserves the order of events per channel.
+     */
+    POOLED,
+    
+    /**
+     * Every request is processed on its own virtual thread, preserving the order
+     * of events per channel and limiting the number of concurrently processed requests.
+     * Reads of a channel are suspended while its pending requests exceed the maximum channel memory size.
+     * Falls back to a pool of at most as many platform threads as requests may be processed
+     * concurrently on runtimes without virtual thread support.
+     */
+    VIRTUAL;
+    
+}
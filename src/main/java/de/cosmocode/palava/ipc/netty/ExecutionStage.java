@@ -0,0 +1,195 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.netty.channel.ChannelHandler;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.handler.execution.ExecutionHandler;
+import org.jboss.netty.handler.execution.MemoryAwareThreadPoolExecutor;
+import org.jboss.netty.handler.execution.OrderedMemoryAwareThreadPoolExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+
+import de.cosmocode.palava.core.lifecycle.Disposable;
+import de.cosmocode.palava.core.lifecycle.Initializable;
+import de.cosmocode.palava.core.lifecycle.LifecycleException;
+
+/**
+ * Configurable execution stage which decouples request processing
+ * from the netty I/O worker threads.
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+final class ExecutionStage implements Initializable, Disposable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ExecutionStage.class);
+    
+    static final String NAME = "execution-handler";
+    
+    private String name = "netty";
+    
+    private ExecutionMode mode = ExecutionMode.DIRECT;
+    
+    private int poolSize = Runtime.getRuntime().availableProcessors() * 2;
+    
+    private long maxChannelMemorySize = 1024 * 1024;
+    
+    private long maxTotalMemorySize = 64 * 1024 * 1024;
+    
+    private long keepAliveTime = 30;
+    
+    private TimeUnit keepAliveTimeUnit = TimeUnit.SECONDS;
+    
+    private int maxConcurrency = 10000;
+    
+    private boolean pipelining;
+    
+    private ExecutorService executor;
+    
+    private ChannelHandler handler;
+    
+    @Inject(optional = true)
+    void setName(@Named(NettyServiceConfig.NAME) String name) {
+        this.name = Preconditions.checkNotNull(name, "Name");
+    }
+    
+    @Inject(optional = true)
+    void setMode(@Named(NettyServiceConfig.EXECUTION_MODE) ExecutionMode mode) {
+        this.mode = Preconditions.checkNotNull(mode, "Mode");
+    }
+    
+    @Inject(optional = true)
+    void setPoolSize(@Named(NettyServiceConfig.EXECUTION_POOL_SIZE) int poolSize) {
+        this.poolSize = poolSize;
+    }
+    
+    @Inject(optional = true)
+    void setMaxChannelMemorySize(@Named(NettyServiceConfig.EXECUTION_MAX_CHANNEL_MEMORY_SIZE) long size) {
+        this.maxChannelMemorySize = size;
+    }
+    
+    @Inject(optional = true)
+    void setMaxTotalMemorySize(@Named(NettyServiceConfig.EXECUTION_MAX_TOTAL_MEMORY_SIZE) long size) {
+        this.maxTotalMemorySize = size;
+    }
+    
+    @Inject(optional = true)
+    void setKeepAliveTime(@Named(NettyServiceConfig.EXECUTION_KEEP_ALIVE_TIME) long keepAliveTime) {
+        this.keepAliveTime = keepAliveTime;
+    }
+    
+    @Inject(optional = true)
+    void setKeepAliveTimeUnit(@Named(NettyServiceConfig.EXECUTION_KEEP_ALIVE_TIME_UNIT) TimeUnit keepAliveTimeUnit) {
+        this.keepAliveTimeUnit = Preconditions.checkNotNull(keepAliveTimeUnit, "KeepAliveTimeUnit");
+    }
+    
+    @Inject(optional = true)
+    void setMaxConcurrency(@Named(NettyServiceConfig.EXECUTION_MAX_CONCURRENCY) int maxConcurrency) {
+        this.maxConcurrency = maxConcurrency;
+    }
+    
+    @Inject(optional = true)
+    void setPipelining(@Named(NettyServiceConfig.PIPELINING) boolean pipelining) {
+        this.pipelining = pipelining;
+    }
+    
+    @Override
+    public void initialize() throws LifecycleException {
+        final Executor channelExecutor;
+        
+        switch (mode) {
+            case DIRECT: {
+                LOG.info("Processing requests of {} on I/O threads", name);
+                if (pipelining) {
+                    LOG.warn("Pipelining of {} requires a non-direct execution mode, ignoring", name);
+                }
+                return;
+            }
+            case POOLED: {
+                Preconditions.checkState(poolSize > 0, "Pool size must be positive, but was %s", poolSize);
+                LOG.info("Processing requests of {} using {} pooled thread(s)", name, poolSize);
+                final ThreadFactory factory = new ThreadFactoryBuilder().setNameFormat(name + "-execution-%d").build();
+                if (pipelining) {
+                    executor = new MemoryAwareThreadPoolExecutor(
+                        poolSize, maxChannelMemorySize, maxTotalMemorySize, keepAliveTime, keepAliveTimeUnit, factory
+                    );
+                } else {
+                    executor = new OrderedMemoryAwareThreadPoolExecutor(
+                        poolSize, maxChannelMemorySize, maxTotalMemorySize, keepAliveTime, keepAliveTimeUnit, factory
+                    );
+                }
+                channelExecutor = executor;
+                break;
+            }
+            case VIRTUAL: {
+                Preconditions.checkState(maxConcurrency > 0, 
+                    "Max concurrency must be positive, but was %s", maxConcurrency);
+                LOG.info("Processing requests of {} using at most {} concurrent virtual thread(s)",
+                    name, maxConcurrency);
+                // without virtual threads, a platform thread per queued task would only block on the permits
+                executor = VirtualThreads.newThreadPerTaskExecutor(name + "-execution", maxConcurrency);
+                channelExecutor = new OrderedChannelExecutor(executor, maxConcurrency, maxChannelMemorySize);
+                break;
+            }
+            default: {
+                throw new AssertionError("Unknown execution mode " + mode);
+            }
+        }
+        
+        if (pipelining) {
+            LOG.info("Enabling pipelining for {}", name);
+            handler = new PipeliningHandler(channelExecutor);
+        } else {
+            handler = new ExecutionHandler(channelExecutor);
+        }
+    }
+    
+    /**
+     * Installs this stage into the given pipeline, right in front of the
+     * {@link ProtocolHandler} or at the very beginning if there is none.
+     * 
+     * @since 2.0
+     * @param pipeline the pipeline of a new channel
+     */
+    void install(ChannelPipeline pipeline) {
+        if (handler == null) return;
+        final ProtocolHandler protocolHandler = pipeline.get(ProtocolHandler.class);
+        if (protocolHandler == null) {
+            pipeline.addFirst(NAME, handler);
+        } else {
+            pipeline.addBefore(pipeline.getContext(protocolHandler).getName(), NAME, handler);
+        }
+    }
+    
+    @Override
+    public void dispose() throws LifecycleException {
+        if (executor == null) return;
+        executor.shutdownNow();
+    }
+    
+}
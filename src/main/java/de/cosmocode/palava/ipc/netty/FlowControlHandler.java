@@ -0,0 +1,262 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelEvent;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelHandler;
+import org.jboss.netty.channel.ChannelHandler.Sharable;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelState;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.DownstreamChannelStateEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A {@link ChannelHandler} which suspends reading from a channel as soon as the number
+ * of written but not yet flushed bytes exceeds a high water mark and resumes reading
+ * once it dropped below the low water mark.
+ * 
+ * <p>
+ *   Readability requested by other handlers while a channel is suspended is remembered
+ *   and applied when resuming. This handler has to be placed in front of all encoders,
+ *   because only {@link ChannelBuffer}s are accounted.
+ * </p>
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+@Sharable
+@ThreadSafe
+final class FlowControlHandler extends SimpleChannelHandler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FlowControlHandler.class);
+    
+    private final long highWaterMark;
+    
+    private final long lowWaterMark;
+    
+    private final AtomicInteger suspended = new AtomicInteger();
+    
+    FlowControlHandler(long highWaterMark, long lowWaterMark) {
+        Preconditions.checkArgument(highWaterMark > 0, "High water mark must be positive, but was %s", highWaterMark);
+        Preconditions.checkArgument(lowWaterMark >= 0 && lowWaterMark <= highWaterMark,
+            "Low water mark must be within [0, %s], but was %s", highWaterMark, lowWaterMark);
+        this.highWaterMark = highWaterMark;
+        this.lowWaterMark = lowWaterMark;
+    }
+    
+    @Override
+    public void channelOpen(ChannelHandlerContext context, ChannelStateEvent event) throws Exception {
+        context.setAttachment(new State(context));
+        super.channelOpen(context, event);
+    }
+    
+    @Override
+    public void channelClosed(ChannelHandlerContext context, ChannelStateEvent event) throws Exception {
+        final State state = (State) context.getAttachment();
+        if (state != null) {
+            state.close();
+        }
+        super.channelClosed(context, event);
+    }
+    
+    @Override
+    public void handleDownstream(ChannelHandlerContext context, ChannelEvent event) throws Exception {
+        final State state = (State) context.getAttachment();
+        if (state == null) {
+            context.sendDownstream(event);
+        } else if (ChannelBuffering.isBuffer(event)) {
+            state.write(MessageEvent.class.cast(event));
+        } else if (event instanceof ChannelStateEvent && isInterestOps(ChannelStateEvent.class.cast(event))) {
+            state.setInterestOps(ChannelStateEvent.class.cast(event));
+        } else {
+            context.sendDownstream(event);
+        }
+    }
+    
+    private boolean isInterestOps(ChannelStateEvent event) {
+        return event.getState() == ChannelState.INTEREST_OPS;
+    }
+    
+    int getSuspended() {
+        return suspended.get();
+    }
+    
+    /**
+     * Per channel flow control state.
+     *
+     * @since 2.0
+     * @author Willi Schoenborn
+     */
+    private final class State {
+        
+        private final ChannelHandlerContext context;
+        
+        private final AtomicLong pending = new AtomicLong();
+        
+        @GuardedBy("this")
+        private boolean paused;
+        
+        @GuardedBy("this")
+        private boolean readRequested = true;
+        
+        @GuardedBy("this")
+        private boolean closed;
+        
+        @GuardedBy("this")
+        private final Queue<ChannelEvent> events = new LinkedList<ChannelEvent>();
+        
+        @GuardedBy("this")
+        private boolean sending;
+        
+        private State(ChannelHandlerContext context) {
+            this.context = context;
+        }
+        
+        private void write(MessageEvent event) {
+            final int size = ChannelBuffer.class.cast(event.getMessage()).readableBytes();
+            if (pending.addAndGet(size) > highWaterMark) {
+                pause();
+            }
+            
+            event.getFuture().addListener(new ChannelFutureListener() {
+                
+                @Override
+                public void operationComplete(ChannelFuture future) throws Exception {
+                    if (pending.addAndGet(-size) <= lowWaterMark) {
+                        resume();
+                    }
+                }
+                
+            });
+            
+            context.sendDownstream(event);
+        }
+        
+        private void setInterestOps(ChannelStateEvent event) {
+            synchronized (this) {
+                final int ops = ((Integer) event.getValue()).intValue();
+                readRequested = (ops & Channel.OP_READ) != 0;
+                if (paused && readRequested) {
+                    events.add(new DownstreamChannelStateEvent(
+                        event.getChannel(), event.getFuture(), ChannelState.INTEREST_OPS, ops & ~Channel.OP_READ));
+                } else {
+                    events.add(event);
+                }
+            }
+            flush();
+        }
+        
+        private void pause() {
+            synchronized (this) {
+                // completions on other threads may have drained the channel in the meantime
+                if (paused || closed || pending.get() <= highWaterMark) return;
+                paused = true;
+                suspended.incrementAndGet();
+                final Channel channel = context.getChannel();
+                LOG.trace("Suspending reads from {}, {} bytes pending", channel, pending);
+                if (readRequested) {
+                    queueInterestOps(channel, channel.getInterestOps() & ~Channel.OP_READ);
+                }
+            }
+            flush();
+        }
+        
+        private void resume() {
+            synchronized (this) {
+                // writes on other threads may have exceeded the high water mark in the meantime
+                if (!paused || pending.get() > lowWaterMark) return;
+                paused = false;
+                suspended.decrementAndGet();
+                if (closed) return;
+                final Channel channel = context.getChannel();
+                LOG.trace("Resuming reads from {}, {} bytes pending", channel, pending);
+                if (readRequested) {
+                    queueInterestOps(channel, channel.getInterestOps() | Channel.OP_READ);
+                }
+            }
+            flush();
+        }
+        
+        @GuardedBy("this")
+        private void queueInterestOps(Channel channel, int ops) {
+            events.add(new DownstreamChannelStateEvent(
+                channel, Channels.future(channel), ChannelState.INTEREST_OPS, ops));
+        }
+        
+        /**
+         * Sends all queued events in order. Events are sent without holding the monitor
+         * of this state, because sending may block on locks of following handlers whose
+         * owners complete writes and therefore call {@link #resume()}. Only one thread
+         * sends at a time, events queued by others in the meantime are sent by that thread.
+         */
+        private void flush() {
+            synchronized (this) {
+                if (sending) return;
+                sending = true;
+            }
+            ChannelEvent event = null;
+            try {
+                while ((event = next()) != null) {
+                    context.sendDownstream(event);
+                }
+            } finally {
+                if (event != null) {
+                    synchronized (this) {
+                        sending = false;
+                    }
+                }
+            }
+        }
+        
+        private synchronized ChannelEvent next() {
+            final ChannelEvent event = events.poll();
+            if (event == null) {
+                sending = false;
+            }
+            return event;
+        }
+        
+        private synchronized void close() {
+            closed = true;
+            if (paused) {
+                paused = false;
+                suspended.decrementAndGet();
+            }
+        }
+        
+    }
+    
+}
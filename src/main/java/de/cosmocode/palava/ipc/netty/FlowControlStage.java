@@ -0,0 +1,91 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import org.jboss.netty.channel.ChannelPipeline;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+
+import de.cosmocode.palava.core.lifecycle.Initializable;
+import de.cosmocode.palava.core.lifecycle.LifecycleException;
+
+/**
+ * Configurable stage which suspends reads based on outbound water marks
+ * using a {@link FlowControlHandler}.
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+final class FlowControlStage implements Initializable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FlowControlStage.class);
+    
+    static final String NAME = "flow-control-handler";
+    
+    private String name = "netty";
+    
+    private long highWaterMark;
+    
+    private long lowWaterMark = -1;
+    
+    private FlowControlHandler handler;
+    
+    @Inject(optional = true)
+    void setName(@Named(NettyServiceConfig.NAME) String name) {
+        this.name = Preconditions.checkNotNull(name, "Name");
+    }
+    
+    @Inject(optional = true)
+    void setHighWaterMark(@Named(NettyServiceConfig.HIGH_WATER_MARK) long highWaterMark) {
+        this.highWaterMark = highWaterMark;
+    }
+    
+    @Inject(optional = true)
+    void setLowWaterMark(@Named(NettyServiceConfig.LOW_WATER_MARK) long lowWaterMark) {
+        this.lowWaterMark = lowWaterMark;
+    }
+    
+    @Override
+    public void initialize() throws LifecycleException {
+        if (highWaterMark <= 0) return;
+        final long low = lowWaterMark < 0 ? highWaterMark / 2 : lowWaterMark;
+        LOG.info("Suspending reads of {} above {} and resuming below {} pending bytes", new Object[] {
+            name, highWaterMark, low
+        });
+        handler = new FlowControlHandler(highWaterMark, low);
+    }
+    
+    /**
+     * Installs this stage as the first handler of the given pipeline.
+     * 
+     * @since 2.0
+     * @param pipeline the pipeline of a new channel
+     */
+    void install(ChannelPipeline pipeline) {
+        if (handler == null) return;
+        pipeline.addFirst(NAME, handler);
+    }
+    
+    int getSuspended() {
+        return handler == null ? 0 : handler.getSuspended();
+    }
+    
+}
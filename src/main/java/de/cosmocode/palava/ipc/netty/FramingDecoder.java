@@ -0,0 +1,136 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.handler.codec.frame.CorruptedFrameException;
+import org.jboss.netty.handler.codec.frame.FrameDecoder;
+import org.jboss.netty.handler.codec.frame.TooLongFrameException;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Decodes frames written by a {@link FramingEncoder}: a four byte length field, followed by
+ * the payload and, if enabled, the CRC-32 of the payload. Length field and checksum are big endian,
+ * regardless of the byte order of the received buffers. Frames which are completely contained
+ * in a received buffer are passed on as slices of that buffer, without copying. This requires
+ * transports to hand out a fresh buffer per read, which holds for all transports of this module.
+ * Frames larger than the maximum frame length are discarded and reported using
+ * a {@link TooLongFrameException}, checksum mismatches using a {@link CorruptedFrameException}.
+ * 
+ * <p>
+ *   Instances hold per channel state and must not be shared.
+ * </p>
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+public final class FramingDecoder extends FrameDecoder {
+
+    private final int maxFrameLength;
+    
+    private final boolean checksum;
+    
+    private final int trailerLength;
+    
+    private ChannelBuffer received;
+    
+    // remaining bytes of a frame exceeding the maximum frame length
+    private long discarding;
+    
+    private long tooLongFrameLength;
+    
+    /**
+     * Creates a new decoder.
+     * 
+     * @since 2.0
+     * @param maxFrameLength the maximum payload length in bytes
+     * @param checksum true if frames carry a checksum
+     * @throws IllegalArgumentException if maxFrameLength is not positive or too large
+     */
+    public FramingDecoder(int maxFrameLength, boolean checksum) {
+        Preconditions.checkArgument(maxFrameLength > 0 && maxFrameLength <= Integer.MAX_VALUE - 8,
+            "MaxFrameLength must be positive and less than %s, but was %s", Integer.MAX_VALUE - 8, maxFrameLength);
+        this.maxFrameLength = maxFrameLength;
+        this.checksum = checksum;
+        this.trailerLength = checksum ? FramingEncoder.CHECKSUM_LENGTH : 0;
+    }
+    
+    @Override
+    public void messageReceived(ChannelHandlerContext context, MessageEvent event) throws Exception {
+        received = event.getMessage() instanceof ChannelBuffer ? ChannelBuffer.class.cast(event.getMessage()) : null;
+        try {
+            super.messageReceived(context, event);
+        } finally {
+            received = null;
+        }
+    }
+    
+    @Override
+    protected Object decode(ChannelHandlerContext context, Channel channel, ChannelBuffer buffer) throws Exception {
+        if (discarding > 0) return discard(channel, buffer);
+        if (buffer.readableBytes() < FramingEncoder.HEADER_LENGTH) return null;
+        
+        final long length = FramingEncoder.getInt(buffer, buffer.readerIndex()) & 0xFFFFFFFFL;
+        if (length > maxFrameLength) {
+            buffer.skipBytes(FramingEncoder.HEADER_LENGTH);
+            tooLongFrameLength = length;
+            discarding = length + trailerLength;
+            return discard(channel, buffer);
+        }
+        
+        final int payloadLength = (int) length;
+        final int frameLength = FramingEncoder.HEADER_LENGTH + payloadLength + trailerLength;
+        if (buffer.readableBytes() < frameLength) return null;
+        
+        final int index = buffer.readerIndex() + FramingEncoder.HEADER_LENGTH;
+        buffer.skipBytes(frameLength);
+        
+        if (checksum) {
+            final int expected = FramingEncoder.getInt(buffer, index + payloadLength);
+            final int actual = Checksums.crc32(buffer, index, payloadLength);
+            if (expected != actual) {
+                throw new CorruptedFrameException(String.format(
+                    "Checksum mismatch in frame of %s bytes on %s: expected %08x but was %08x",
+                    payloadLength, channel, expected, actual));
+            }
+        }
+        
+        return extractFrame(buffer, index, payloadLength);
+    }
+    
+    private Object discard(Channel channel, ChannelBuffer buffer) throws TooLongFrameException {
+        final int skipped = (int) Math.min(discarding, buffer.readableBytes());
+        buffer.skipBytes(skipped);
+        discarding -= skipped;
+        if (discarding > 0) return null;
+        throw new TooLongFrameException(String.format(
+            "Frame of %s bytes exceeds maximum of %s bytes on %s", tooLongFrameLength, maxFrameLength, channel));
+    }
+    
+    private ChannelBuffer extractFrame(ChannelBuffer buffer, int index, int length) {
+        // the cumulation buffer gets compacted when more data arrives, frames in there have to be copied
+        if (buffer == received) return buffer.slice(index, length);
+        final ChannelBuffer frame = buffer.factory().getBuffer(buffer.order(), length);
+        frame.writeBytes(buffer, index, length);
+        return frame;
+    }
+    
+}
@@ -0,0 +1,110 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import java.nio.ByteOrder;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferFactory;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandler.Sharable;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.handler.codec.frame.TooLongFrameException;
+import org.jboss.netty.handler.codec.oneone.OneToOneEncoder;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Frames outgoing {@link ChannelBuffer}s with a four byte length field and, if enabled,
+ * a trailing CRC-32 of the payload. The frame is composed of the header, the payload and
+ * the checksum without copying the payload. Payloads larger than the maximum frame length
+ * are rejected using a {@link TooLongFrameException}. Other messages are passed on unchanged.
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ * @see FramingDecoder
+ */
+@Sharable
+public final class FramingEncoder extends OneToOneEncoder {
+
+    static final int HEADER_LENGTH = 4;
+    
+    static final int CHECKSUM_LENGTH = 4;
+    
+    private final int maxFrameLength;
+    
+    private final boolean checksum;
+    
+    /**
+     * Creates a new encoder.
+     * 
+     * @since 2.0
+     * @param maxFrameLength the maximum payload length in bytes
+     * @param checksum true if frames should carry a checksum
+     * @throws IllegalArgumentException if maxFrameLength is not positive
+     */
+    public FramingEncoder(int maxFrameLength, boolean checksum) {
+        Preconditions.checkArgument(maxFrameLength > 0, "MaxFrameLength must be positive, but was %s", maxFrameLength);
+        this.maxFrameLength = maxFrameLength;
+        this.checksum = checksum;
+    }
+    
+    static int overhead(boolean checksum) {
+        return HEADER_LENGTH + (checksum ? CHECKSUM_LENGTH : 0);
+    }
+    
+    @Override
+    protected Object encode(ChannelHandlerContext context, Channel channel, Object message) throws Exception {
+        if (!(message instanceof ChannelBuffer)) return message;
+        
+        final ChannelBuffer payload = ChannelBuffer.class.cast(message);
+        final int length = payload.readableBytes();
+        if (length > maxFrameLength) {
+            throw new TooLongFrameException(String.format(
+                "Frame of %s bytes exceeds maximum of %s bytes on %s", length, maxFrameLength, channel));
+        }
+        
+        final ChannelBufferFactory factory = channel.getConfig().getBufferFactory();
+        final ChannelBuffer header = factory.getBuffer(payload.order(), HEADER_LENGTH);
+        writeInt(header, length);
+        if (!checksum) return ChannelBuffers.wrappedBuffer(header, payload);
+        
+        final ChannelBuffer trailer = factory.getBuffer(payload.order(), CHECKSUM_LENGTH);
+        writeInt(trailer, Checksums.crc32(payload, payload.readerIndex(), length));
+        return ChannelBuffers.wrappedBuffer(header, payload, trailer);
+    }
+    
+    private static void writeInt(ChannelBuffer buffer, int value) {
+        // components of a composite buffer share one byte order, the wire format is big endian
+        buffer.writeInt(buffer.order() == ByteOrder.BIG_ENDIAN ? value : Integer.reverseBytes(value));
+    }
+    
+    /**
+     * Reads a big endian int at the given index, regardless of the byte order of the given buffer.
+     * 
+     * @since 2.0
+     * @param buffer the buffer
+     * @param index the index of the first byte
+     * @return the int at the given index
+     */
+    static int getInt(ChannelBuffer buffer, int index) {
+        final int value = buffer.getInt(index);
+        return buffer.order() == ByteOrder.BIG_ENDIAN ? value : Integer.reverseBytes(value);
+    }
+    
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import org.jboss.netty.channel.ChannelPipeline;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+
+import de.cosmocode.palava.core.lifecycle.Initializable;
+import de.cosmocode.palava.core.lifecycle.LifecycleException;
+
+/**
+ * Configurable stage which frames requests and responses
+ * using a {@link FramingDecoder} and a {@link FramingEncoder}.
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+final class FramingStage implements Initializable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FramingStage.class);
+    
+    static final String DECODER_NAME = "frame-decoder";
+    
+    static final String ENCODER_NAME = "frame-encoder";
+    
+    private String name = "netty";
+    
+    private boolean enabled;
+    
+    private int maxFrameLength = 8 * 1024 * 1024;
+    
+    private boolean checksum;
+    
+    private FramingEncoder encoder;
+    
+    @Inject(optional = true)
+    void setName(@Named(NettyServiceConfig.NAME) String name) {
+        this.name = Preconditions.checkNotNull(name, "Name");
+    }
+    
+    @Inject(optional = true)
+    void setEnabled(@Named(NettyServiceConfig.FRAMING) boolean enabled) {
+        this.enabled = enabled;
+    }
+    
+    @Inject(optional = true)
+    void setMaxFrameLength(@Named(NettyServiceConfig.MAX_FRAME_LENGTH) int maxFrameLength) {
+        this.maxFrameLength = maxFrameLength;
+    }
+    
+    @Inject(optional = true)
+    void setChecksum(@Named(NettyServiceConfig.FRAME_CHECKSUM) boolean checksum) {
+        this.checksum = checksum;
+    }
+    
+    @Override
+    public void initialize() throws LifecycleException {
+        if (!enabled) return;
+        LOG.info("Framing {} with frames of up to {} bytes {} checksums", new Object[] {
+            name, maxFrameLength, checksum ? "with" : "without"
+        });
+        // fail early on invalid configuration
+        new FramingDecoder(maxFrameLength, checksum);
+        encoder = new FramingEncoder(maxFrameLength, checksum);
+    }
+    
+    boolean isEnabled() {
+        return enabled;
+    }
+    
+    int getMaxFrameLength() {
+        return maxFrameLength;
+    }
+    
+    /**
+     * Installs this stage as the first handlers of the given pipeline.
+     * 
+     * @since 2.0
+     * @param pipeline the pipeline of a new channel
+     */
+    void install(ChannelPipeline pipeline) {
+        if (encoder == null) return;
+        pipeline.addFirst(ENCODER_NAME, encoder);
+        pipeline.addFirst(DECODER_NAME, new FramingDecoder(maxFrameLength, checksum));
+    }
+    
+}
@@ -0,0 +1,70 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandler;
+import org.jboss.netty.channel.ChannelHandler.Sharable;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.handler.timeout.IdleStateAwareChannelUpstreamHandler;
+import org.jboss.netty.handler.timeout.IdleStateEvent;
+import org.jboss.netty.handler.timeout.IdleStateHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link ChannelHandler} which closes channels reported to be idle by an
+ * {@link IdleStateHandler}. Closing the channel releases its connection state.
+ * Channels with requests in flight, as reported by the {@link InFlightHandler}, are not
+ * idle, even if the client did not send anything in the meantime.
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+@Sharable
+@ThreadSafe
+final class IdleReaper extends IdleStateAwareChannelUpstreamHandler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(IdleReaper.class);
+    
+    private final AtomicLong reaped = new AtomicLong();
+    
+    @Override
+    public void channelIdle(ChannelHandlerContext context, IdleStateEvent event) throws Exception {
+        final Channel channel = event.getChannel();
+        if (!channel.isOpen()) return;
+        final InFlightHandler inFlightHandler = context.getPipeline().get(InFlightHandler.class);
+        if (inFlightHandler != null && !inFlightHandler.isIdle(channel)) {
+            LOG.trace("Keeping {}, requests in flight", channel);
+            return;
+        }
+        reaped.incrementAndGet();
+        LOG.debug("Closing {}, {} since {}", new Object[] {
+            channel, event.getState().name().toLowerCase(), event.getLastActivityTimeMillis()
+        });
+        channel.close();
+    }
+    
+    long getReaped() {
+        return reaped.get();
+    }
+    
+}
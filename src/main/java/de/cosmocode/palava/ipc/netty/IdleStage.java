@@ -0,0 +1,135 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.handler.timeout.IdleStateHandler;
+import org.jboss.netty.util.HashedWheelTimer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+
+import de.cosmocode.palava.core.lifecycle.Disposable;
+import de.cosmocode.palava.core.lifecycle.Initializable;
+import de.cosmocode.palava.core.lifecycle.LifecycleException;
+
+/**
+ * Configurable stage which closes idle channels using an {@link IdleStateHandler}
+ * and an {@link IdleReaper}. All channels of a service share one timer.
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+final class IdleStage implements Initializable, Disposable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(IdleStage.class);
+    
+    static final String NAME = "idle-state-handler";
+    
+    static final String REAPER_NAME = "idle-reaper";
+    
+    private String name = "netty";
+    
+    private long readerIdleTime;
+    
+    private long writerIdleTime;
+    
+    private long allIdleTime;
+    
+    private TimeUnit idleTimeUnit = TimeUnit.SECONDS;
+    
+    private HashedWheelTimer timer;
+    
+    private IdleStateHandler handler;
+    
+    private final IdleReaper reaper = new IdleReaper();
+    
+    @Inject(optional = true)
+    void setName(@Named(NettyServiceConfig.NAME) String name) {
+        this.name = Preconditions.checkNotNull(name, "Name");
+    }
+    
+    @Inject(optional = true)
+    void setReaderIdleTime(@Named(NettyServiceConfig.READER_IDLE_TIME) long readerIdleTime) {
+        this.readerIdleTime = readerIdleTime;
+    }
+    
+    @Inject(optional = true)
+    void setWriterIdleTime(@Named(NettyServiceConfig.WRITER_IDLE_TIME) long writerIdleTime) {
+        this.writerIdleTime = writerIdleTime;
+    }
+    
+    @Inject(optional = true)
+    void setAllIdleTime(@Named(NettyServiceConfig.ALL_IDLE_TIME) long allIdleTime) {
+        this.allIdleTime = allIdleTime;
+    }
+    
+    @Inject(optional = true)
+    void setIdleTimeUnit(@Named(NettyServiceConfig.IDLE_TIME_UNIT) TimeUnit idleTimeUnit) {
+        this.idleTimeUnit = Preconditions.checkNotNull(idleTimeUnit, "IdleTimeUnit");
+    }
+    
+    @Override
+    public void initialize() throws LifecycleException {
+        if (readerIdleTime <= 0 && writerIdleTime <= 0 && allIdleTime <= 0) return;
+        LOG.info("Closing connections of {} after {}/{}/{} {} without reads/writes/both", new Object[] {
+            name, readerIdleTime, writerIdleTime, allIdleTime, idleTimeUnit.name().toLowerCase()
+        });
+        // default tick of 100ms is precise enough for idle timeouts
+        timer = new HashedWheelTimer(new ThreadFactoryBuilder().setNameFormat(name + "-idle-%d").build());
+        handler = new IdleStateHandler(timer, readerIdleTime, writerIdleTime, allIdleTime, idleTimeUnit);
+    }
+    
+    /**
+     * Installs this stage as the first handlers of the given pipeline.
+     * 
+     * @since 2.0
+     * @param pipeline the pipeline of a new channel
+     */
+    void install(ChannelPipeline pipeline) {
+        if (handler == null) return;
+        pipeline.addFirst(REAPER_NAME, reaper);
+        pipeline.addFirst(NAME, handler);
+    }
+    
+    /**
+     * Checks whether this stage closes idle channels.
+     * 
+     * @since 2.0
+     * @return true if any idle time is configured, false otherwise
+     */
+    boolean isEnabled() {
+        return handler != null;
+    }
+    
+    long getReaped() {
+        return reaper.getReaped();
+    }
+    
+    @Override
+    public void dispose() throws LifecycleException {
+        if (timer == null) return;
+        timer.stop();
+    }
+    
+}
@@ -0,0 +1,189 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelHandler;
+import org.jboss.netty.channel.ChannelHandler.Sharable;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelState;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.DownstreamChannelStateEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelHandler;
+import org.jboss.netty.channel.UpstreamMessageEvent;
+
+/**
+ * A {@link ChannelHandler} which counts the requests of each channel which have been
+ * received but not yet answered. Received messages are replaced by a {@link Request}
+ * which the {@link ProtocolHandler} completes once the response has been written.
+ * 
+ * <p>
+ *   Installed in front of the execution stage, so requests waiting for a worker thread are
+ *   considered to be in flight as well. Counters are kept per channel, the total is only
+ *   computed on demand.
+ * </p>
+ * 
+ * <p>
+ *   Once {@link #drain()} has been called, requests to resume reading are stripped of
+ *   {@link Channel#OP_READ}. Executors which limit their queued memory resume reading on their
+ *   own and would otherwise accept new requests on a channel which is about to be closed.
+ *   Channels are closed as soon as their last request in flight has been answered.
+ * </p>
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+@Sharable
+@ThreadSafe
+final class InFlightHandler extends SimpleChannelHandler {
+
+    static final String NAME = "in-flight-handler";
+    
+    private volatile boolean draining;
+    
+    /**
+     * Installs this handler in front of the execution stage or the {@link ProtocolHandler}
+     * of the given pipeline. Pipelines without a protocol handler are left unchanged.
+     * 
+     * @since 2.0
+     * @param pipeline the pipeline
+     */
+    void install(ChannelPipeline pipeline) {
+        final ProtocolHandler protocolHandler = pipeline.get(ProtocolHandler.class);
+        if (protocolHandler == null) return;
+        if (pipeline.get(ExecutionStage.NAME) == null) {
+            pipeline.addBefore(pipeline.getContext(protocolHandler).getName(), NAME, this);
+        } else {
+            pipeline.addBefore(ExecutionStage.NAME, NAME, this);
+        }
+    }
+    
+    @Override
+    public void channelOpen(ChannelHandlerContext context, ChannelStateEvent event) throws Exception {
+        context.setAttachment(new AtomicInteger());
+        super.channelOpen(context, event);
+    }
+    
+    @Override
+    public void messageReceived(ChannelHandlerContext context, MessageEvent event) throws Exception {
+        final AtomicInteger pending = (AtomicInteger) context.getAttachment();
+        pending.incrementAndGet();
+        context.sendUpstream(new Request(event, pending));
+    }
+    
+    @Override
+    public void setInterestOpsRequested(ChannelHandlerContext context, ChannelStateEvent event) throws Exception {
+        final int ops = ((Integer) event.getValue()).intValue();
+        if (draining && (ops & Channel.OP_READ) != 0) {
+            context.sendDownstream(new DownstreamChannelStateEvent(
+                event.getChannel(), event.getFuture(), ChannelState.INTEREST_OPS, ops & ~Channel.OP_READ));
+        } else {
+            context.sendDownstream(event);
+        }
+    }
+    
+    /**
+     * Prevents all channels from resuming reads and closes every channel once its last
+     * request in flight has been answered. Channels which are idle already have to be
+     * closed by the caller. Used to drain connections before shutdown.
+     * 
+     * @since 2.0
+     */
+    void drain() {
+        draining = true;
+    }
+    
+    /**
+     * Checks whether the given channel has no requests in flight.
+     * 
+     * @since 2.0
+     * @param channel the channel
+     * @return true if all received requests of the channel have been answered
+     */
+    boolean isIdle(Channel channel) {
+        return getPending(channel) == 0;
+    }
+    
+    private int getPending(Channel channel) {
+        final ChannelHandlerContext context = channel.getPipeline().getContext(this);
+        if (context == null) return 0;
+        final AtomicInteger pending = (AtomicInteger) context.getAttachment();
+        return pending == null ? 0 : pending.get();
+    }
+    
+    /**
+     * Retrieves the number of requests in flight across the given channels.
+     * 
+     * @since 2.0
+     * @param channels the channels
+     * @return number of requests in flight
+     */
+    int getTotal(Iterable<Channel> channels) {
+        int total = 0;
+        for (Channel channel : channels) {
+            total += getPending(channel);
+        }
+        return total;
+    }
+    
+    /**
+     * A received request which has not yet been answered. Completes when used as
+     * listener of the response's write future. Completing the last request of a channel
+     * closes the channel while draining.
+     *
+     * @since 2.0
+     * @author Willi Schoenborn
+     */
+    final class Request extends UpstreamMessageEvent implements ChannelFutureListener {
+        
+        private final AtomicInteger pending;
+        
+        private final AtomicBoolean completed = new AtomicBoolean();
+        
+        private Request(MessageEvent event, AtomicInteger pending) {
+            super(event.getChannel(), event.getMessage(), event.getRemoteAddress());
+            this.pending = pending;
+        }
+        
+        /**
+         * Marks this request as answered. Subsequent calls have no effect.
+         * 
+         * @since 2.0
+         */
+        void complete() {
+            if (completed.compareAndSet(false, true) && pending.decrementAndGet() == 0 && draining) {
+                getChannel().close();
+            }
+        }
+        
+        @Override
+        public void operationComplete(ChannelFuture future) {
+            complete();
+        }
+        
+    }
+    
+}
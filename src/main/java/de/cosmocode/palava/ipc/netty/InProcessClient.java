@@ -0,0 +1,122 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import java.io.Closeable;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFactory;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.channel.local.DefaultLocalClientChannelFactory;
+import org.jboss.netty.channel.local.LocalAddress;
+
+import com.google.common.base.Preconditions;
+
+import de.cosmocode.palava.ipc.protocol.Protocol;
+
+/**
+ * A client for the in-process endpoint of a service running in the same jvm,
+ * configured using {@link NettyServiceConfig#IN_PROCESS_NAME}. Requests and responses
+ * are passed as they are, without any encoding, and are processed on the calling thread.
+ * 
+ * <p>
+ *   Every client represents one connection. Calls are serialized.
+ * </p>
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+@ThreadSafe
+public final class InProcessClient implements Closeable {
+
+    private static final ChannelFactory FACTORY = new DefaultLocalClientChannelFactory();
+    
+    private final Queue<Object> responses = new ConcurrentLinkedQueue<Object>();
+    
+    private final Channel channel;
+    
+    private InProcessClient(String name) {
+        final ChannelPipeline pipeline = Channels.pipeline(new SimpleChannelUpstreamHandler() {
+            
+            @Override
+            public void messageReceived(ChannelHandlerContext context, MessageEvent event) throws Exception {
+                responses.add(event.getMessage());
+            }
+            
+        });
+        this.channel = FACTORY.newChannel(pipeline);
+        final ChannelFuture future = channel.connect(new LocalAddress(name)).awaitUninterruptibly();
+        if (!future.isSuccess()) {
+            throw new IllegalStateException("Unable to connect to in-process endpoint " + name, future.getCause());
+        }
+    }
+    
+    /**
+     * Connects to the in-process endpoint with the given name.
+     * 
+     * @since 2.0
+     * @param name the name of the in-process endpoint
+     * @return a new connected client
+     * @throws NullPointerException if name is null
+     * @throws IllegalStateException if there is no endpoint with the given name
+     */
+    public static InProcessClient connect(String name) {
+        Preconditions.checkNotNull(name, "Name");
+        return new InProcessClient(name);
+    }
+    
+    /**
+     * Processes the given request and returns the response.
+     * 
+     * @since 2.0
+     * @param request the request
+     * @return the response or null if the responsible {@link Protocol} did not respond
+     * @throws NullPointerException if request is null
+     * @throws IllegalStateException if the connection has been closed
+     */
+    public synchronized Object call(Object request) {
+        Preconditions.checkNotNull(request, "Request");
+        Preconditions.checkState(channel.isOpen(), "%s has been closed", channel);
+        responses.clear();
+        // local channels deliver synchronously, the response is available once write returns
+        channel.write(request);
+        final Object response = responses.poll();
+        Preconditions.checkState(response != null || channel.isOpen(), 
+            "%s has been closed while processing %s", channel, request);
+        return response;
+    }
+    
+    @Override
+    public void close() {
+        channel.close().awaitUninterruptibly();
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("%s [%s]", InProcessClient.class.getSimpleName(), channel.getRemoteAddress());
+    }
+    
+}
@@ -0,0 +1,70 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import java.util.concurrent.ExecutorService;
+
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelSink;
+import org.jboss.netty.channel.ServerChannel;
+import org.jboss.netty.channel.ServerChannelFactory;
+import org.jboss.netty.util.internal.ExecutorUtil;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * {@link ServerChannelFactory} implementation which serves the server socket inherited
+ * from the parent process, e.g. using socket activation. Creates exactly one channel,
+ * which adopts the address of the inherited socket when being bound.
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ * @see System#inheritedChannel()
+ */
+final class InheritedServerChannelFactory implements ServerChannelFactory {
+
+    private final java.nio.channels.ServerSocketChannel socket;
+    
+    private final ExecutorService boss;
+    
+    private final ExecutorService worker;
+    
+    private final ChannelSink sink;
+    
+    private boolean used;
+    
+    InheritedServerChannelFactory(java.nio.channels.ServerSocketChannel socket,
+        ExecutorService boss, ExecutorService worker) {
+        this.socket = Preconditions.checkNotNull(socket, "Socket");
+        this.boss = Preconditions.checkNotNull(boss, "Boss");
+        this.worker = Preconditions.checkNotNull(worker, "Worker");
+        this.sink = new BlockingPipelineSink(boss, worker);
+    }
+    
+    @Override
+    public synchronized ServerChannel newChannel(ChannelPipeline pipeline) {
+        Preconditions.checkState(!used, "%s has already been adopted", socket);
+        used = true;
+        return new BlockingServerChannel(this, pipeline, sink, socket, true);
+    }
+    
+    @Override
+    public void releaseExternalResources() {
+        ExecutorUtil.terminate(boss, worker);
+    }
+    
+}
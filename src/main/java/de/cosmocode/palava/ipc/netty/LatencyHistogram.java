@@ -0,0 +1,160 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Lock-free histogram of non-negative values, usually latencies in nanoseconds.
+ * 
+ * <p>
+ *   Values are counted in log-linear buckets: every power of two is split into
+ *   {@value #SUB_BUCKETS} equally sized buckets, which bounds the relative error
+ *   of reported percentiles to 12.5% while keeping recording down to a single
+ *   atomic increment per bucket plus count and sum.
+ * </p>
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+@ThreadSafe
+final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    
+    // values below this threshold get one bucket each
+    private static final int LINEAR = SUB_BUCKETS * 2;
+    
+    private static final int LINEAR_BITS = SUB_BUCKET_BITS + 1;
+    
+    private static final int BUCKETS = LINEAR + (Long.SIZE - 1 - LINEAR_BITS) * SUB_BUCKETS;
+    
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    
+    private final AtomicLong count = new AtomicLong();
+    
+    private final AtomicLong sum = new AtomicLong();
+    
+    /**
+     * Records the given value.
+     * 
+     * @since 2.0
+     * @param value the value, negative values are recorded as 0
+     */
+    void record(long value) {
+        final long normalized = Math.max(0, value);
+        buckets.incrementAndGet(indexOf(normalized));
+        count.incrementAndGet();
+        sum.addAndGet(normalized);
+    }
+    
+    static int indexOf(long value) {
+        if (value < LINEAR) {
+            return (int) value;
+        } else {
+            final int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+            final int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+            return LINEAR + (exponent - LINEAR_BITS) * SUB_BUCKETS + sub;
+        }
+    }
+    
+    static long upperBoundOf(int index) {
+        if (index < LINEAR) {
+            return index;
+        } else {
+            final int exponent = (index - LINEAR) / SUB_BUCKETS + LINEAR_BITS;
+            final long sub = (index - LINEAR) % SUB_BUCKETS;
+            final int shift = exponent - SUB_BUCKET_BITS;
+            final long lower = (SUB_BUCKETS + sub) << shift;
+            return lower + (1L << shift) - 1;
+        }
+    }
+    
+    /**
+     * Retrieves the number of recorded values.
+     * 
+     * @since 2.0
+     * @return the number of values
+     */
+    long getCount() {
+        return count.get();
+    }
+    
+    /**
+     * Retrieves the mean of all recorded values.
+     * 
+     * @since 2.0
+     * @return the mean, 0 if nothing has been recorded
+     */
+    double getMean() {
+        final long n = count.get();
+        return n == 0 ? 0 : (double) sum.get() / n;
+    }
+    
+    /**
+     * Retrieves the given percentile. The result is the upper bound of the
+     * bucket containing the percentile and therefore never underestimates.
+     * 
+     * @since 2.0
+     * @param percentile the percentile, between 0 and 100
+     * @return the percentile, 0 if nothing has been recorded
+     * @throws IllegalArgumentException if percentile is out of range
+     */
+    long getPercentile(double percentile) {
+        Preconditions.checkArgument(percentile >= 0 && percentile <= 100, 
+            "Percentile %s not in [0, 100]", percentile);
+        
+        // buckets are read one by one, their sum may differ from count while recording
+        final long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = buckets.get(i);
+            total += snapshot[i];
+        }
+        
+        if (total == 0) return 0;
+        
+        final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) return upperBoundOf(i);
+        }
+        return upperBoundOf(BUCKETS - 1);
+    }
+    
+    /**
+     * Discards all recorded values. Values recorded concurrently may be lost partially.
+     * 
+     * @since 2.0
+     */
+    void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+    }
+    
+}
@@ -16,15 +16,22 @@
 
 package de.cosmocode.palava.ipc.netty;
 
+import java.io.IOException;
 import java.net.SocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
+import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.ThreadSafe;
 
 import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.buffer.ChannelBufferFactory;
+import org.jboss.netty.buffer.HeapChannelBufferFactory;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandler;
 import org.jboss.netty.channel.ChannelHandler.Sharable;
@@ -32,15 +39,23 @@ import org.jboss.netty.channel.ChannelHandlerContext;
 import org.jboss.netty.channel.ChannelPipeline;
 import org.jboss.netty.channel.ChannelPipelineFactory;
 import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.Channels;
 import org.jboss.netty.channel.ServerChannelFactory;
 import org.jboss.netty.channel.SimpleChannelHandler;
 import org.jboss.netty.channel.group.ChannelGroup;
 import org.jboss.netty.channel.group.DefaultChannelGroup;
+import org.jboss.netty.channel.local.DefaultLocalServerChannelFactory;
+import org.jboss.netty.channel.local.LocalAddress;
+import org.jboss.netty.channel.local.LocalServerChannelFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.MapMaker;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
 
@@ -50,6 +65,7 @@ import de.cosmocode.palava.core.event.PreFrameworkStop;
 import de.cosmocode.palava.core.lifecycle.Disposable;
 import de.cosmocode.palava.core.lifecycle.Initializable;
 import de.cosmocode.palava.core.lifecycle.LifecycleException;
+import de.cosmocode.palava.ipc.protocol.Protocol;
 import de.cosmocode.palava.jmx.MBeanService;
 
 /**
@@ -64,6 +80,10 @@ final class NettyService implements NettyServiceMBean,
 
     private static final Logger LOG = LoggerFactory.getLogger(NettyService.class);
     
+    private static final String BUFFER_FACTORY = "bufferFactory";
+    
+    private static final String CHILD_BUFFER_FACTORY = "child." + BUFFER_FACTORY;
+    
     private String name = "netty";
     
     private final ServerChannelFactory channelFactory;
@@ -76,26 +96,100 @@ final class NettyService implements NettyServiceMBean,
     
     private final ChannelGroup group = new DefaultChannelGroup();
     
+    private final ChannelGroup servers = new DefaultChannelGroup();
+    
+    private final Set<ProtocolHandler> handlers = Sets.newSetFromMap(
+        new MapMaker().weakKeys().<ProtocolHandler, Boolean>makeMap());
+    
+    @GuardedBy("this")
+    private final Map<String, ProtocolStatistics> statistics = Maps.newHashMap();
+    
+    // the handler whose statistics all subsequently created handlers share
+    @GuardedBy("this")
+    private ProtocolHandler statisticsOwner;
+    
     private final SocketAddress address;
     
+    private List<SocketAddress> addresses = ImmutableList.of();
+    
+    private String inProcessName;
+    
+    // used for local addresses if the configured factory is socket based
+    private ServerChannelFactory localChannelFactory;
+    
+    // serves the inherited server socket instead of the main address, if any
+    private ServerChannelFactory inheritedChannelFactory;
+    
+    // used for unix domain socket addresses if the configured factory is not unix domain based
+    private ServerChannelFactory unixChannelFactory;
+    
+    private final ExecutionStage executionStage;
+    
+    private final WriteCoalescingStage writeCoalescingStage;
+    
+    private final StreamingStage streamingStage;
+    
+    private final FramingStage framingStage;
+    
+    private final CompressionStage compressionStage;
+    
+    private final FlowControlStage flowControlStage;
+    
+    private final AdmissionStage admissionStage;
+    
+    private final IdleStage idleStage;
+    
+    private final InFlightHandler inFlightHandler = new InFlightHandler();
+    
     private Map<Object, Object> options = Maps.newHashMap();
     
+    // counts the allocations of the connections' buffer factory
+    private volatile CountingChannelBufferFactory bufferFactory;
+    
+    private int acceptors = 1;
+    
+    private boolean reusePort;
+    
+    private boolean inheritChannel;
+    
     private long shutdownTimeout = 30;
     
     private TimeUnit shutdownTimeoutUnit = TimeUnit.SECONDS;
     
+    private boolean drainOnShutdown;
+    
+    private int latencySampleRate = 1;
+    
+    private volatile boolean draining;
+    
     @Inject
     NettyService(
         ServerChannelFactory factory,
         Registry registry,
         MBeanService mBeanService,
         ChannelPipelineFactory pipelineFactory,
+        ExecutionStage executionStage,
+        WriteCoalescingStage writeCoalescingStage,
+        StreamingStage streamingStage,
+        FramingStage framingStage,
+        CompressionStage compressionStage,
+        FlowControlStage flowControlStage,
+        AdmissionStage admissionStage,
+        IdleStage idleStage,
         @Named(NettyServiceConfig.ADDRESS) SocketAddress address) {
         
         this.channelFactory = Preconditions.checkNotNull(factory, "ChannelFactory");
         this.pipelineFactory = Preconditions.checkNotNull(pipelineFactory, "PipelineFactory");
         this.registry = Preconditions.checkNotNull(registry, "Registry");
         this.mBeanService = Preconditions.checkNotNull(mBeanService, "MBeanService");
+        this.executionStage = Preconditions.checkNotNull(executionStage, "ExecutionStage");
+        this.writeCoalescingStage = Preconditions.checkNotNull(writeCoalescingStage, "WriteCoalescingStage");
+        this.streamingStage = Preconditions.checkNotNull(streamingStage, "StreamingStage");
+        this.framingStage = Preconditions.checkNotNull(framingStage, "FramingStage");
+        this.compressionStage = Preconditions.checkNotNull(compressionStage, "CompressionStage");
+        this.flowControlStage = Preconditions.checkNotNull(flowControlStage, "FlowControlStage");
+        this.admissionStage = Preconditions.checkNotNull(admissionStage, "AdmissionStage");
+        this.idleStage = Preconditions.checkNotNull(idleStage, "IdleStage");
         this.address = Preconditions.checkNotNull(address, "Address");
     }
     
@@ -104,9 +198,117 @@ final class NettyService implements NettyServiceMBean,
         this.name = Preconditions.checkNotNull(name, "Name");
     }
     
+    /**
+     * Sets the bootstrap options. The {@code bufferFactory} and {@code child.bufferFactory} options
+     * may be given as specification, e.g. {@code direct}, see {@link BufferFactories#parse(String)}.
+     * Connections use heap buffers by default.
+     * 
+     * @since 1.0
+     * @param options the bootstrap options
+     * @throws IllegalArgumentException if a buffer factory specification is invalid
+     */
     @Inject(optional = true)
     void setOptions(@Named(NettyServiceConfig.OPTIONS) Properties options) {
-        this.options = Preconditions.checkNotNull(options, "Options");
+        Preconditions.checkNotNull(options, "Options");
+        this.options = Maps.newHashMap();
+        for (Entry<Object, Object> entry : options.entrySet()) {
+            final Object key = entry.getKey();
+            final Object value = entry.getValue();
+            if ((BUFFER_FACTORY.equals(key) || CHILD_BUFFER_FACTORY.equals(key)) && value instanceof String) {
+                this.options.put(key, BufferFactories.parse(value.toString()));
+            } else {
+                this.options.put(key, value);
+            }
+        }
+    }
+    
+    /**
+     * Binds the service to the given comma separated addresses in addition to the main address,
+     * sharing executors, pipeline factory and channel group. Local addresses ({@code local:name})
+     * and unix domain sockets ({@code unix:/path/to/socket}) are supported alongside socket addresses.
+     * 
+     * @since 2.0
+     * @param addresses the additional addresses
+     * @throws IllegalArgumentException if any of the addresses is invalid
+     */
+    @Inject(optional = true)
+    void setAddresses(@Named(NettyServiceConfig.ADDRESSES) String addresses) {
+        this.addresses = SocketAddresses.parseAll(addresses);
+    }
+    
+    /**
+     * Binds an in-process endpoint with the given name, which can be used by
+     * {@link InProcessClient}s running in the same jvm. Requests on this endpoint are handed
+     * to the {@link ProtocolHandler} as they are, bypassing all codecs and stages, and are processed
+     * on the calling thread.
+     * 
+     * @since 2.0
+     * @param inProcessName the name of the in-process endpoint
+     */
+    @Inject(optional = true)
+    void setInProcessName(@Named(NettyServiceConfig.IN_PROCESS_NAME) String inProcessName) {
+        this.inProcessName = Preconditions.checkNotNull(inProcessName, "InProcessName");
+    }
+    
+    /**
+     * Binds the given number of server channels to the configured address using SO_REUSEPORT,
+     * each with its own boss thread, so the kernel spreads new connections across them.
+     * Requires a socket based transport and a runtime which supports SO_REUSEPORT.
+     * Defaults to 1.
+     * 
+     * @since 2.0
+     * @param acceptors the number of server channels
+     * @throws IllegalArgumentException if acceptors is not positive
+     */
+    @Inject(optional = true)
+    void setAcceptors(@Named(NettyServiceConfig.ACCEPTORS) int acceptors) {
+        Preconditions.checkArgument(acceptors > 0, "Acceptors must be positive, but was %s", acceptors);
+        this.acceptors = acceptors;
+    }
+    
+    /**
+     * Enables SO_REUSEPORT on the server sockets even if only one acceptor is configured.
+     * This allows a successor process to bind the same address while this one is still running,
+     * which, together with {@link #setDrainOnShutdown(boolean)}, restarts a service without
+     * refusing connections. Defaults to false.
+     * 
+     * @since 2.0
+     * @param reusePort true to enable SO_REUSEPORT
+     */
+    @Inject(optional = true)
+    void setReusePort(@Named(NettyServiceConfig.REUSE_PORT) boolean reusePort) {
+        this.reusePort = reusePort;
+    }
+    
+    /**
+     * Serves the server socket inherited from the parent process, see {@link System#inheritedChannel()},
+     * instead of binding the main address. This allows a supervisor which keeps the listening socket
+     * open, e.g. using socket activation, to restart the service without refusing connections.
+     * The main address is bound as usual if no server socket has been inherited.
+     * Inherited sockets are served by one thread per connection. Defaults to false.
+     * 
+     * @since 2.0
+     * @param inheritChannel true to serve the inherited server socket
+     */
+    @Inject(optional = true)
+    void setInheritChannel(@Named(NettyServiceConfig.INHERIT_CHANNEL) boolean inheritChannel) {
+        this.inheritChannel = inheritChannel;
+    }
+    
+    /**
+     * Records the latency of every n-th request only, see {@link ProtocolHandler#setLatencySampleRate(int)}.
+     * The protocol handler is usually bound outside of this service's configuration, which is
+     * why the rate is passed to it when its statistics are registered. Defaults to 1.
+     * 
+     * @since 2.0
+     * @param latencySampleRate the sample rate
+     * @throws IllegalArgumentException if latencySampleRate is not positive
+     */
+    @Inject(optional = true)
+    void setLatencySampleRate(@Named(NettyServiceConfig.LATENCY_SAMPLE_RATE) int latencySampleRate) {
+        Preconditions.checkArgument(latencySampleRate > 0, 
+            "LatencySampleRate must be positive, but was %s", latencySampleRate);
+        this.latencySampleRate = latencySampleRate;
     }
     
     @Inject(optional = true)
@@ -119,6 +321,20 @@ final class NettyService implements NettyServiceMBean,
         this.shutdownTimeoutUnit = Preconditions.checkNotNull(shutdownTimeoutUnit, "ShutdownTimeoutUnit");
     }
     
+    /**
+     * Drains connections on shutdown: server sockets are unbound, reading is suspended and
+     * connections are closed as soon as all their requests have been answered, until
+     * the shutdown timeout elapses. Defaults to false, which closes all connections immediately
+     * and spares tracking the requests in flight, unless idle connections are closed.
+     * 
+     * @since 2.0
+     * @param drainOnShutdown true to drain connections on shutdown
+     */
+    @Inject(optional = true)
+    void setDrainOnShutdown(@Named(NettyServiceConfig.DRAIN_ON_SHUTDOWN) boolean drainOnShutdown) {
+        this.drainOnShutdown = drainOnShutdown;
+    }
+    
     @Override
     public void initialize() throws LifecycleException {
         registry.register(PostFrameworkStart.class, this);
@@ -128,26 +344,110 @@ final class NettyService implements NettyServiceMBean,
     
     @Override
     public void eventPostFrameworkStart() {
-        final ServerBootstrap bootstrap = new ServerBootstrap(channelFactory);
+        final boolean reuse = (acceptors > 1 || reusePort) && ReusePort.isAvailable();
+        if ((acceptors > 1 || reusePort) && !reuse) {
+            LOG.warn("SO_REUSEPORT is not supported by this runtime, binding a single server socket");
+        }
+        final int count = reuse ? acceptors : 1;
+        
+        final Object configured = options.get(CHILD_BUFFER_FACTORY);
+        bufferFactory = new CountingChannelBufferFactory(configured instanceof ChannelBufferFactory ?
+            ChannelBufferFactory.class.cast(configured) : HeapChannelBufferFactory.getInstance());
+        options.put(CHILD_BUFFER_FACTORY, bufferFactory);
+        
+        final ChannelPipelineFactory factory = new PipelineFactory();
+        final ServerBootstrap bootstrap = newBootstrap(
+            reuse ? new ReusePortServerChannelFactory(channelFactory) : channelFactory, factory);
+        ServerBootstrap localBootstrap = null;
+        ServerBootstrap unixBootstrap = null;
+        
+        final ServerSocketChannel inherited = inheritChannel ? inheritedChannel() : null;
+        if (inherited != null) {
+            inheritedChannelFactory = new InheritedServerChannelFactory(inherited,
+                VirtualThreads.newThreadPerTaskExecutor(name + "-inherited-boss"),
+                VirtualThreads.newThreadPerTaskExecutor(name + "-inherited-worker"));
+            bind(newBootstrap(inheritedChannelFactory, factory), address, 1);
+        }
+        
+        final List<SocketAddress> all = inherited == null ? 
+            ImmutableList.copyOf(Iterables.concat(ImmutableList.of(address), addresses)) : addresses;
+        
+        for (SocketAddress each : all) {
+            if (each instanceof LocalAddress && !(channelFactory instanceof LocalServerChannelFactory)) {
+                if (localBootstrap == null) {
+                    localChannelFactory = new DefaultLocalServerChannelFactory();
+                    localBootstrap = newBootstrap(localChannelFactory, factory);
+                }
+                bind(localBootstrap, each, 1);
+            } else if (UnixDomainSockets.isUnixDomainAddress(each) &&
+                !(channelFactory instanceof UnixDomainServerSocketChannelFactory)) {
+                if (unixBootstrap == null) {
+                    unixChannelFactory = new UnixDomainServerSocketChannelFactory(
+                        VirtualThreads.newThreadPerTaskExecutor(name + "-unix-boss"),
+                        VirtualThreads.newThreadPerTaskExecutor(name + "-unix-worker"));
+                    unixBootstrap = newBootstrap(unixChannelFactory, factory);
+                }
+                bind(unixBootstrap, each, 1);
+            } else {
+                bind(bootstrap, each, count);
+            }
+        }
+        
+        if (inProcessName != null) {
+            if (localChannelFactory == null) {
+                localChannelFactory = new DefaultLocalServerChannelFactory();
+            }
+            bind(newBootstrap(localChannelFactory, new InProcessPipelineFactory()), new LocalAddress(inProcessName), 1);
+        }
+    }
+    
+    private ServerSocketChannel inheritedChannel() {
+        final java.nio.channels.Channel channel;
+        try {
+            channel = System.inheritedChannel();
+        } catch (IOException e) {
+            LOG.warn("Unable to get inherited channel, binding " + address, e);
+            return null;
+        }
+        if (channel instanceof ServerSocketChannel) {
+            return ServerSocketChannel.class.cast(channel);
+        } else if (channel == null) {
+            LOG.info("No channel inherited, binding {}", address);
+            return null;
+        } else {
+            LOG.warn("Inherited {} is no server socket channel, binding {}", channel, address);
+            return null;
+        }
+    }
+    
+    private ServerBootstrap newBootstrap(ServerChannelFactory serverChannelFactory, ChannelPipelineFactory factory) {
+        final ServerBootstrap bootstrap = new ServerBootstrap(serverChannelFactory);
         
         for (Entry<Object, Object> entry : options.entrySet()) {
             LOG.info("Setting option {} = {}", entry.getKey(), entry.getValue());
             bootstrap.setOption(entry.getKey().toString(), entry.getValue());
         }
         
-        bootstrap.setPipelineFactory(new PipelineFactory());
-        
-        LOG.trace("Binding {} to {}", bootstrap, address);
-        final Channel channel = bootstrap.bind(address);
-
-        LOG.info("Adding server socket {} to group", channel);
-        group.add(channel);
+        bootstrap.setPipelineFactory(factory);
+        return bootstrap;
+    }
+    
+    private void bind(ServerBootstrap bootstrap, SocketAddress socketAddress, int count) {
+        for (int i = 0; i < count; i++) {
+            LOG.trace("Binding {} to {}", bootstrap, socketAddress);
+            final Channel channel = bootstrap.bind(socketAddress);
+            
+            LOG.info("Adding server socket {} to group", channel);
+            group.add(channel);
+            servers.add(channel);
+        }
     }
     
     /**
      * Internal {@link ChannelPipelineFactory} implementation which adds
-     * an instance of {@link Handler} as first {@link ChannelHandler} to each new
-     * {@link ChannelPipeline}.
+     * an instance of {@link Handler} as last {@link ChannelHandler} to each new
+     * {@link ChannelPipeline}, installs the configured stages and keeps track of
+     * the contained {@link ProtocolHandler}s and their statistics.
      *
      * @since 1.0
      * @author Willi Schoenborn
@@ -159,12 +459,88 @@ final class NettyService implements NettyServiceMBean,
         @Override
         public ChannelPipeline getPipeline() throws Exception {
             final ChannelPipeline pipeline = pipelineFactory.getPipeline();
+            track(pipeline.get(ProtocolHandler.class));
+            // framing and compression are handled on the i/o thread, ahead of the configured codecs
+            framingStage.install(pipeline);
+            compressionStage.install(pipeline);
+            executionStage.install(pipeline);
+            if (drainOnShutdown || idleStage.isEnabled()) {
+                inFlightHandler.install(pipeline);
+            }
+            // chunks are pulled behind the execution stage and encoded individually
+            streamingStage.install(pipeline);
+            // coalescing ends up closest to the socket, flow control accounts for its buffered writes
+            flowControlStage.install(pipeline);
+            writeCoalescingStage.install(pipeline);
+            idleStage.install(pipeline);
+            // admission decides before any other handler sees the channel
+            admissionStage.install(pipeline);
+            pipeline.addLast("channel-add-handler", handler);
+            return pipeline;
+        }
+        
+    }
+    
+    /**
+     * Internal {@link ChannelPipelineFactory} implementation for the in-process endpoint.
+     * Only the {@link ConnectionManager} and the {@link ProtocolHandler} of the configured
+     * pipeline are kept, codecs and stages are dropped, which lets requests and responses
+     * pass without encoding and keeps processing on the calling thread.
+     *
+     * @since 2.0
+     * @author Willi Schoenborn
+     */
+    private final class InProcessPipelineFactory implements ChannelPipelineFactory {
+        
+        private final ChannelHandler handler = new Handler();
+        
+        @Override
+        public ChannelPipeline getPipeline() throws Exception {
+            final ChannelPipeline pipeline = Channels.pipeline();
+            for (Entry<String, ChannelHandler> entry : pipelineFactory.getPipeline().toMap().entrySet()) {
+                final ChannelHandler each = entry.getValue();
+                if (each instanceof ConnectionManager || each instanceof ProtocolHandler) {
+                    pipeline.addLast(entry.getKey(), each);
+                }
+            }
+            track(pipeline.get(ProtocolHandler.class));
+            if (drainOnShutdown) {
+                inFlightHandler.install(pipeline);
+            }
             pipeline.addLast("channel-add-handler", handler);
             return pipeline;
         }
         
     }
     
+    private void track(ProtocolHandler handler) {
+        if (handler != null && handlers.add(handler)) {
+            register(handler);
+        }
+    }
+    
+    private synchronized void register(ProtocolHandler handler) {
+        if (statisticsOwner == null) {
+            statisticsOwner = handler;
+            handler.setLatencySampleRate(latencySampleRate);
+        } else {
+            // handlers created per channel must not register new statistics per connection
+            handler.shareStatistics(statisticsOwner);
+        }
+        for (Entry<Protocol, ProtocolStatistics> entry : handler.getStatistics().entrySet()) {
+            if (statistics.containsValue(entry.getValue())) continue;
+            final String type = entry.getKey().getClass().getSimpleName();
+            String value = name + "-" + type;
+            // multiple instances of the same protocol class need distinct names
+            for (int i = 2; statistics.containsKey(value); i++) {
+                value = name + "-" + type + "-" + i;
+            }
+            LOG.debug("Registering statistics of {} as {}", entry.getKey(), value);
+            mBeanService.register(entry.getValue(), "name", value);
+            statistics.put(value, entry.getValue());
+        }
+    }
+    
     /**
      * Internal {@link ChannelHandler} implementation which adds each new {@link Channel}
      * to {@link NettyService#group}.
@@ -187,26 +563,172 @@ final class NettyService implements NettyServiceMBean,
     
     @Override
     public int getOpenConnections() {
-        // server socket is not considered a connection
-        return group.size() - 1;
+        // server sockets are not considered connections
+        return group.size() - servers.size();
+    }
+    
+    @Override
+    public long getDispatchHits() {
+        long hits = 0;
+        for (ProtocolHandler handler : handlers) {
+            hits += handler.getDispatcher().getHits();
+        }
+        return hits;
+    }
+    
+    @Override
+    public long getDispatchMisses() {
+        long misses = 0;
+        for (ProtocolHandler handler : handlers) {
+            misses += handler.getDispatcher().getMisses();
+        }
+        return misses;
+    }
+    
+    @Override
+    public void invalidateDispatch() {
+        for (ProtocolHandler handler : handlers) {
+            handler.getDispatcher().invalidate();
+        }
+    }
+    
+    @Override
+    public long getWriteBatches() {
+        return writeCoalescingStage.getBatches();
+    }
+    
+    @Override
+    public double getAverageWriteBatchSize() {
+        return writeCoalescingStage.getAverageBatchSize();
+    }
+    
+    @Override
+    public int getSuspendedConnections() {
+        return flowControlStage.getSuspended();
+    }
+    
+    @Override
+    public long getRejectedConnections() {
+        return admissionStage.getRejected();
+    }
+    
+    @Override
+    public long getReapedConnections() {
+        return idleStage.getReaped();
+    }
+    
+    @Override
+    public long getDecompressedRequests() {
+        return compressionStage.getDecompressed();
+    }
+    
+    @Override
+    public String getBufferFactory() {
+        final CountingChannelBufferFactory current = bufferFactory;
+        return current == null ? null : current.getDelegate().getClass().getName();
+    }
+    
+    @Override
+    public long getAllocatedBuffers() {
+        final CountingChannelBufferFactory current = bufferFactory;
+        return current == null ? 0L : current.getBuffers();
+    }
+    
+    @Override
+    public long getAllocatedBytes() {
+        final CountingChannelBufferFactory current = bufferFactory;
+        return current == null ? 0L : current.getBytes();
+    }
+    
+    @Override
+    public long getAllocatedDirectBytes() {
+        final CountingChannelBufferFactory current = bufferFactory;
+        return current == null ? 0L : current.getDirectBytes();
+    }
+    
+    @Override
+    public int getInFlightRequests() {
+        return inFlightHandler.getTotal(group);
+    }
+    
+    @Override
+    public boolean isDraining() {
+        return draining;
     }
     
     @Override
     public void eventPreFrameworkStop() {
+        // draining and closing share the timeout
+        final long deadline = System.nanoTime() + shutdownTimeoutUnit.toNanos(shutdownTimeout);
+        if (drainOnShutdown) {
+            drain(deadline);
+        }
         LOG.info("Waiting {} {} for connections to close", shutdownTimeout, shutdownTimeoutUnit.name().toLowerCase());
-        group.close().awaitUninterruptibly(shutdownTimeout, shutdownTimeoutUnit);
+        group.close().awaitUninterruptibly(remaining(deadline), TimeUnit.NANOSECONDS);
+    }
+    
+    private long remaining(long deadline) {
+        return Math.max(0L, deadline - System.nanoTime());
+    }
+    
+    private void drain(long deadline) {
+        draining = true;
+        
+        LOG.info("Draining {}, unbinding {} server socket(s)", this, servers.size());
+        servers.close().awaitUninterruptibly(remaining(deadline), TimeUnit.NANOSECONDS);
+        
+        // busy channels are closed by the in flight handler once their last response has been written
+        inFlightHandler.drain();
+        for (Channel channel : group) {
+            channel.setReadable(false);
+            if (inFlightHandler.isIdle(channel)) {
+                LOG.trace("Closing drained {}", channel);
+                channel.close();
+            }
+        }
+        
+        LOG.debug("{} connection(s) with {} request(s) in flight remaining", 
+            getOpenConnections(), getInFlightRequests());
+        
+        for (Channel channel : group) {
+            try {
+                if (!channel.getCloseFuture().await(remaining(deadline), TimeUnit.NANOSECONDS)) break;
+            } catch (InterruptedException e) {
+                LOG.warn("Interrupted while draining {}", this);
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
     }
     
     @Override
     public void dispose() throws LifecycleException {
         try {
             mBeanService.unregister(this, "name", name);
+            unregisterStatistics();
         } finally {
             channelFactory.releaseExternalResources();
+            if (localChannelFactory != null) {
+                localChannelFactory.releaseExternalResources();
+            }
+            if (unixChannelFactory != null) {
+                unixChannelFactory.releaseExternalResources();
+            }
+            if (inheritedChannelFactory != null) {
+                inheritedChannelFactory.releaseExternalResources();
+            }
             registry.remove(this);
         }
     }
     
+    private synchronized void unregisterStatistics() {
+        for (Entry<String, ProtocolStatistics> entry : statistics.entrySet()) {
+            mBeanService.unregister(entry.getValue(), "name", entry.getKey());
+        }
+        statistics.clear();
+        statisticsOwner = null;
+    }
+    
     @Override
     public String toString() {
         return String.format("%s [%s]", NettyService.class.getSimpleName(), name);
@@ -28,18 +28,90 @@ final class NettyServiceConfig {
     
     public static final String NAME = PREFIX + "name";
     
+    public static final String ACCEPTORS = PREFIX + "acceptors";
+    
+    public static final String REUSE_PORT = PREFIX + "reusePort";
+    
+    public static final String INHERIT_CHANNEL = PREFIX + "inheritChannel";
+    
     public static final String WORKER_COUNT = PREFIX + "workerCount";
     
     public static final String PIPELINE_FACTORY = PREFIX + "pipelineFactory";
     
     public static final String ADDRESS = PREFIX + "address";
     
+    public static final String ADDRESSES = PREFIX + "addresses";
+    
+    public static final String IN_PROCESS_NAME = PREFIX + "inProcessName";
+    
     public static final String OPTIONS = PREFIX + "options";
     
     public static final String SHUTDOWN_TIMEOUT = PREFIX + "shutdownTimeout";
     
     public static final String SHUTDOWN_TIMEOUT_UNIT = PREFIX + "shutdownTimeoutUnit";
     
+    public static final String DRAIN_ON_SHUTDOWN = PREFIX + "drainOnShutdown";
+    
+    public static final String EXECUTION_MODE = PREFIX + "executionMode";
+    
+    public static final String EXECUTION_POOL_SIZE = PREFIX + "executionPoolSize";
+    
+    public static final String EXECUTION_MAX_CHANNEL_MEMORY_SIZE = PREFIX + "executionMaxChannelMemorySize";
+    
+    public static final String EXECUTION_MAX_TOTAL_MEMORY_SIZE = PREFIX + "executionMaxTotalMemorySize";
+    
+    public static final String EXECUTION_KEEP_ALIVE_TIME = PREFIX + "executionKeepAliveTime";
+    
+    public static final String EXECUTION_KEEP_ALIVE_TIME_UNIT = PREFIX + "executionKeepAliveTimeUnit";
+    
+    public static final String EXECUTION_MAX_CONCURRENCY = PREFIX + "executionMaxConcurrency";
+    
+    public static final String PIPELINING = PREFIX + "pipelining";
+    
+    public static final String COALESCE_WRITES = PREFIX + "coalesceWrites";
+    
+    public static final String COALESCE_DELAY = PREFIX + "coalesceDelay";
+    
+    public static final String COALESCE_DELAY_UNIT = PREFIX + "coalesceDelayUnit";
+    
+    public static final String COALESCE_MAX_BYTES = PREFIX + "coalesceMaxBytes";
+    
+    public static final String STREAMING = PREFIX + "streaming";
+    
+    public static final String FRAMING = PREFIX + "framing";
+    
+    public static final String MAX_FRAME_LENGTH = PREFIX + "maxFrameLength";
+    
+    public static final String FRAME_CHECKSUM = PREFIX + "frameChecksum";
+    
+    public static final String COMPRESSION = PREFIX + "compression";
+    
+    public static final String COMPRESSION_THRESHOLD = PREFIX + "compressionThreshold";
+    
+    public static final String COMPRESSION_LEVEL = PREFIX + "compressionLevel";
+    
+    public static final String HIGH_WATER_MARK = PREFIX + "highWaterMark";
+    
+    public static final String LOW_WATER_MARK = PREFIX + "lowWaterMark";
+    
+    public static final String MAX_CONNECTIONS = PREFIX + "maxConnections";
+    
+    public static final String MAX_CONNECTIONS_PER_ADDRESS = PREFIX + "maxConnectionsPerAddress";
+    
+    public static final String ACCEPT_RATE = PREFIX + "acceptRate";
+    
+    public static final String ACCEPT_BURST = PREFIX + "acceptBurst";
+    
+    public static final String READER_IDLE_TIME = PREFIX + "readerIdleTime";
+    
+    public static final String WRITER_IDLE_TIME = PREFIX + "writerIdleTime";
+    
+    public static final String ALL_IDLE_TIME = PREFIX + "allIdleTime";
+    
+    public static final String IDLE_TIME_UNIT = PREFIX + "idleTimeUnit";
+    
+    public static final String LATENCY_SAMPLE_RATE = PREFIX + "latencySampleRate";
+    
     private NettyServiceConfig() {
         
     }
@@ -32,4 +32,130 @@ public interface NettyServiceMBean {
      */
     int getOpenConnections();
     
+    /**
+     * Retrieves the number of requests which have been dispatched using
+     * a cached protocol lookup.
+     * 
+     * @since 2.0
+     * @return number of protocol dispatch cache hits
+     */
+    long getDispatchHits();
+    
+    /**
+     * Retrieves the number of requests which required a scan of all protocols.
+     * 
+     * @since 2.0
+     * @return number of protocol dispatch cache misses
+     */
+    long getDispatchMisses();
+    
+    /**
+     * Discards all cached protocol lookups.
+     * 
+     * @since 2.0
+     */
+    void invalidateDispatch();
+    
+    /**
+     * Retrieves the number of writes issued by the write coalescing stage.
+     * 
+     * @since 2.0
+     * @return number of coalesced writes, 0 if write coalescing is disabled
+     */
+    long getWriteBatches();
+    
+    /**
+     * Retrieves the average number of responses combined into one write.
+     * 
+     * @since 2.0
+     * @return average write batch size, 0 if write coalescing is disabled
+     */
+    double getAverageWriteBatchSize();
+    
+    /**
+     * Retrieves the number of connections whose reads are currently suspended
+     * because too many response bytes are pending.
+     * 
+     * @since 2.0
+     * @return number of suspended connections
+     */
+    int getSuspendedConnections();
+    
+    /**
+     * Retrieves the number of connections which have been rejected because of
+     * connection limits or the accept rate.
+     * 
+     * @since 2.0
+     * @return number of rejected connections
+     */
+    long getRejectedConnections();
+    
+    /**
+     * Retrieves the number of connections which have been closed because they were idle.
+     * 
+     * @since 2.0
+     * @return number of reaped connections
+     */
+    long getReapedConnections();
+    
+    /**
+     * Retrieves the number of compressed requests which have been decompressed.
+     * Compressed responses are reported per protocol.
+     * 
+     * @since 2.0
+     * @return number of decompressed requests
+     */
+    long getDecompressedRequests();
+    
+    /**
+     * Retrieves the buffer factory used by connections.
+     * 
+     * @since 2.0
+     * @return the buffer factory, null if the service has not been started yet
+     */
+    String getBufferFactory();
+    
+    /**
+     * Retrieves the number of buffers allocated by connections, e.g. for reads.
+     * 
+     * @since 2.0
+     * @return number of allocated buffers
+     */
+    long getAllocatedBuffers();
+    
+    /**
+     * Retrieves the total capacity of all buffers allocated by connections.
+     * 
+     * @since 2.0
+     * @return number of allocated bytes
+     */
+    long getAllocatedBytes();
+    
+    /**
+     * Retrieves the total capacity of all direct buffers allocated by connections.
+     * 
+     * @since 2.0
+     * @return number of allocated direct bytes
+     */
+    long getAllocatedDirectBytes();
+    
+    /**
+     * Retrieves the number of requests which have been received but not yet answered.
+     * Requests are only tracked if {@link NettyServiceConfig#DRAIN_ON_SHUTDOWN} is enabled
+     * or idle connections are closed.
+     * 
+     * @since 2.0
+     * @return number of requests in flight, always 0 if requests are not tracked
+     */
+    int getInFlightRequests();
+    
+    /**
+     * Checks whether this service is draining its connections before shutdown.
+     * During draining {@link #getOpenConnections()} reports the remaining connections.
+     * 
+     * @since 2.0
+     * @return true if draining, false otherwise
+     */
+    boolean isDraining();
+    
 }
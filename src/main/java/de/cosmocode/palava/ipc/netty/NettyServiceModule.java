@@ -24,6 +24,7 @@ import com.google.common.base.Preconditions;
 import com.google.inject.Binder;
 import com.google.inject.Key;
 import com.google.inject.Module;
+import com.google.inject.Singleton;
 import com.google.inject.name.Names;
 
 import de.cosmocode.palava.core.inject.AbstractRebindModule;
@@ -40,6 +41,14 @@ public final class NettyServiceModule implements Module {
 
     @Override
     public void configure(Binder binder) {
+        binder.bind(ExecutionStage.class).in(Singleton.class);
+        binder.bind(WriteCoalescingStage.class).in(Singleton.class);
+        binder.bind(StreamingStage.class).in(Singleton.class);
+        binder.bind(FramingStage.class).in(Singleton.class);
+        binder.bind(CompressionStage.class).in(Singleton.class);
+        binder.bind(FlowControlStage.class).in(Singleton.class);
+        binder.bind(AdmissionStage.class).in(Singleton.class);
+        binder.bind(IdleStage.class).in(Singleton.class);
         binder.bind(NettyService.class).asEagerSingleton();
     }
     
@@ -84,6 +93,21 @@ public final class NettyServiceModule implements Module {
         
         @Override
         protected void optionals() {
+            bind(String.class).annotatedWith(Names.named(NettyServiceConfig.ADDRESSES)).to(
+                Key.get(String.class, Names.named(config.prefixed(NettyServiceConfig.ADDRESSES))));
+            
+            bind(String.class).annotatedWith(Names.named(NettyServiceConfig.IN_PROCESS_NAME)).to(
+                Key.get(String.class, Names.named(config.prefixed(NettyServiceConfig.IN_PROCESS_NAME))));
+            
+            bind(int.class).annotatedWith(Names.named(NettyServiceConfig.ACCEPTORS)).to(
+                Key.get(int.class, Names.named(config.prefixed(NettyServiceConfig.ACCEPTORS))));
+            
+            bind(boolean.class).annotatedWith(Names.named(NettyServiceConfig.REUSE_PORT)).to(
+                Key.get(boolean.class, Names.named(config.prefixed(NettyServiceConfig.REUSE_PORT))));
+            
+            bind(boolean.class).annotatedWith(Names.named(NettyServiceConfig.INHERIT_CHANNEL)).to(
+                Key.get(boolean.class, Names.named(config.prefixed(NettyServiceConfig.INHERIT_CHANNEL))));
+            
             bind(int.class).annotatedWith(Names.named(NettyServiceConfig.WORKER_COUNT)).to(
                 Key.get(int.class, Names.named(config.prefixed(NettyServiceConfig.WORKER_COUNT))));
             
@@ -95,6 +119,101 @@ public final class NettyServiceModule implements Module {
             
             bind(TimeUnit.class).annotatedWith(Names.named(NettyServiceConfig.SHUTDOWN_TIMEOUT_UNIT)).to(
                 Key.get(TimeUnit.class, Names.named(config.prefixed(NettyServiceConfig.SHUTDOWN_TIMEOUT_UNIT))));
+            
+            bind(boolean.class).annotatedWith(Names.named(NettyServiceConfig.DRAIN_ON_SHUTDOWN)).to(
+                Key.get(boolean.class, Names.named(config.prefixed(NettyServiceConfig.DRAIN_ON_SHUTDOWN))));
+            
+            bind(ExecutionMode.class).annotatedWith(Names.named(NettyServiceConfig.EXECUTION_MODE)).to(
+                Key.get(ExecutionMode.class, Names.named(config.prefixed(NettyServiceConfig.EXECUTION_MODE))));
+            
+            bind(int.class).annotatedWith(Names.named(NettyServiceConfig.EXECUTION_POOL_SIZE)).to(
+                Key.get(int.class, Names.named(config.prefixed(NettyServiceConfig.EXECUTION_POOL_SIZE))));
+            
+            bind(long.class).annotatedWith(Names.named(NettyServiceConfig.EXECUTION_MAX_CHANNEL_MEMORY_SIZE)).to(
+                Key.get(long.class, Names.named(
+                    config.prefixed(NettyServiceConfig.EXECUTION_MAX_CHANNEL_MEMORY_SIZE))));
+            
+            bind(long.class).annotatedWith(Names.named(NettyServiceConfig.EXECUTION_MAX_TOTAL_MEMORY_SIZE)).to(
+                Key.get(long.class, Names.named(config.prefixed(NettyServiceConfig.EXECUTION_MAX_TOTAL_MEMORY_SIZE))));
+            
+            bind(long.class).annotatedWith(Names.named(NettyServiceConfig.EXECUTION_KEEP_ALIVE_TIME)).to(
+                Key.get(long.class, Names.named(config.prefixed(NettyServiceConfig.EXECUTION_KEEP_ALIVE_TIME))));
+            
+            bind(TimeUnit.class).annotatedWith(Names.named(NettyServiceConfig.EXECUTION_KEEP_ALIVE_TIME_UNIT)).to(
+                Key.get(TimeUnit.class, Names.named(
+                    config.prefixed(NettyServiceConfig.EXECUTION_KEEP_ALIVE_TIME_UNIT))));
+            
+            bind(int.class).annotatedWith(Names.named(NettyServiceConfig.EXECUTION_MAX_CONCURRENCY)).to(
+                Key.get(int.class, Names.named(config.prefixed(NettyServiceConfig.EXECUTION_MAX_CONCURRENCY))));
+            
+            bind(boolean.class).annotatedWith(Names.named(NettyServiceConfig.PIPELINING)).to(
+                Key.get(boolean.class, Names.named(config.prefixed(NettyServiceConfig.PIPELINING))));
+            
+            bind(int.class).annotatedWith(Names.named(NettyServiceConfig.LATENCY_SAMPLE_RATE)).to(
+                Key.get(int.class, Names.named(config.prefixed(NettyServiceConfig.LATENCY_SAMPLE_RATE))));
+            
+            bind(boolean.class).annotatedWith(Names.named(NettyServiceConfig.COALESCE_WRITES)).to(
+                Key.get(boolean.class, Names.named(config.prefixed(NettyServiceConfig.COALESCE_WRITES))));
+            
+            bind(long.class).annotatedWith(Names.named(NettyServiceConfig.COALESCE_DELAY)).to(
+                Key.get(long.class, Names.named(config.prefixed(NettyServiceConfig.COALESCE_DELAY))));
+            
+            bind(TimeUnit.class).annotatedWith(Names.named(NettyServiceConfig.COALESCE_DELAY_UNIT)).to(
+                Key.get(TimeUnit.class, Names.named(config.prefixed(NettyServiceConfig.COALESCE_DELAY_UNIT))));
+            
+            bind(int.class).annotatedWith(Names.named(NettyServiceConfig.COALESCE_MAX_BYTES)).to(
+                Key.get(int.class, Names.named(config.prefixed(NettyServiceConfig.COALESCE_MAX_BYTES))));
+            
+            bind(boolean.class).annotatedWith(Names.named(NettyServiceConfig.STREAMING)).to(
+                Key.get(boolean.class, Names.named(config.prefixed(NettyServiceConfig.STREAMING))));
+            
+            bind(boolean.class).annotatedWith(Names.named(NettyServiceConfig.FRAMING)).to(
+                Key.get(boolean.class, Names.named(config.prefixed(NettyServiceConfig.FRAMING))));
+            
+            bind(int.class).annotatedWith(Names.named(NettyServiceConfig.MAX_FRAME_LENGTH)).to(
+                Key.get(int.class, Names.named(config.prefixed(NettyServiceConfig.MAX_FRAME_LENGTH))));
+            
+            bind(boolean.class).annotatedWith(Names.named(NettyServiceConfig.FRAME_CHECKSUM)).to(
+                Key.get(boolean.class, Names.named(config.prefixed(NettyServiceConfig.FRAME_CHECKSUM))));
+            
+            bind(boolean.class).annotatedWith(Names.named(NettyServiceConfig.COMPRESSION)).to(
+                Key.get(boolean.class, Names.named(config.prefixed(NettyServiceConfig.COMPRESSION))));
+            
+            bind(int.class).annotatedWith(Names.named(NettyServiceConfig.COMPRESSION_THRESHOLD)).to(
+                Key.get(int.class, Names.named(config.prefixed(NettyServiceConfig.COMPRESSION_THRESHOLD))));
+            
+            bind(int.class).annotatedWith(Names.named(NettyServiceConfig.COMPRESSION_LEVEL)).to(
+                Key.get(int.class, Names.named(config.prefixed(NettyServiceConfig.COMPRESSION_LEVEL))));
+            
+            bind(long.class).annotatedWith(Names.named(NettyServiceConfig.HIGH_WATER_MARK)).to(
+                Key.get(long.class, Names.named(config.prefixed(NettyServiceConfig.HIGH_WATER_MARK))));
+            
+            bind(long.class).annotatedWith(Names.named(NettyServiceConfig.LOW_WATER_MARK)).to(
+                Key.get(long.class, Names.named(config.prefixed(NettyServiceConfig.LOW_WATER_MARK))));
+            
+            bind(int.class).annotatedWith(Names.named(NettyServiceConfig.MAX_CONNECTIONS)).to(
+                Key.get(int.class, Names.named(config.prefixed(NettyServiceConfig.MAX_CONNECTIONS))));
+            
+            bind(int.class).annotatedWith(Names.named(NettyServiceConfig.MAX_CONNECTIONS_PER_ADDRESS)).to(
+                Key.get(int.class, Names.named(config.prefixed(NettyServiceConfig.MAX_CONNECTIONS_PER_ADDRESS))));
+            
+            bind(int.class).annotatedWith(Names.named(NettyServiceConfig.ACCEPT_RATE)).to(
+                Key.get(int.class, Names.named(config.prefixed(NettyServiceConfig.ACCEPT_RATE))));
+            
+            bind(int.class).annotatedWith(Names.named(NettyServiceConfig.ACCEPT_BURST)).to(
+                Key.get(int.class, Names.named(config.prefixed(NettyServiceConfig.ACCEPT_BURST))));
+            
+            bind(long.class).annotatedWith(Names.named(NettyServiceConfig.READER_IDLE_TIME)).to(
+                Key.get(long.class, Names.named(config.prefixed(NettyServiceConfig.READER_IDLE_TIME))));
+            
+            bind(long.class).annotatedWith(Names.named(NettyServiceConfig.WRITER_IDLE_TIME)).to(
+                Key.get(long.class, Names.named(config.prefixed(NettyServiceConfig.WRITER_IDLE_TIME))));
+            
+            bind(long.class).annotatedWith(Names.named(NettyServiceConfig.ALL_IDLE_TIME)).to(
+                Key.get(long.class, Names.named(config.prefixed(NettyServiceConfig.ALL_IDLE_TIME))));
+            
+            bind(TimeUnit.class).annotatedWith(Names.named(NettyServiceConfig.IDLE_TIME_UNIT)).to(
+                Key.get(TimeUnit.class, Names.named(config.prefixed(NettyServiceConfig.IDLE_TIME_UNIT))));
         }
         
         @Override
@@ -25,6 +25,11 @@ import com.google.inject.Singleton;
 
 /**
  * Binds {@link ServerSocketChannelFactory} to {@link ConfigurableNioServerSocketChannelFactory}.
+ * 
+ * <p>
+ *   This is the transport of choice on linux hosts: the jdk selects
+ *   using epoll there. The selector provider in use is logged on startup.
+ * </p>
  *
  * @since 1.0
  * @author Willi Schoenborn
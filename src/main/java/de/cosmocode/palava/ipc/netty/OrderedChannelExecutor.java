@@ -0,0 +1,270 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelEvent;
+import org.jboss.netty.channel.ChannelState;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.handler.execution.ChannelEventRunnable;
+import org.jboss.netty.handler.execution.MemoryAwareThreadPoolExecutor;
+import org.jboss.netty.util.DefaultObjectSizeEstimator;
+import org.jboss.netty.util.EstimatableObjectWrapper;
+import org.jboss.netty.util.ObjectSizeEstimator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.MapMaker;
+
+/**
+ * An {@link Executor} which runs {@link ChannelEventRunnable}s of the same {@link Channel}
+ * one after another using an underlying executor, while limiting the number of
+ * tasks running concurrently across all channels.
+ * 
+ * <p>
+ *   Like the {@link MemoryAwareThreadPoolExecutor}, reads of a channel are suspended as long
+ *   as the estimated size of its pending messages exceeds a limit. Besides channel event
+ *   runnables, this applies to all tasks wrapping a {@link ChannelEvent}, which are run
+ *   concurrently, e.g. pipelined requests.
+ * </p>
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+@ThreadSafe
+final class OrderedChannelExecutor implements Executor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(OrderedChannelExecutor.class);
+    
+    private final Executor executor;
+    
+    private final Semaphore permits;
+    
+    private final long maxChannelMemorySize;
+    
+    private final ObjectSizeEstimator estimator = new DefaultObjectSizeEstimator();
+    
+    private final ConcurrentMap<Channel, ChildExecutor> children = new MapMaker().weakKeys().makeMap();
+    
+    /**
+     * Creates a new executor.
+     * 
+     * @since 2.0
+     * @param executor the underlying executor
+     * @param maxConcurrency the maximum number of concurrently running tasks
+     * @param maxChannelMemorySize the maximum size of pending messages per channel in bytes,
+     *        0 to disable the limit
+     * @throws NullPointerException if executor is null
+     * @throws IllegalArgumentException if maxConcurrency is not positive or maxChannelMemorySize is negative
+     */
+    OrderedChannelExecutor(Executor executor, int maxConcurrency, long maxChannelMemorySize) {
+        this.executor = Preconditions.checkNotNull(executor, "Executor");
+        Preconditions.checkArgument(maxConcurrency > 0, "Max concurrency must be positive, but was %s", maxConcurrency);
+        Preconditions.checkArgument(maxChannelMemorySize >= 0, 
+            "Max channel memory size must not be negative, but was %s", maxChannelMemorySize);
+        this.permits = new Semaphore(maxConcurrency);
+        this.maxChannelMemorySize = maxChannelMemorySize;
+    }
+    
+    @Override
+    public void execute(Runnable task) {
+        Preconditions.checkNotNull(task, "Task");
+        final ChannelEvent event = eventOf(task);
+        if (event == null) {
+            executor.execute(new Permitted(task, null, 0));
+            return;
+        }
+        
+        final ChildExecutor child = getChild(event.getChannel());
+        final int size = event instanceof MessageEvent ? estimator.estimateSize(MessageEvent.class.cast(event)) : 0;
+        child.increase(event.getChannel(), size);
+        if (task instanceof ChannelEventRunnable) {
+            child.execute(new Permitted(task, child, size));
+        } else {
+            executor.execute(new Permitted(task, child, size));
+        }
+    }
+    
+    private static ChannelEvent eventOf(Runnable task) {
+        if (task instanceof ChannelEventRunnable) {
+            return ChannelEventRunnable.class.cast(task).getEvent();
+        } else if (task instanceof EstimatableObjectWrapper) {
+            final Object wrapped = EstimatableObjectWrapper.class.cast(task).unwrap();
+            return wrapped instanceof ChannelEvent ? ChannelEvent.class.cast(wrapped) : null;
+        } else {
+            return null;
+        }
+    }
+    
+    private ChildExecutor getChild(Channel channel) {
+        final ChildExecutor child = children.get(channel);
+        if (child == null) {
+            final ChildExecutor created = new ChildExecutor();
+            final ChildExecutor existing = children.putIfAbsent(channel, created);
+            return existing == null ? created : existing;
+        } else {
+            return child;
+        }
+    }
+    
+    private void runPermitted(Runnable task) {
+        permits.acquireUninterruptibly();
+        try {
+            task.run();
+        /* CHECKSTYLE:OFF */
+        } catch (RuntimeException e) {
+        /* CHECKSTYLE:ON */
+            LOG.error("Unexpected exception in " + task, e);
+        } finally {
+            permits.release();
+        }
+    }
+    
+    private void onAfterExecute(Runnable task) {
+        final ChannelEvent event = eventOf(task);
+        if (event != null) {
+            if (event instanceof ChannelStateEvent) {
+                final ChannelStateEvent stateEvent = ChannelStateEvent.class.cast(event);
+                if (stateEvent.getState() == ChannelState.OPEN && !event.getChannel().isOpen()) {
+                    children.remove(event.getChannel());
+                }
+            }
+        }
+    }
+    
+    /**
+     * Runs a single task once a permit is available and releases its
+     * pending size afterwards.
+     *
+     * @since 2.0
+     * @author Willi Schoenborn
+     */
+    private final class Permitted implements Runnable {
+        
+        private final Runnable task;
+        
+        private final ChildExecutor child;
+        
+        private final int size;
+        
+        private Permitted(Runnable task, ChildExecutor child, int size) {
+            this.task = task;
+            this.child = child;
+            this.size = size;
+        }
+        
+        @Override
+        public void run() {
+            try {
+                runPermitted(task);
+            } finally {
+                if (child != null) {
+                    child.decrease(eventOf(task).getChannel(), size);
+                }
+            }
+        }
+        
+    }
+    
+    /**
+     * Serializes all tasks of one channel and accounts their pending size.
+     * The channel is not referenced, because children are weakly keyed by it.
+     *
+     * @since 2.0
+     * @author Willi Schoenborn
+     */
+    private final class ChildExecutor implements Runnable {
+        
+        private final Queue<Permitted> tasks = new ConcurrentLinkedQueue<Permitted>();
+        
+        private final AtomicBoolean running = new AtomicBoolean();
+        
+        private final AtomicLong pending = new AtomicLong();
+        
+        @GuardedBy("this")
+        private boolean suspended;
+        
+        private void increase(Channel channel, int size) {
+            if (maxChannelMemorySize > 0 && pending.addAndGet(size) >= maxChannelMemorySize) {
+                suspend(channel);
+            }
+        }
+        
+        private synchronized void suspend(Channel channel) {
+            // completions may have released the memory in the meantime
+            if (suspended || pending.get() < maxChannelMemorySize || !channel.isOpen()) return;
+            LOG.trace("Suspending reads of {} with {} pending bytes", channel, pending);
+            suspended = true;
+            channel.setReadable(false);
+        }
+        
+        private void decrease(Channel channel, int size) {
+            if (maxChannelMemorySize > 0 && pending.addAndGet(-size) < maxChannelMemorySize) {
+                resume(channel);
+            }
+        }
+        
+        private synchronized void resume(Channel channel) {
+            if (!suspended || pending.get() >= maxChannelMemorySize) return;
+            LOG.trace("Resuming reads of {} with {} pending bytes", channel, pending);
+            suspended = false;
+            if (channel.isOpen()) {
+                channel.setReadable(true);
+            }
+        }
+        
+        private void execute(Permitted task) {
+            tasks.add(task);
+            if (running.compareAndSet(false, true)) {
+                executor.execute(this);
+            }
+        }
+        
+        @Override
+        public void run() {
+            while (true) {
+                try {
+                    Permitted permitted;
+                    while ((permitted = tasks.poll()) != null) {
+                        permitted.run();
+                        onAfterExecute(permitted.task);
+                    }
+                } finally {
+                    running.set(false);
+                }
+                
+                // a task may have been added after the last poll but before resetting the flag
+                if (tasks.isEmpty() || !running.compareAndSet(false, true)) return;
+            }
+        }
+        
+    }
+
+}
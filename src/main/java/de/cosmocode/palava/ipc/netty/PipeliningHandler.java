@@ -0,0 +1,302 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.jboss.netty.channel.ChannelHandler;
+import org.jboss.netty.channel.ChannelHandler.Sharable;
+import org.jboss.netty.channel.ChannelEvent;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelHandler;
+import org.jboss.netty.util.EstimatableObjectWrapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+import de.cosmocode.palava.ipc.protocol.Protocol;
+
+/**
+ * A {@link ChannelHandler} which processes pipelined requests of the same channel
+ * concurrently using an {@link Executor}, while writing the responses in the order
+ * the requests were received.
+ * 
+ * <p>
+ *   Every received message occupies a slot in the sequence of its channel. Writes
+ *   requested by the thread processing a message are assigned to its slot and held back
+ *   until all preceding slots are completed. Slots without any writes, e.g. because the
+ *   {@link Protocol} returned {@link Protocol.NoResponse}, complete as soon as processing
+ *   finished. Writes requested outside of processing threads are passed through unchanged.
+ *   Disconnect, unbind and close events are held back until all received messages
+ *   have been processed. Messages rejected by the executor close the channel.
+ * </p>
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+@Sharable
+@ThreadSafe
+final class PipeliningHandler extends SimpleChannelHandler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PipeliningHandler.class);
+    
+    private static final ThreadLocal<Slot> CURRENT = new ThreadLocal<Slot>();
+    
+    private final Executor executor;
+    
+    PipeliningHandler(Executor executor) {
+        this.executor = Preconditions.checkNotNull(executor, "Executor");
+    }
+    
+    @Override
+    public void messageReceived(ChannelHandlerContext context, MessageEvent event) throws Exception {
+        // upstream events of one channel are never fired concurrently
+        Sequencer sequencer = (Sequencer) context.getAttachment();
+        if (sequencer == null) {
+            sequencer = new Sequencer(context);
+            context.setAttachment(sequencer);
+        }
+        final Slot slot = sequencer.next();
+        try {
+            executor.execute(new Dispatch(context, event, slot));
+        } catch (RejectedExecutionException e) {
+            LOG.warn("Closing {}, because processing of {} has been rejected", context.getChannel(), event);
+            // later responses must not wait for a request which is never processed
+            sequencer.complete(slot);
+            Channels.close(context, Channels.future(context.getChannel()));
+        }
+    }
+    
+    @Override
+    public void channelDisconnected(ChannelHandlerContext context, ChannelStateEvent event) throws Exception {
+        sendUpstreamAfterSlots(context, event);
+    }
+    
+    @Override
+    public void channelUnbound(ChannelHandlerContext context, ChannelStateEvent event) throws Exception {
+        sendUpstreamAfterSlots(context, event);
+    }
+    
+    @Override
+    public void channelClosed(ChannelHandlerContext context, ChannelStateEvent event) throws Exception {
+        sendUpstreamAfterSlots(context, event);
+    }
+    
+    private void sendUpstreamAfterSlots(ChannelHandlerContext context, ChannelEvent event) {
+        final Sequencer sequencer = (Sequencer) context.getAttachment();
+        if (sequencer == null) {
+            context.sendUpstream(event);
+        } else {
+            sequencer.sendUpstreamAfterSlots(event);
+        }
+    }
+    
+    @Override
+    public void writeRequested(ChannelHandlerContext context, MessageEvent event) throws Exception {
+        final Slot slot = CURRENT.get();
+        if (slot == null || slot.sequencer.context != context) {
+            context.sendDownstream(event);
+        } else {
+            slot.sequencer.write(slot, event);
+        }
+    }
+    
+    /**
+     * Processes a single message on the executor.
+     *
+     * @since 2.0
+     * @author Willi Schoenborn
+     */
+    private static final class Dispatch implements Runnable, EstimatableObjectWrapper {
+        
+        private final ChannelHandlerContext context;
+        
+        private final MessageEvent event;
+        
+        private final Slot slot;
+        
+        private Dispatch(ChannelHandlerContext context, MessageEvent event, Slot slot) {
+            this.context = context;
+            this.event = event;
+            this.slot = slot;
+        }
+        
+        @Override
+        public void run() {
+            CURRENT.set(slot);
+            try {
+                context.sendUpstream(event);
+            } finally {
+                CURRENT.remove();
+                slot.sequencer.complete(slot);
+            }
+        }
+        
+        @Override
+        public Object unwrap() {
+            return event;
+        }
+        
+    }
+    
+    /**
+     * A position in the response sequence of a channel.
+     *
+     * @since 2.0
+     * @author Willi Schoenborn
+     */
+    private static final class Slot {
+        
+        private final Sequencer sequencer;
+        
+        @GuardedBy("sequencer")
+        private final List<MessageEvent> writes = Lists.newArrayListWithCapacity(1);
+        
+        @GuardedBy("sequencer")
+        private boolean completed;
+        
+        private Slot(Sequencer sequencer) {
+            this.sequencer = sequencer;
+        }
+        
+    }
+    
+    /**
+     * Per channel sequence of slots.
+     *
+     * @since 2.0
+     * @author Willi Schoenborn
+     */
+    private static final class Sequencer {
+        
+        private final ChannelHandlerContext context;
+        
+        @GuardedBy("this")
+        private final Queue<Slot> slots = new LinkedList<Slot>();
+        
+        // writes which are ready to be sent, in order
+        @GuardedBy("this")
+        private final Queue<MessageEvent> outbound = new LinkedList<MessageEvent>();
+        
+        // upstream events which have to wait for all slots
+        @GuardedBy("this")
+        private final Queue<ChannelEvent> deferred = new LinkedList<ChannelEvent>();
+        
+        @GuardedBy("this")
+        private boolean flushing;
+        
+        private Sequencer(ChannelHandlerContext context) {
+            this.context = context;
+        }
+        
+        private synchronized Slot next() {
+            final Slot slot = new Slot(this);
+            slots.add(slot);
+            return slot;
+        }
+        
+        private void write(Slot slot, MessageEvent event) {
+            synchronized (this) {
+                if (slots.peek() == slot) {
+                    outbound.add(event);
+                } else {
+                    LOG.trace("Holding back {} until preceding responses are written", event);
+                    slot.writes.add(event);
+                    return;
+                }
+            }
+            flush();
+        }
+        
+        private void complete(Slot slot) {
+            synchronized (this) {
+                slot.completed = true;
+                while (true) {
+                    final Slot head = slots.peek();
+                    if (head == null || !head.completed) break;
+                    slots.remove();
+                    
+                    final Slot next = slots.peek();
+                    if (next == null) break;
+                    outbound.addAll(next.writes);
+                    next.writes.clear();
+                }
+            }
+            flush();
+        }
+        
+        private void sendUpstreamAfterSlots(ChannelEvent event) {
+            synchronized (this) {
+                if (!slots.isEmpty() || !deferred.isEmpty()) {
+                    LOG.trace("Holding back {} until all requests have been processed", event);
+                    deferred.add(event);
+                    return;
+                }
+            }
+            context.sendUpstream(event);
+        }
+        
+        /**
+         * Sends ready writes and deferred events without holding the lock. Only one
+         * thread flushes at a time, which keeps the order of writes.
+         */
+        private void flush() {
+            while (true) {
+                final ChannelEvent event;
+                final boolean write;
+                synchronized (this) {
+                    if (flushing) return;
+                    if (!outbound.isEmpty()) {
+                        event = outbound.remove();
+                        write = true;
+                    } else if (slots.isEmpty() && !deferred.isEmpty()) {
+                        event = deferred.remove();
+                        write = false;
+                    } else {
+                        return;
+                    }
+                    flushing = true;
+                }
+                try {
+                    if (write) {
+                        context.sendDownstream(event);
+                    } else {
+                        context.sendUpstream(event);
+                    }
+                } finally {
+                    synchronized (this) {
+                        flushing = false;
+                    }
+                }
+            }
+        }
+        
+    }
+    
+}
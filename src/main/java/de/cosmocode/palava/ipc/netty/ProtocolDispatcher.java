@@ -0,0 +1,165 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.MapMaker;
+
+import de.cosmocode.palava.ipc.protocol.Protocol;
+
+/**
+ * Dispatch table which maps request classes to the {@link Protocol}s
+ * which are able to handle them.
+ * 
+ * <p>
+ *   On a miss the configured protocols are scanned once for the request's class
+ *   and the resulting candidates are cached. Candidates are all {@link ContentBasedProtocol}s
+ *   and the first class based protocol which supports the request, in their original order.
+ *   Each candidate carries the statistics of its protocol, so a hit requires no further lookup.
+ * </p>
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+@ThreadSafe
+final class ProtocolDispatcher {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ProtocolDispatcher.class);
+    
+    private static final Candidate[] EMPTY = new Candidate[0];
+    
+    private final Iterable<Protocol> protocols;
+    
+    private final Function<? super Protocol, ProtocolStatistics> statistics;
+    
+    private volatile ConcurrentMap<Class<?>, Candidate[]> table = newTable();
+    
+    private final AtomicLong hits = new AtomicLong();
+    
+    private final AtomicLong misses = new AtomicLong();
+    
+    ProtocolDispatcher(Iterable<Protocol> protocols, Function<? super Protocol, ProtocolStatistics> statistics) {
+        this.protocols = Preconditions.checkNotNull(protocols, "Protocols");
+        this.statistics = Preconditions.checkNotNull(statistics, "Statistics");
+    }
+    
+    private static ConcurrentMap<Class<?>, Candidate[]> newTable() {
+        return new MapMaker().weakKeys().makeMap();
+    }
+    
+    /**
+     * Finds the protocol which is responsible for the given request.
+     * 
+     * @since 2.0
+     * @param request the incoming request
+     * @return the candidate of the first protocol which supports the given request
+     * @throws NoSuchElementException if no protocol supports the given request
+     */
+    Candidate find(Object request) {
+        // entries created concurrently to an invalidation end up in the discarded table
+        final ConcurrentMap<Class<?>, Candidate[]> current = table;
+        final Class<?> type = request.getClass();
+        
+        Candidate[] candidates = current.get(type);
+        
+        if (candidates == null) {
+            misses.incrementAndGet();
+            candidates = scan(request);
+            LOG.trace("Caching {} candidate(s) for {}", candidates.length, type);
+            current.put(type, candidates);
+        } else {
+            hits.incrementAndGet();
+        }
+        
+        for (Candidate candidate : candidates) {
+            if (candidate.protocol.supports(request)) return candidate;
+        }
+        throw new NoSuchElementException("No protocol found which can handle " + request);
+    }
+    
+    private Candidate[] scan(Object request) {
+        final List<Candidate> candidates = Lists.newArrayList();
+        for (Protocol protocol : protocols) {
+            if (protocol instanceof ContentBasedProtocol) {
+                candidates.add(new Candidate(protocol, statistics.apply(protocol)));
+            } else if (protocol.supports(request)) {
+                candidates.add(new Candidate(protocol, statistics.apply(protocol)));
+                break;
+            }
+        }
+        return candidates.isEmpty() ? EMPTY : candidates.toArray(new Candidate[candidates.size()]);
+    }
+    
+    /**
+     * Discards all cached entries. Required in case the underlying
+     * protocols changed.
+     * 
+     * @since 2.0
+     */
+    void invalidate() {
+        LOG.debug("Invalidating protocol dispatch table");
+        table = newTable();
+    }
+    
+    long getHits() {
+        return hits.get();
+    }
+    
+    long getMisses() {
+        return misses.get();
+    }
+    
+    /**
+     * A cached dispatch candidate, pairing a {@link Protocol} with its {@link ProtocolStatistics}.
+     *
+     * @since 2.0
+     * @author Willi Schoenborn
+     */
+    static final class Candidate {
+        
+        private final Protocol protocol;
+        
+        private final ProtocolStatistics statistics;
+        
+        private Candidate(Protocol protocol, ProtocolStatistics statistics) {
+            this.protocol = protocol;
+            this.statistics = Preconditions.checkNotNull(statistics, "Statistics");
+        }
+        
+        Protocol getProtocol() {
+            return protocol;
+        }
+        
+        ProtocolStatistics getStatistics() {
+            return statistics;
+        }
+        
+    }
+    
+}
@@ -16,21 +16,28 @@
 
 package de.cosmocode.palava.ipc.netty;
 
-import java.util.NoSuchElementException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.annotation.concurrent.ThreadSafe;
 
 import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
 import org.jboss.netty.channel.ChannelHandler;
 import org.jboss.netty.channel.ChannelHandler.Sharable;
 import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelStateEvent;
 import org.jboss.netty.channel.ExceptionEvent;
 import org.jboss.netty.channel.MessageEvent;
 import org.jboss.netty.channel.SimpleChannelHandler;
+import org.jboss.netty.handler.stream.ChunkedInput;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.MapMaker;
+import com.google.common.collect.Maps;
 import com.google.inject.Inject;
 
 import de.cosmocode.palava.ipc.protocol.DetachedConnection;
@@ -39,7 +46,8 @@ import de.cosmocode.palava.ipc.protocol.ProtocolException;
 
 /**
  * A {@link ChannelHandler} implementation which delegates to
- * configured {@link Protocol}s.
+ * configured {@link Protocol}s. Responses of type {@link ChunkedInput}
+ * are streamed if streaming is enabled, see {@link ChunkedResponses}.
  *
  * @since 1.0
  * @author Willi Schoenborn
@@ -50,14 +58,57 @@ public final class ProtocolHandler extends SimpleChannelHandler {
 
     private static final Logger LOG = LoggerFactory.getLogger(ProtocolHandler.class);
     
+    // statistics of the protocol whose response is currently written by this thread
+    private static final ThreadLocal<ProtocolStatistics> WRITING = new ThreadLocal<ProtocolStatistics>();
+    
     private final ConnectionManager manager;
     
     private final Iterable<Protocol> protocols;
+    
+    private final ProtocolDispatcher dispatcher;
+    
+    private volatile int latencySampleRate = 1;
+    
+    // weak keys compare by identity, protocols added later get their statistics on demand
+    private volatile ConcurrentMap<Protocol, ProtocolStatistics> statistics = new MapMaker().weakKeys().
+        makeComputingMap(new Function<Protocol, ProtocolStatistics>() {
+            
+            @Override
+            public ProtocolStatistics apply(Protocol from) {
+                return new ProtocolStatistics(from, latencySampleRate);
+            }
+            
+        });
 
     @Inject
     public ProtocolHandler(ConnectionManager manager, Iterable<Protocol> protocols) {
         this.manager = Preconditions.checkNotNull(manager, "Manager");
         this.protocols = Preconditions.checkNotNull(protocols, "Protocols");
+        // only consulted on dispatch misses, hits carry the statistics in their candidate
+        this.dispatcher = new ProtocolDispatcher(protocols, new Function<Protocol, ProtocolStatistics>() {
+            
+            @Override
+            public ProtocolStatistics apply(Protocol from) {
+                return statistics.get(from);
+            }
+            
+        });
+    }
+    
+    /**
+     * Records the latency of every n-th request only. Measuring a request requires two
+     * clock reads, which can be noticeable for very cheap protocols. Defaults to 1.
+     * Set by the owning {@link NettyService}, which knows the configured rate, before
+     * any statistics are created, see {@link NettyServiceConfig#LATENCY_SAMPLE_RATE}.
+     * 
+     * @since 2.0
+     * @param latencySampleRate the sample rate
+     * @throws IllegalArgumentException if latencySampleRate is not positive
+     */
+    void setLatencySampleRate(int latencySampleRate) {
+        Preconditions.checkArgument(latencySampleRate > 0, 
+            "LatencySampleRate must be positive, but was %s", latencySampleRate);
+        this.latencySampleRate = latencySampleRate;
     }
     
     @Override
@@ -65,40 +116,141 @@ public final class ProtocolHandler extends SimpleChannelHandler {
         final Object request = event.getMessage();
         final Channel channel = event.getChannel();
         
-        final Protocol protocol = findProtocol(request);
-        final DetachedConnection connection = manager.get(channel);
-        final Object response = process(protocol, request, connection);
+        final InFlightHandler.Request inFlight = event instanceof InFlightHandler.Request ? 
+            InFlightHandler.Request.class.cast(event) : null;
+        boolean written = false;
         
-        if (response == Protocol.NoResponse.INSTANCE) {
-            LOG.trace("Omitting response as requested by {}", protocol);
-        } else {
-            LOG.trace("Writing response {} to channel", response);
-            channel.write(response);
+        try {
+            final ProtocolDispatcher.Candidate candidate = dispatcher.find(request);
+            final Protocol protocol = candidate.getProtocol();
+            final ProtocolStatistics stats = candidate.getStatistics();
+            final DetachedConnection connection = getConnection(context, channel);
+            final Object response = process(protocol, stats, request, connection);
+            
+            if (response == Protocol.NoResponse.INSTANCE) {
+                stats.noResponse();
+                LOG.trace("Omitting response as requested by {}", protocol);
+            } else {
+                LOG.trace("Writing response {} to channel", response);
+                if (response instanceof ChunkedInput && isStreaming(context)) {
+                    stats.streamed();
+                }
+                final ChannelFuture future;
+                WRITING.set(stats);
+                try {
+                    future = channel.write(response);
+                } finally {
+                    WRITING.set(null);
+                }
+                if (inFlight != null) {
+                    // the request is answered once the response left the pipeline
+                    future.addListener(inFlight);
+                    written = true;
+                }
+            }
+        } finally {
+            if (inFlight != null && !written) {
+                inFlight.complete();
+            }
         }
     }
     
-    private Protocol findProtocol(Object request) {
-        for (Protocol protocol : protocols) {
-            if (protocol.supports(request)) return protocol;
+    private boolean isStreaming(ChannelHandlerContext context) {
+        // without the streaming stage, chunked responses reach the encoders as they are
+        return context.getPipeline().get(StreamingStage.NAME) != null;
+    }
+    
+    private DetachedConnection getConnection(ChannelHandlerContext context, Channel channel) {
+        // the context is bound to the channel, caching turns subsequent lookups into a field read
+        final Object cached = context.getAttachment();
+        if (cached == null) {
+            final DetachedConnection connection = manager.get(channel);
+            context.setAttachment(connection);
+            return connection;
+        } else {
+            return DetachedConnection.class.cast(cached);
         }
-        throw new NoSuchElementException("No protocol found which can handle " + request);
     }
-
-    private Object process(Protocol protocol, Object request, DetachedConnection connection) {
+    
+    private Object process(Protocol protocol, ProtocolStatistics stats, Object request, 
+        DetachedConnection connection) {
+        final boolean sampled = stats.requested();
+        final long start = sampled ? System.nanoTime() : 0L;
         try {
             LOG.trace("Processing request of type {} using {}", request.getClass(), protocol);
             return protocol.process(request, connection);
         } catch (ProtocolException e) {
+            stats.protocolError();
             LOG.warn("Error in protocol", e);
             return protocol.onError(e, request);
         /* CHECKSTYLE:OFF */
         } catch (RuntimeException e) {
         /* CHECKSTYLE:ON */
+            stats.unexpectedError();
             LOG.error("Unexpected exception in protocol", e);
             return protocol.onError(e, request);
+        } finally {
+            if (sampled) {
+                stats.processed(System.nanoTime() - start);
+            }
         }
     }
     
+    /**
+     * Retrieves the statistics of the protocol whose response is currently written by
+     * the calling thread. Downstream handlers run in the writing thread and use this to
+     * attribute their work to the protocol. Responses which are sent later from another
+     * thread, e.g. held back by the {@link PipeliningHandler} until their predecessors are
+     * written, or remaining chunks of a streamed response, are not attributed.
+     * 
+     * @since 2.0
+     * @return the statistics or null if the current thread is not writing a response
+     */
+    static ProtocolStatistics writing() {
+        return WRITING.get();
+    }
+    
+    ProtocolDispatcher getDispatcher() {
+        return dispatcher;
+    }
+    
+    /**
+     * Lets this handler record into the statistics of the given handler. Pipelines
+     * which create a handler per channel share the statistics of the first one, which
+     * keeps one set of statistics per protocol instead of one per connection.
+     * 
+     * @since 2.0
+     * @param other the handler whose statistics should be used
+     */
+    void shareStatistics(ProtocolHandler other) {
+        Preconditions.checkNotNull(other, "Other");
+        if (other == this) return;
+        statistics = other.statistics;
+        // cached candidates still point to the former statistics
+        dispatcher.invalidate();
+    }
+    
+    /**
+     * Retrieves the statistics of all currently configured protocols.
+     * 
+     * @since 2.0
+     * @return the statistics by protocol, in protocol order
+     */
+    Map<Protocol, ProtocolStatistics> getStatistics() {
+        final Map<Protocol, ProtocolStatistics> map = Maps.newLinkedHashMap();
+        for (Protocol protocol : protocols) {
+            map.put(protocol, statistics.get(protocol));
+        }
+        return map;
+    }
+    
+    @Override
+    public void channelClosed(ChannelHandlerContext context, ChannelStateEvent event) throws Exception {
+        // the manager cleared the connection, it must not be reachable through the cache anymore
+        context.setAttachment(null);
+        super.channelClosed(context, event);
+    }
+    
     @Override
     public void exceptionCaught(ChannelHandlerContext context, ExceptionEvent event) throws Exception {
         final Channel channel = event.getChannel();
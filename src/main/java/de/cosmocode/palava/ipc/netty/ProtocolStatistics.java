@@ -0,0 +1,206 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.google.common.base.Preconditions;
+
+import de.cosmocode.palava.ipc.protocol.Protocol;
+
+/**
+ * Lock-free request statistics of a single {@link Protocol}.
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+@ThreadSafe
+final class ProtocolStatistics implements ProtocolStatisticsMBean {
+
+    private static final double NANOS_PER_MICRO = TimeUnit.MICROSECONDS.toNanos(1);
+    
+    private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+    
+    private final String protocol;
+    
+    private final int sampleRate;
+    
+    private final AtomicLong requests = new AtomicLong();
+    
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    
+    private final AtomicLong protocolErrors = new AtomicLong();
+    
+    private final AtomicLong unexpectedErrors = new AtomicLong();
+    
+    private final AtomicLong noResponses = new AtomicLong();
+    
+    private final AtomicLong streamedResponses = new AtomicLong();
+    
+    private final AtomicLong compressedResponses = new AtomicLong();
+    
+    private final AtomicLong uncompressedBytes = new AtomicLong();
+    
+    private final AtomicLong compressedBytes = new AtomicLong();
+    
+    private final AtomicLong compressionNanos = new AtomicLong();
+    
+    ProtocolStatistics(Protocol protocol, int sampleRate) {
+        this.protocol = Preconditions.checkNotNull(protocol, "Protocol").toString();
+        Preconditions.checkArgument(sampleRate > 0, "SampleRate must be positive, but was %s", sampleRate);
+        this.sampleRate = sampleRate;
+    }
+    
+    /**
+     * Counts a new request.
+     * 
+     * @since 2.0
+     * @return true if the latency of this request should be recorded
+     */
+    boolean requested() {
+        final long count = requests.incrementAndGet();
+        return sampleRate == 1 || count % sampleRate == 0;
+    }
+    
+    int getSampleRate() {
+        return sampleRate;
+    }
+    
+    void processed(long nanos) {
+        latencies.record(nanos);
+    }
+    
+    void protocolError() {
+        protocolErrors.incrementAndGet();
+    }
+    
+    void unexpectedError() {
+        unexpectedErrors.incrementAndGet();
+    }
+    
+    void noResponse() {
+        noResponses.incrementAndGet();
+    }
+    
+    void streamed() {
+        streamedResponses.incrementAndGet();
+    }
+    
+    /**
+     * Counts a compressed response.
+     * 
+     * @since 2.0
+     * @param uncompressed the size of the response in bytes
+     * @param compressed the size of the sent response in bytes
+     * @param nanos the time spent compressing
+     */
+    void compressed(int uncompressed, int compressed, long nanos) {
+        compressedResponses.incrementAndGet();
+        uncompressedBytes.addAndGet(uncompressed);
+        compressedBytes.addAndGet(compressed);
+        compressionNanos.addAndGet(nanos);
+    }
+    
+    @Override
+    public String getProtocol() {
+        return protocol;
+    }
+    
+    @Override
+    public long getRequests() {
+        return requests.get();
+    }
+    
+    @Override
+    public long getProtocolErrors() {
+        return protocolErrors.get();
+    }
+    
+    @Override
+    public long getUnexpectedErrors() {
+        return unexpectedErrors.get();
+    }
+    
+    @Override
+    public long getNoResponses() {
+        return noResponses.get();
+    }
+    
+    @Override
+    public double getMeanLatency() {
+        return latencies.getMean() / NANOS_PER_MICRO;
+    }
+    
+    @Override
+    public double getLatencyP50() {
+        return latencies.getPercentile(50) / NANOS_PER_MICRO;
+    }
+    
+    @Override
+    public double getLatencyP99() {
+        return latencies.getPercentile(99) / NANOS_PER_MICRO;
+    }
+    
+    @Override
+    public double getLatencyP999() {
+        return latencies.getPercentile(99.9) / NANOS_PER_MICRO;
+    }
+    
+    @Override
+    public long getStreamedResponses() {
+        return streamedResponses.get();
+    }
+    
+    @Override
+    public long getCompressedResponses() {
+        return compressedResponses.get();
+    }
+    
+    @Override
+    public double getCompressionRatio() {
+        final long uncompressed = uncompressedBytes.get();
+        return uncompressed == 0 ? 0.0 : (double) compressedBytes.get() / uncompressed;
+    }
+    
+    @Override
+    public double getCompressionTime() {
+        return compressionNanos.get() / NANOS_PER_MILLI;
+    }
+    
+    @Override
+    public void reset() {
+        requests.set(0);
+        latencies.reset();
+        protocolErrors.set(0);
+        unexpectedErrors.set(0);
+        noResponses.set(0);
+        streamedResponses.set(0);
+        compressedResponses.set(0);
+        uncompressedBytes.set(0);
+        compressedBytes.set(0);
+        compressionNanos.set(0);
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("%s [%s]", ProtocolStatistics.class.getSimpleName(), protocol);
+    }
+    
+}
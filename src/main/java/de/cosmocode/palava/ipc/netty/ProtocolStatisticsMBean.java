@@ -0,0 +1,144 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import de.cosmocode.palava.ipc.protocol.Protocol;
+
+/**
+ * MBean interface for the statistics of a single {@link Protocol}. Counters include
+ * every request, latencies are taken from every n-th request as configured by
+ * {@link NettyServiceConfig#LATENCY_SAMPLE_RATE}.
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+public interface ProtocolStatisticsMBean {
+
+    /**
+     * Retrieves the name of the protocol.
+     * 
+     * @since 2.0
+     * @return the protocol
+     */
+    String getProtocol();
+    
+    /**
+     * Retrieves the number of processed requests, including failed ones.
+     * 
+     * @since 2.0
+     * @return number of requests
+     */
+    long getRequests();
+    
+    /**
+     * Retrieves the number of requests which failed with a protocol exception.
+     * 
+     * @since 2.0
+     * @return number of protocol errors
+     */
+    long getProtocolErrors();
+    
+    /**
+     * Retrieves the number of requests which failed with an unexpected runtime exception.
+     * 
+     * @since 2.0
+     * @return number of unexpected errors
+     */
+    long getUnexpectedErrors();
+    
+    /**
+     * Retrieves the number of requests which did not produce a response.
+     * 
+     * @since 2.0
+     * @return number of requests without response
+     */
+    long getNoResponses();
+    
+    /**
+     * Retrieves the mean processing time.
+     * 
+     * @since 2.0
+     * @return mean latency in microseconds
+     */
+    double getMeanLatency();
+    
+    /**
+     * Retrieves the median processing time.
+     * 
+     * @since 2.0
+     * @return 50th percentile in microseconds
+     */
+    double getLatencyP50();
+    
+    /**
+     * Retrieves the 99th percentile of the processing time.
+     * 
+     * @since 2.0
+     * @return 99th percentile in microseconds
+     */
+    double getLatencyP99();
+    
+    /**
+     * Retrieves the 99.9th percentile of the processing time.
+     * 
+     * @since 2.0
+     * @return 99.9th percentile in microseconds
+     */
+    double getLatencyP999();
+    
+    /**
+     * Retrieves the number of responses which have been streamed in chunks.
+     * Chunked responses are only streamed if {@link NettyServiceConfig#STREAMING} is enabled.
+     * 
+     * @since 2.0
+     * @return number of streamed responses
+     */
+    long getStreamedResponses();
+    
+    /**
+     * Retrieves the number of responses which exceeded the compression threshold,
+     * including those which were sent uncompressed because compression did not pay off.
+     * 
+     * @since 2.0
+     * @return number of compressed responses
+     */
+    long getCompressedResponses();
+    
+    /**
+     * Retrieves the ratio of sent to original size of all compressed responses.
+     * 
+     * @since 2.0
+     * @return the compression ratio, 0 if no response has been compressed
+     */
+    double getCompressionRatio();
+    
+    /**
+     * Retrieves the total time spent compressing responses.
+     * 
+     * @since 2.0
+     * @return compression time in milliseconds
+     */
+    double getCompressionTime();
+    
+    /**
+     * Resets all counters and the latency histogram.
+     * 
+     * @since 2.0
+     */
+    void reset();
+    
+}
@@ -0,0 +1,110 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.net.ServerSocket;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelException;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Static utility class for enabling SO_REUSEPORT on server channels. The socket option is
+ * looked up reflectively, because it is only available on recent runtimes, and so is the
+ * underlying socket of a channel, because netty does not expose it.
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+final class ReusePort {
+
+    private ReusePort() {
+        
+    }
+    
+    /**
+     * Checks whether the current runtime supports SO_REUSEPORT.
+     * 
+     * @since 2.0
+     * @return true if SO_REUSEPORT is available, false otherwise
+     */
+    static boolean isAvailable() {
+        try {
+            option();
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        } catch (NoSuchFieldException e) {
+            return false;
+        } catch (IllegalAccessException e) {
+            return false;
+        }
+    }
+    
+    private static Object option() throws ClassNotFoundException, NoSuchFieldException, IllegalAccessException {
+        return Class.forName("java.net.StandardSocketOptions").getField("SO_REUSEPORT").get(null);
+    }
+    
+    /**
+     * Enables SO_REUSEPORT on the given unbound socket based server channel.
+     * 
+     * @since 2.0
+     * @param channel the channel
+     * @throws NullPointerException if channel is null
+     * @throws ChannelException if SO_REUSEPORT could not be enabled
+     */
+    static void enable(Channel channel) {
+        Preconditions.checkNotNull(channel, "Channel");
+        try {
+            final Object socket = socketOf(channel);
+            final Object option = option();
+            final Class<?> type = Class.forName("java.net.SocketOption");
+            // the socket implementations are not accessible, their public supertypes are
+            final Class<?> owner = socket instanceof ServerSocket ? 
+                ServerSocket.class : Class.forName("java.nio.channels.NetworkChannel");
+            owner.getMethod("setOption", type, Object.class).invoke(socket, option, Boolean.TRUE);
+        } catch (ClassNotFoundException e) {
+            throw new ChannelException("SO_REUSEPORT is not supported by this runtime", e);
+        } catch (NoSuchFieldException e) {
+            throw new ChannelException("SO_REUSEPORT is not supported by " + channel.getClass().getName(), e);
+        } catch (NoSuchMethodException e) {
+            throw new ChannelException("SO_REUSEPORT is not supported by " + channel.getClass().getName(), e);
+        } catch (IllegalAccessException e) {
+            throw new ChannelException("Unable to enable SO_REUSEPORT on " + channel, e);
+        } catch (InvocationTargetException e) {
+            throw new ChannelException("Unable to enable SO_REUSEPORT on " + channel, e.getCause());
+        }
+    }
+    
+    private static Object socketOf(Channel channel) throws NoSuchFieldException, IllegalAccessException {
+        // nio and oio server channels keep their socket in a package-private field
+        for (Class<?> type = channel.getClass(); type != null; type = type.getSuperclass()) {
+            try {
+                final Field field = type.getDeclaredField("socket");
+                field.setAccessible(true);
+                return field.get(channel);
+            } catch (NoSuchFieldException e) {
+                continue;
+            }
+        }
+        throw new NoSuchFieldException("socket");
+    }
+    
+}
@@ -0,0 +1,92 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.channel.ChannelEvent;
+import org.jboss.netty.channel.ChannelHandler.Sharable;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelState;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.ChannelUpstreamHandler;
+import org.jboss.netty.channel.ServerChannel;
+import org.jboss.netty.channel.ServerChannelFactory;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * {@link ServerChannelFactory} decorator which enables SO_REUSEPORT on all channels
+ * created by the underlying factory.
+ * 
+ * <p>
+ *   {@link ServerBootstrap#bind(java.net.SocketAddress)} binds synchronously when the open event
+ *   of a new channel is fired, which happens inside the channel's constructor. The option is therefore
+ *   enabled by a handler in front of the bootstrap's binder, which sees the open event first.
+ * </p>
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+final class ReusePortServerChannelFactory implements ServerChannelFactory {
+
+    private static final String NAME = "reuse-port-handler";
+    
+    private static final ChannelUpstreamHandler HANDLER = new ReusePortHandler();
+    
+    private final ServerChannelFactory factory;
+    
+    ReusePortServerChannelFactory(ServerChannelFactory factory) {
+        this.factory = Preconditions.checkNotNull(factory, "Factory");
+    }
+    
+    @Override
+    public ServerChannel newChannel(ChannelPipeline pipeline) {
+        pipeline.addFirst(NAME, HANDLER);
+        return factory.newChannel(pipeline);
+    }
+    
+    @Override
+    public void releaseExternalResources() {
+        factory.releaseExternalResources();
+    }
+    
+    /**
+     * Enables SO_REUSEPORT when a channel is opened, before the open event
+     * reaches any handler which could bind it. Failures are reported as exceptions
+     * to the pipeline, which fails the bind.
+     *
+     * @since 2.0
+     * @author Willi Schoenborn
+     */
+    @Sharable
+    private static final class ReusePortHandler implements ChannelUpstreamHandler {
+        
+        @Override
+        public void handleUpstream(ChannelHandlerContext context, ChannelEvent event) throws Exception {
+            if (event instanceof ChannelStateEvent) {
+                final ChannelStateEvent stateEvent = ChannelStateEvent.class.cast(event);
+                if (stateEvent.getState() == ChannelState.OPEN && Boolean.TRUE.equals(stateEvent.getValue())) {
+                    ReusePort.enable(event.getChannel());
+                }
+            }
+            context.sendUpstream(event);
+        }
+        
+    }
+    
+}
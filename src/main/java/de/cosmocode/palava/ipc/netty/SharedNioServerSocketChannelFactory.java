@@ -0,0 +1,59 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ServerChannelFactory;
+import org.jboss.netty.channel.socket.ServerSocketChannel;
+import org.jboss.netty.channel.socket.ServerSocketChannelFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.inject.Inject;
+
+/**
+ * A nio {@link ServerSocketChannelFactory} which is shared by multiple services.
+ * Delegates to a single {@link ConfigurableNioServerSocketChannelFactory}. Releasing external
+ * resources is a no-op, because every service releases its factory when it is disposed.
+ * Boss and worker threads are released when the delegate is disposed.
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+final class SharedNioServerSocketChannelFactory implements ServerChannelFactory {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SharedNioServerSocketChannelFactory.class);
+    
+    private final ConfigurableNioServerSocketChannelFactory factory;
+
+    @Inject
+    SharedNioServerSocketChannelFactory(ConfigurableNioServerSocketChannelFactory factory) {
+        this.factory = Preconditions.checkNotNull(factory, "Factory");
+    }
+    
+    @Override
+    public ServerSocketChannel newChannel(ChannelPipeline pipeline) {
+        return factory.newChannel(pipeline);
+    }
+
+    @Override
+    public void releaseExternalResources() {
+        LOG.debug("Ignoring release of shared {}", this);
+    }
+    
+}
@@ -0,0 +1,49 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import org.jboss.netty.channel.ServerChannelFactory;
+
+import com.google.inject.Binder;
+import com.google.inject.Module;
+import com.google.inject.Singleton;
+
+/**
+ * Binds {@link ServerChannelFactory} to a nio factory which is shared by all services
+ * seeing this binding. Install it once next to the {@link Boss} and {@link Worker} executors,
+ * outside of the private modules of the named services, and do not install another
+ * {@link ServerChannelFactory} module in the named services.
+ * 
+ * <p>
+ *   All services then use one boss executor and one set of nio workers. Accepted channels are
+ *   assigned to the workers round robin regardless of their service. The number of channels
+ *   per worker is balanced that way, the load they produce is not. There is no fair scheduling
+ *   between services: a busy service may delay the others on the same worker. Services which need
+ *   to be isolated from each other should keep their own {@link ServerChannelFactory}.
+ * </p>
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+public final class SharedNioServerSocketChannelFactoryModule implements Module {
+
+    @Override
+    public void configure(Binder binder) {
+        binder.bind(ServerChannelFactory.class).to(SharedNioServerSocketChannelFactory.class).in(Singleton.class);
+    }
+
+}
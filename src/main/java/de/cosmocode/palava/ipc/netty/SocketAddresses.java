@@ -0,0 +1,113 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.List;
+
+import org.jboss.netty.channel.local.LocalAddress;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Static utility class for parsing {@link SocketAddress}es.
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+final class SocketAddresses {
+
+    private static final String LOCAL = "local:";
+    
+    private static final String UNIX = "unix:";
+    
+    private SocketAddresses() {
+        
+    }
+    
+    /**
+     * Parses a single address. Supported formats are {@code host:port}, {@code [ipv6]:port},
+     * {@code *:port} for the wildcard address, {@code local:name} for a {@link LocalAddress}
+     * and {@code unix:/path/to/socket} for a unix domain socket.
+     * 
+     * @since 2.0
+     * @param value the address
+     * @return the parsed address
+     * @throws NullPointerException if value is null
+     * @throws IllegalArgumentException if value is not a valid address or a unix domain socket
+     *         address on a runtime which does not support unix domain sockets
+     */
+    static SocketAddress parse(String value) {
+        Preconditions.checkNotNull(value, "Value");
+        final String address = value.trim();
+        
+        if (address.startsWith(LOCAL)) {
+            final String name = address.substring(LOCAL.length());
+            Preconditions.checkArgument(name.length() > 0, "Missing local name in %s", value);
+            return new LocalAddress(name);
+        }
+        
+        if (address.startsWith(UNIX)) {
+            final String path = address.substring(UNIX.length());
+            Preconditions.checkArgument(path.length() > 0, "Missing path in %s", value);
+            return UnixDomainSockets.newAddress(path);
+        }
+        
+        final int colon = address.lastIndexOf(':');
+        Preconditions.checkArgument(colon > 0, "Missing port in %s", value);
+        
+        final int port;
+        try {
+            port = Integer.parseInt(address.substring(colon + 1));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid port in " + value, e);
+        }
+        
+        final String host = address.substring(0, colon);
+        if ("*".equals(host)) {
+            return new InetSocketAddress(port);
+        } else if (host.startsWith("[") && host.endsWith("]")) {
+            return new InetSocketAddress(host.substring(1, host.length() - 1), port);
+        } else {
+            return new InetSocketAddress(host, port);
+        }
+    }
+    
+    /**
+     * Parses a comma separated list of addresses.
+     * 
+     * @since 2.0
+     * @param value the addresses
+     * @return the parsed addresses, in order
+     * @throws NullPointerException if value is null
+     * @throws IllegalArgumentException if any address is invalid
+     * @see #parse(String)
+     */
+    static List<SocketAddress> parseAll(String value) {
+        Preconditions.checkNotNull(value, "Value");
+        final ImmutableList.Builder<SocketAddress> builder = ImmutableList.builder();
+        for (String address : value.split(",")) {
+            if (address.trim().length() > 0) {
+                builder.add(parse(address));
+            }
+        }
+        return builder.build();
+    }
+    
+}
@@ -0,0 +1,99 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.cosmocode.palava.ipc.netty;
+
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.handler.stream.ChunkedInput;
+import org.jboss.netty.handler.stream.ChunkedWriteHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+
+import de.cosmocode.palava.core.lifecycle.Initializable;
+import de.cosmocode.palava.core.lifecycle.LifecycleException;
+
+/**
+ * Configurable stage which allows protocols to stream their responses by returning
+ * a {@link ChunkedInput}, see {@link ChunkedResponses}. Chunks are pulled one at a time
+ * using a {@link ChunkedWriteHandler} and pass the configured encoders individually.
+ * Pulling pauses while the channel is not writable and resumes once it drained, which
+ * happens on the execution stage, if enabled, and on the i/o thread otherwise.
+ * 
+ * <p>
+ *   Without this stage, chunked responses reach the configured encoders as they are.
+ *   Streaming can not be combined with {@link NettyServiceConfig#PIPELINING}, because
+ *   writability does not drop while the {@link PipeliningHandler} holds back a response,
+ *   which would pull the whole stream into memory, and chunks pulled after the request
+ *   completed would bypass the sequencing of pipelined responses.
+ * </p>
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+final class StreamingStage implements Initializable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StreamingStage.class);
+    
+    static final String NAME = "chunked-write-handler";
+    
+    private String name = "netty";
+    
+    private boolean enabled;
+    
+    private boolean pipelining;
+    
+    @Inject(optional = true)
+    void setName(@Named(NettyServiceConfig.NAME) String name) {
+        this.name = Preconditions.checkNotNull(name, "Name");
+    }
+    
+    @Inject(optional = true)
+    void setEnabled(@Named(NettyServiceConfig.STREAMING) boolean enabled) {
+        this.enabled = enabled;
+    }
+    
+    @Inject(optional = true)
+    void setPipelining(@Named(NettyServiceConfig.PIPELINING) boolean pipelining) {
+        this.pipelining = pipelining;
+    }
+    
+    @Override
+    public void initialize() throws LifecycleException {
+        if (!enabled) return;
+        Preconditions.checkState(!pipelining, "Streaming of %s can not be combined with pipelining", name);
+        LOG.info("Streaming chunked responses of {}", name);
+    }
+    
+    /**
+     * Installs this stage right in front of the {@link ProtocolHandler} of the given pipeline.
+     * 
+     * @since 2.0
+     * @param pipeline the pipeline of a new channel
+     */
+    void install(ChannelPipeline pipeline) {
+        if (!enabled) return;
+        final ProtocolHandler protocolHandler = pipeline.get(ProtocolHandler.class);
+        if (protocolHandler == null) return;
+        // holds the pending chunks of a single channel
+        pipeline.addBefore(pipeline.getContext(protocolHandler).getName(), NAME, new ChunkedWriteHandler());
+    }
+    
+}
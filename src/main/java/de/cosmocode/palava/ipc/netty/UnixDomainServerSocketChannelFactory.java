@@ -0,0 +1,92 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+
+import org.jboss.netty.channel.ChannelException;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelSink;
+import org.jboss.netty.channel.ServerChannel;
+import org.jboss.netty.channel.ServerChannelFactory;
+import org.jboss.netty.util.internal.ExecutorUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.inject.Inject;
+
+import de.cosmocode.palava.core.lifecycle.Disposable;
+import de.cosmocode.palava.core.lifecycle.LifecycleException;
+
+/**
+ * {@link ServerChannelFactory} implementation which listens on unix domain sockets,
+ * using the unix domain socket support of Java 16 and later. Channels must be bound to
+ * addresses of the form {@code unix:/path/to/socket}, see {@link NettyServiceConfig#ADDRESSES}.
+ * Stale socket files are deleted before binding, socket files are deleted on unbind.
+ * 
+ * <p>
+ *   Every connection is served by its own {@link Worker} thread, like the oio transport.
+ * </p>
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+final class UnixDomainServerSocketChannelFactory implements ServerChannelFactory, Disposable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(UnixDomainServerSocketChannelFactory.class);
+    
+    private final ExecutorService boss;
+    
+    private final ExecutorService worker;
+    
+    private final ChannelSink sink;
+    
+    @Inject
+    UnixDomainServerSocketChannelFactory(
+        @Boss ExecutorService boss,
+        @Worker ExecutorService worker) {
+        
+        this.boss = Preconditions.checkNotNull(boss, "Boss");
+        this.worker = Preconditions.checkNotNull(worker, "Worker");
+        LOG.trace("Configuring {} with boss {} and worker {}", new Object[] {
+            this, boss, worker
+        });
+        this.sink = new BlockingPipelineSink(boss, worker);
+    }
+    
+    @Override
+    public ServerChannel newChannel(ChannelPipeline pipeline) {
+        try {
+            return new BlockingServerChannel(this, pipeline, sink, UnixDomainSockets.openServer(), false);
+        } catch (IOException e) {
+            throw new ChannelException("Failed to open a unix domain server socket", e);
+        }
+    }
+    
+    @Override
+    public void releaseExternalResources() {
+        ExecutorUtil.terminate(boss, worker);
+    }
+    
+    @Override
+    public void dispose() throws LifecycleException {
+        releaseExternalResources();
+    }
+    
+}
@@ -0,0 +1,44 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import org.jboss.netty.channel.ServerChannelFactory;
+
+import com.google.inject.Binder;
+import com.google.inject.Module;
+import com.google.inject.Singleton;
+
+/**
+ * Binds {@link ServerChannelFactory} to {@link UnixDomainServerSocketChannelFactory}.
+ * The address of the service has to be a {@code java.net.UnixDomainSocketAddress} then.
+ * {@link NettyServiceConfig#ADDRESS} is converted by the core, which only produces inet socket
+ * addresses, so such an address has to be bound in code instead of being configured.
+ * Services listening on tcp can serve unix domain sockets in addition by listing
+ * {@code unix:/path/to/socket} in {@link NettyServiceConfig#ADDRESSES}, without this module.
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+public final class UnixDomainServerSocketChannelFactoryModule implements Module {
+
+    @Override
+    public void configure(Binder binder) {
+        binder.bind(ServerChannelFactory.class).to(
+            UnixDomainServerSocketChannelFactory.class).in(Singleton.class);
+    }
+
+}
@@ -0,0 +1,179 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Static utility class for unix domain sockets. The required classes and methods are
+ * looked up reflectively, because they are only available on Java 16 and later.
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+final class UnixDomainSockets {
+
+    private static final Logger LOG = LoggerFactory.getLogger(UnixDomainSockets.class);
+    
+    private static final String ADDRESS = "java.net.UnixDomainSocketAddress";
+    
+    private UnixDomainSockets() {
+        
+    }
+    
+    /**
+     * Checks whether the current runtime supports unix domain sockets.
+     * 
+     * @since 2.0
+     * @return true if unix domain sockets are available, false otherwise
+     */
+    static boolean isAvailable() {
+        try {
+            Class.forName(ADDRESS);
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+    
+    /**
+     * Checks whether the given address is a unix domain socket address.
+     * 
+     * @since 2.0
+     * @param address the address
+     * @return true if address is a unix domain socket address, false otherwise
+     */
+    static boolean isUnixDomainAddress(SocketAddress address) {
+        return address != null && ADDRESS.equals(address.getClass().getName());
+    }
+    
+    /**
+     * Creates a unix domain socket address for the given path.
+     * 
+     * @since 2.0
+     * @param path the path of the socket file
+     * @return a new address
+     * @throws NullPointerException if path is null
+     * @throws IllegalArgumentException if path is invalid or unix domain sockets are not supported
+     */
+    static SocketAddress newAddress(String path) {
+        Preconditions.checkNotNull(path, "Path");
+        try {
+            return SocketAddress.class.cast(Class.forName(ADDRESS).getMethod("of", String.class).invoke(null, path));
+        } catch (InvocationTargetException e) {
+            throw new IllegalArgumentException("Invalid unix domain socket path " + path, e.getCause());
+        } catch (ClassNotFoundException e) {
+            throw new IllegalArgumentException("Unix domain sockets are not supported by this runtime", e);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException("Unix domain sockets are not supported by this runtime", e);
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("Unix domain sockets are not supported by this runtime", e);
+        }
+    }
+    
+    /**
+     * Provides the socket file of the given unix domain socket address.
+     * 
+     * @since 2.0
+     * @param address the address
+     * @return the socket file
+     * @throws IllegalArgumentException if address is not a unix domain socket address
+     */
+    static File fileOf(SocketAddress address) {
+        Preconditions.checkArgument(isUnixDomainAddress(address), "%s is not a unix domain socket address", address);
+        try {
+            return Path.class.cast(address.getClass().getMethod("getPath").invoke(address)).toFile();
+        } catch (InvocationTargetException e) {
+            throw new IllegalArgumentException("Unable to get path of " + address, e.getCause());
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException("Unable to get path of " + address, e);
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("Unable to get path of " + address, e);
+        }
+    }
+    
+    /**
+     * Opens a blocking unix domain server socket channel.
+     * 
+     * @since 2.0
+     * @return a new unbound server socket channel
+     * @throws IOException if opening failed or unix domain sockets are not supported
+     */
+    static ServerSocketChannel openServer() throws IOException {
+        return ServerSocketChannel.class.cast(open(ServerSocketChannel.class));
+    }
+    
+    private static Object open(Class<?> type) throws IOException {
+        try {
+            final ProtocolFamily family = Enum.valueOf(StandardProtocolFamily.class, "UNIX");
+            return type.getMethod("open", ProtocolFamily.class).invoke(null, family);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof IOException) {
+                throw IOException.class.cast(e.getCause());
+            } else {
+                throw new IOException("Unable to open unix domain socket", e.getCause());
+            }
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Unix domain sockets are not supported by this runtime", e);
+        } catch (NoSuchMethodException e) {
+            throw new IOException("Unix domain sockets are not supported by this runtime", e);
+        } catch (IllegalAccessException e) {
+            throw new IOException("Unix domain sockets are not supported by this runtime", e);
+        }
+    }
+    
+    /**
+     * Deletes the socket file of the given address if it is left over from a process
+     * which did not shut down properly, i.e. if nobody accepts connections on it.
+     * 
+     * @since 2.0
+     * @param address the address
+     * @throws IOException if probing the socket file failed
+     * @throws IllegalArgumentException if address is not a unix domain socket address
+     */
+    static void deleteIfStale(SocketAddress address) throws IOException {
+        final File file = fileOf(address);
+        if (!file.exists()) return;
+        
+        final SocketChannel probe = SocketChannel.class.cast(open(SocketChannel.class));
+        try {
+            probe.connect(address);
+            LOG.debug("{} is in use", file);
+        } catch (IOException e) {
+            LOG.info("Deleting stale unix domain socket {}", file);
+            if (!file.delete()) {
+                LOG.warn("Unable to delete stale unix domain socket {}", file);
+            }
+        } finally {
+            probe.close();
+        }
+    }
+    
+}
@@ -0,0 +1,110 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+
+import org.jboss.netty.channel.ChannelException;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelSink;
+import org.jboss.netty.channel.ServerChannel;
+import org.jboss.netty.channel.ServerChannelFactory;
+import org.jboss.netty.util.internal.ExecutorUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+
+import de.cosmocode.palava.core.lifecycle.Disposable;
+import de.cosmocode.palava.core.lifecycle.Initializable;
+import de.cosmocode.palava.core.lifecycle.LifecycleException;
+
+/**
+ * Blocking tcp {@link ServerChannelFactory} implementation which serves every connection
+ * on its own virtual thread. Connections are accepted by the {@link Boss} executor.
+ * 
+ * <p>
+ *   Connections are served by a {@link BlockingPipelineSink} instead of netty's oio transport.
+ *   The oio worker interrupts its reader to apply interest ops changes, and interrupting a
+ *   virtual thread which is blocked in a socket read closes the socket on Java 21 and later.
+ *   The blocking sink suspends and resumes reads without interrupting the reader.
+ * </p>
+ * 
+ * <p>
+ *   Reads block outside of any monitor and therefore release their carrier thread.
+ *   Writes and suspended reads hold a monitor, which pins the carrier thread on runtimes
+ *   before Java 24 while the socket's send buffer is full or reading is suspended.
+ *   Falls back to platform threads if virtual threads are not available.
+ * </p>
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+final class VirtualOioServerSocketChannelFactory implements ServerChannelFactory, Initializable, Disposable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualOioServerSocketChannelFactory.class);
+    
+    private final ExecutorService boss;
+    
+    private String name = "netty";
+    
+    private ExecutorService worker;
+    
+    private ChannelSink sink;
+
+    @Inject
+    VirtualOioServerSocketChannelFactory(@Boss ExecutorService boss) {
+        this.boss = Preconditions.checkNotNull(boss, "Boss");
+    }
+    
+    @Inject(optional = true)
+    void setName(@Named(NettyServiceConfig.NAME) String name) {
+        this.name = Preconditions.checkNotNull(name, "Name");
+    }
+    
+    @Override
+    public void initialize() throws LifecycleException {
+        this.worker = VirtualThreads.newThreadPerTaskExecutor(name + "-worker");
+        LOG.trace("Configuring {} with boss {} and worker {}", new Object[] {
+            this, boss, worker
+        });
+        this.sink = new BlockingPipelineSink(boss, worker);
+    }
+    
+    @Override
+    public ServerChannel newChannel(ChannelPipeline pipeline) {
+        try {
+            return new BlockingServerChannel(this, pipeline, sink, java.nio.channels.ServerSocketChannel.open(), false);
+        } catch (IOException e) {
+            throw new ChannelException("Failed to open a server socket", e);
+        }
+    }
+
+    @Override
+    public void releaseExternalResources() {
+        ExecutorUtil.terminate(boss, worker);
+    }
+    
+    @Override
+    public void dispose() throws LifecycleException {
+        releaseExternalResources();
+    }
+
+}
@@ -0,0 +1,147 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Static utility class for virtual threads. Virtual threads are looked up
+ * reflectively, because they are only available on recent runtimes.
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+final class VirtualThreads {
+
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualThreads.class);
+    
+    private static final boolean AVAILABLE = probe();
+    
+    private static final long KEEP_ALIVE_TIME = 60;
+    
+    private VirtualThreads() {
+        
+    }
+    
+    /**
+     * Checks whether the current runtime supports virtual threads. Virtual threads
+     * of runtimes which only provide them as a disabled preview feature are not available.
+     * 
+     * @since 2.0
+     * @return true if virtual threads are available, false otherwise
+     */
+    static boolean isAvailable() {
+        return AVAILABLE;
+    }
+    
+    private static boolean probe() {
+        try {
+            Thread.class.getMethod("ofVirtual").invoke(null);
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        } catch (IllegalAccessException e) {
+            return false;
+        } catch (InvocationTargetException e) {
+            // preview feature which is not enabled, e.g. on Java 19 and 20
+            LOG.debug("Virtual threads are not enabled", e.getCause());
+            return false;
+        }
+    }
+    
+    /**
+     * Creates a new {@link ExecutorService} which starts a new virtual thread for every task.
+     * Falls back to an unbounded cached thread pool if virtual threads are not available.
+     * 
+     * @since 2.0
+     * @param name the prefix for the names of the created threads
+     * @return a new executor service
+     * @throws NullPointerException if name is null
+     */
+    static ExecutorService newThreadPerTaskExecutor(String name) {
+        Preconditions.checkNotNull(name, "Name");
+        if (isAvailable()) {
+            LOG.debug("Using virtual threads for {}", name);
+            return newVirtualThreadPerTaskExecutor(name);
+        } else {
+            LOG.warn("Virtual threads are not supported by this runtime, using platform threads for {}", name);
+            return Executors.newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat(name + "-%d").build());
+        }
+    }
+    
+    /**
+     * Creates a new {@link ExecutorService} which starts a new virtual thread for every task.
+     * Falls back to a pool of at most the given number of platform threads if virtual threads
+     * are not available. Surplus tasks are queued instead of occupying a platform thread each.
+     * 
+     * @since 2.0
+     * @param name the prefix for the names of the created threads
+     * @param maxThreads the maximum number of platform threads in case of the fallback
+     * @return a new executor service
+     * @throws NullPointerException if name is null
+     * @throws IllegalArgumentException if maxThreads is not positive
+     */
+    static ExecutorService newThreadPerTaskExecutor(String name, int maxThreads) {
+        Preconditions.checkNotNull(name, "Name");
+        Preconditions.checkArgument(maxThreads > 0, "MaxThreads must be positive, but was %s", maxThreads);
+        if (isAvailable()) {
+            LOG.debug("Using virtual threads for {}", name);
+            return newVirtualThreadPerTaskExecutor(name);
+        } else {
+            LOG.warn("Virtual threads are not supported by this runtime, using at most {} platform thread(s) for {}",
+                maxThreads, name);
+            final ThreadPoolExecutor executor = new ThreadPoolExecutor(maxThreads, maxThreads,
+                KEEP_ALIVE_TIME, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactoryBuilder().setNameFormat(name + "-%d").build());
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
+        }
+    }
+    
+    private static ExecutorService newVirtualThreadPerTaskExecutor(String name) {
+        try {
+            final Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            final Class<?> type = Class.forName("java.lang.Thread$Builder");
+            type.getMethod("name", String.class, long.class).invoke(builder, name + "-", 0L);
+            final ThreadFactory factory = (ThreadFactory) type.getMethod("factory").invoke(builder);
+            final Method method = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return (ExecutorService) method.invoke(null, factory);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException(e);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+    
+}
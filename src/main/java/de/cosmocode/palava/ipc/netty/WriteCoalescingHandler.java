@@ -0,0 +1,281 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelEvent;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelHandler;
+import org.jboss.netty.channel.ChannelHandler.Sharable;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.DownstreamMessageEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelHandler;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.Timer;
+import org.jboss.netty.util.TimerTask;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+/**
+ * A {@link ChannelHandler} which combines the {@link ChannelBuffer}s written during
+ * one read cycle, or within a small time and byte window, into a single composite
+ * write. The transport copies the composite buffer into its send buffer and writes
+ * it at once, so a batch costs one write system call instead of one per response.
+ * 
+ * <p>
+ *   This handler has to be the first handler in the pipeline, to see the raw reads
+ *   and the encoded writes.
+ * </p>
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+@Sharable
+@ThreadSafe
+final class WriteCoalescingHandler extends SimpleChannelHandler {
+
+    private final Timer timer;
+    
+    private final long delay;
+    
+    private final TimeUnit delayUnit;
+    
+    private final int maxBytes;
+    
+    private final AtomicLong batches = new AtomicLong();
+    
+    private final AtomicLong writes = new AtomicLong();
+    
+    WriteCoalescingHandler(Timer timer, long delay, TimeUnit delayUnit, int maxBytes) {
+        this.timer = Preconditions.checkNotNull(timer, "Timer");
+        this.delay = delay;
+        this.delayUnit = Preconditions.checkNotNull(delayUnit, "DelayUnit");
+        this.maxBytes = maxBytes;
+    }
+    
+    @Override
+    public void channelOpen(ChannelHandlerContext context, ChannelStateEvent event) throws Exception {
+        context.setAttachment(new Batch(context));
+        super.channelOpen(context, event);
+    }
+    
+    @Override
+    public void messageReceived(ChannelHandlerContext context, MessageEvent event) throws Exception {
+        final Batch batch = (Batch) context.getAttachment();
+        if (batch == null) {
+            super.messageReceived(context, event);
+        } else {
+            batch.setReading(true);
+            try {
+                super.messageReceived(context, event);
+            } finally {
+                batch.setReading(false);
+                batch.flush();
+            }
+        }
+    }
+    
+    @Override
+    public void handleDownstream(ChannelHandlerContext context, ChannelEvent event) throws Exception {
+        final Batch batch = (Batch) context.getAttachment();
+        if (batch == null) {
+            context.sendDownstream(event);
+        } else if (ChannelBuffering.isBuffer(event)) {
+            batch.add(MessageEvent.class.cast(event));
+        } else {
+            batch.flushAndSend(event);
+        }
+    }
+    
+    long getBatches() {
+        return batches.get();
+    }
+    
+    long getWrites() {
+        return writes.get();
+    }
+    
+    /**
+     * Per channel collection of pending writes.
+     *
+     * @since 2.0
+     * @author Willi Schoenborn
+     */
+    private final class Batch implements TimerTask {
+        
+        private final ChannelHandlerContext context;
+        
+        @GuardedBy("this")
+        private final List<MessageEvent> events = Lists.newArrayList();
+        
+        @GuardedBy("this")
+        private int bytes;
+        
+        @GuardedBy("this")
+        private boolean reading;
+        
+        @GuardedBy("this")
+        private Timeout timeout;
+        
+        @GuardedBy("this")
+        private final Queue<ChannelEvent> outbound = new LinkedList<ChannelEvent>();
+        
+        @GuardedBy("this")
+        private boolean sending;
+        
+        private Batch(ChannelHandlerContext context) {
+            this.context = context;
+        }
+        
+        private synchronized void setReading(boolean reading) {
+            this.reading = reading;
+        }
+        
+        private void add(MessageEvent event) {
+            synchronized (this) {
+                events.add(event);
+                bytes += ChannelBuffer.class.cast(event.getMessage()).readableBytes();
+                if (bytes >= maxBytes) {
+                    prepare();
+                } else if (!reading && timeout == null) {
+                    timeout = timer.newTimeout(this, delay, delayUnit);
+                }
+            }
+            send();
+        }
+        
+        @Override
+        public void run(Timeout expired) throws Exception {
+            flush();
+        }
+        
+        private void flushAndSend(ChannelEvent event) {
+            synchronized (this) {
+                prepare();
+                outbound.add(event);
+            }
+            send();
+        }
+        
+        private void flush() {
+            synchronized (this) {
+                prepare();
+            }
+            send();
+        }
+        
+        @GuardedBy("this")
+        private void prepare() {
+            if (timeout != null) {
+                timeout.cancel();
+                timeout = null;
+            }
+            
+            if (events.isEmpty()) return;
+            
+            // writes issued by future listeners during sendDownstream must survive this flush
+            final MessageEvent[] pending = events.toArray(new MessageEvent[events.size()]);
+            events.clear();
+            bytes = 0;
+            
+            batches.incrementAndGet();
+            writes.addAndGet(pending.length);
+            
+            if (pending.length == 1) {
+                outbound.add(pending[0]);
+            } else {
+                final Channel channel = context.getChannel();
+                final ChannelBuffer[] buffers = new ChannelBuffer[pending.length];
+                final ChannelFuture[] futures = new ChannelFuture[pending.length];
+                for (int i = 0; i < pending.length; i++) {
+                    buffers[i] = ChannelBuffer.class.cast(pending[i].getMessage());
+                    futures[i] = pending[i].getFuture();
+                }
+                
+                final ChannelFuture future = Channels.future(channel);
+                future.addListener(new ChannelFutureListener() {
+                    
+                    @Override
+                    public void operationComplete(ChannelFuture completed) throws Exception {
+                        for (ChannelFuture original : futures) {
+                            if (completed.isSuccess()) {
+                                original.setSuccess();
+                            } else {
+                                original.setFailure(completed.getCause());
+                            }
+                        }
+                    }
+                    
+                });
+                
+                final Object message = ChannelBuffers.wrappedBuffer(buffers);
+                outbound.add(new DownstreamMessageEvent(channel, future, message, pending[0].getRemoteAddress()));
+            }
+        }
+        
+        /**
+         * Sends all prepared events in order. Events are sent without holding the monitor
+         * of this batch, because write futures may complete inline and notify listeners
+         * which acquire locks of preceding handlers. Only one thread sends at a time, events
+         * prepared by others in the meantime are sent by that thread.
+         */
+        private void send() {
+            synchronized (this) {
+                if (sending) return;
+                sending = true;
+            }
+            ChannelEvent event = null;
+            try {
+                while ((event = next()) != null) {
+                    context.sendDownstream(event);
+                }
+            } finally {
+                if (event != null) {
+                    synchronized (this) {
+                        sending = false;
+                    }
+                }
+            }
+        }
+        
+        private synchronized ChannelEvent next() {
+            final ChannelEvent event = outbound.poll();
+            if (event == null) {
+                sending = false;
+            }
+            return event;
+        }
+        
+    }
+    
+}
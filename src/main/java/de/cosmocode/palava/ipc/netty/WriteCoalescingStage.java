@@ -0,0 +1,132 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.util.HashedWheelTimer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+
+import de.cosmocode.palava.core.lifecycle.Disposable;
+import de.cosmocode.palava.core.lifecycle.Initializable;
+import de.cosmocode.palava.core.lifecycle.LifecycleException;
+
+/**
+ * Configurable stage which coalesces response writes using a {@link WriteCoalescingHandler}.
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+final class WriteCoalescingStage implements Initializable, Disposable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WriteCoalescingStage.class);
+    
+    static final String NAME = "write-coalescing-handler";
+    
+    private String name = "netty";
+    
+    private boolean enabled;
+    
+    private long delay = 1;
+    
+    private TimeUnit delayUnit = TimeUnit.MILLISECONDS;
+    
+    private int maxBytes = 64 * 1024;
+    
+    private HashedWheelTimer timer;
+    
+    private WriteCoalescingHandler handler;
+    
+    @Inject(optional = true)
+    void setName(@Named(NettyServiceConfig.NAME) String name) {
+        this.name = Preconditions.checkNotNull(name, "Name");
+    }
+    
+    @Inject(optional = true)
+    void setEnabled(@Named(NettyServiceConfig.COALESCE_WRITES) boolean enabled) {
+        this.enabled = enabled;
+    }
+    
+    @Inject(optional = true)
+    void setDelay(@Named(NettyServiceConfig.COALESCE_DELAY) long delay) {
+        this.delay = delay;
+    }
+    
+    @Inject(optional = true)
+    void setDelayUnit(@Named(NettyServiceConfig.COALESCE_DELAY_UNIT) TimeUnit delayUnit) {
+        this.delayUnit = Preconditions.checkNotNull(delayUnit, "DelayUnit");
+    }
+    
+    @Inject(optional = true)
+    void setMaxBytes(@Named(NettyServiceConfig.COALESCE_MAX_BYTES) int maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+    
+    @Override
+    public void initialize() throws LifecycleException {
+        if (!enabled) return;
+        Preconditions.checkState(delay > 0, "Delay must be positive, but was %s", delay);
+        Preconditions.checkState(maxBytes > 0, "Max bytes must be positive, but was %s", maxBytes);
+        LOG.info("Coalescing writes of {} for up to {} {} or {} bytes", new Object[] {
+            name, delay, delayUnit.name().toLowerCase(), maxBytes
+        });
+        timer = new HashedWheelTimer(new ThreadFactoryBuilder().setNameFormat(name + "-coalescing-%d").build(),
+            delay, delayUnit);
+        handler = new WriteCoalescingHandler(timer, delay, delayUnit, maxBytes);
+    }
+    
+    /**
+     * Installs this stage as the first handler of the given pipeline.
+     * 
+     * @since 2.0
+     * @param pipeline the pipeline of a new channel
+     */
+    void install(ChannelPipeline pipeline) {
+        if (handler == null) return;
+        pipeline.addFirst(NAME, handler);
+    }
+    
+    /**
+     * Retrieves the average number of responses per write.
+     * 
+     * @since 2.0
+     * @return the average batch size or 0 if nothing has been written yet
+     */
+    double getAverageBatchSize() {
+        if (handler == null) return 0;
+        final long batches = handler.getBatches();
+        return batches == 0 ? 0 : (double) handler.getWrites() / batches;
+    }
+    
+    long getBatches() {
+        return handler == null ? 0 : handler.getBatches();
+    }
+    
+    @Override
+    public void dispose() throws LifecycleException {
+        if (timer == null) return;
+        timer.stop();
+    }
+    
+}
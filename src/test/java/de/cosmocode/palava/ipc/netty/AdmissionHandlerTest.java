@@ -0,0 +1,161 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests {@link AdmissionHandler}.
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+public final class AdmissionHandlerTest {
+
+    private Connection open(AdmissionHandler handler, String host) {
+        final Connection connection = new Connection(host);
+        connection.pipeline.addFirst(AdmissionStage.NAME, handler);
+        Channels.fireChannelOpen(connection.channel);
+        return connection;
+    }
+    
+    /**
+     * Tests that the total number of connections is limited and released on close.
+     */
+    @Test
+    public void maxConnections() {
+        final AdmissionHandler unit = new AdmissionHandler(2, 0, 0, 0);
+        final Connection first = open(unit, "10.0.0.1");
+        final Connection second = open(unit, "10.0.0.2");
+        final Connection third = open(unit, "10.0.0.3");
+        
+        Assert.assertTrue(first.isAdmitted());
+        Assert.assertTrue(second.isAdmitted());
+        Assert.assertFalse(third.isAdmitted());
+        Assert.assertTrue(third.closed);
+        Assert.assertEquals(1, unit.getRejected());
+        
+        first.close();
+        Assert.assertTrue(open(unit, "10.0.0.3").isAdmitted());
+        Assert.assertFalse(open(unit, "10.0.0.4").isAdmitted());
+        Assert.assertEquals(2, unit.getRejected());
+    }
+    
+    /**
+     * Tests that the number of connections per remote address is limited and released on close.
+     */
+    @Test
+    public void maxConnectionsPerAddress() {
+        final AdmissionHandler unit = new AdmissionHandler(0, 1, 0, 0);
+        final Connection first = open(unit, "10.0.0.1");
+        
+        Assert.assertTrue(first.isAdmitted());
+        Assert.assertFalse(open(unit, "10.0.0.1").isAdmitted());
+        Assert.assertTrue(open(unit, "10.0.0.2").isAdmitted());
+        Assert.assertEquals(1, unit.getRejected());
+        
+        first.close();
+        Assert.assertTrue(open(unit, "10.0.0.1").isAdmitted());
+    }
+    
+    /**
+     * Tests that the token bucket admits a burst and refills over time.
+     * 
+     * @throws InterruptedException should not happen
+     */
+    @Test
+    public void acceptRate() throws InterruptedException {
+        final AdmissionHandler unit = new AdmissionHandler(0, 0, 100, 2);
+        
+        Assert.assertTrue(open(unit, "10.0.0.1").isAdmitted());
+        Assert.assertTrue(open(unit, "10.0.0.2").isAdmitted());
+        Assert.assertFalse(open(unit, "10.0.0.3").isAdmitted());
+        Assert.assertEquals(1, unit.getRejected());
+        
+        Thread.sleep(50);
+        Assert.assertTrue(open(unit, "10.0.0.3").isAdmitted());
+    }
+    
+    /**
+     * A fake connection whose pipeline records whether the open event was forwarded.
+     *
+     * @since 2.0
+     * @author Willi Schoenborn
+     */
+    private static final class Connection {
+        
+        private final ChannelPipeline pipeline = Channels.pipeline();
+        
+        private final Channel channel;
+        
+        private boolean opened;
+        
+        private boolean closed;
+        
+        private Connection(String host) {
+            final InetSocketAddress address = new InetSocketAddress(host, 1234);
+            this.channel = Proxies.of(Channel.class, new InvocationHandler() {
+                
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    if ("getPipeline".equals(method.getName())) {
+                        return pipeline;
+                    } else if ("getRemoteAddress".equals(method.getName())) {
+                        return address;
+                    } else if ("getParent".equals(method.getName())) {
+                        return null;
+                    } else if ("close".equals(method.getName())) {
+                        closed = true;
+                        return Channels.succeededFuture(Channel.class.cast(proxy));
+                    } else {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                }
+                
+            });
+            pipeline.addLast("recorder", new SimpleChannelUpstreamHandler() {
+                
+                @Override
+                public void channelOpen(ChannelHandlerContext context, ChannelStateEvent event) {
+                    opened = true;
+                }
+                
+            });
+        }
+        
+        private boolean isAdmitted() {
+            return opened && !closed;
+        }
+        
+        private void close() {
+            Channels.fireChannelClosed(channel);
+        }
+        
+    }
+    
+}
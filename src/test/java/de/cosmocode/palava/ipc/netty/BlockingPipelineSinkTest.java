@@ -0,0 +1,126 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ * Tests {@link BlockingPipelineSink} using a unix domain socket.
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+public final class BlockingPipelineSinkTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    
+    private final BlockingQueue<ChannelBuffer> received = new LinkedBlockingQueue<ChannelBuffer>();
+    
+    private ServerBootstrap bootstrap;
+    
+    private Channel server;
+    
+    private File file;
+    
+    /**
+     * Closes the server and deletes its socket file.
+     */
+    @After
+    public void close() {
+        if (server != null) {
+            server.close().awaitUninterruptibly();
+        }
+        if (bootstrap != null) {
+            bootstrap.releaseExternalResources();
+        }
+        executor.shutdownNow();
+        if (file != null) {
+            file.delete();
+        }
+    }
+    
+    private SocketAddress bind() throws IOException {
+        file = File.createTempFile("netty", ".sock");
+        file.delete();
+        final SocketAddress address = UnixDomainSockets.newAddress(file.getPath());
+        bootstrap = new ServerBootstrap(new UnixDomainServerSocketChannelFactory(executor, executor));
+        bootstrap.getPipeline().addLast("echo", new SimpleChannelUpstreamHandler() {
+            
+            @Override
+            public void messageReceived(ChannelHandlerContext context, MessageEvent event) {
+                final ChannelBuffer buffer = (ChannelBuffer) event.getMessage();
+                received.add(buffer);
+                event.getChannel().write(buffer);
+            }
+            
+        });
+        server = bootstrap.bind(address);
+        return address;
+    }
+    
+    private String roundTrip(SocketChannel client, String message) throws IOException {
+        final byte[] bytes = message.getBytes(UTF_8);
+        client.write(ByteBuffer.wrap(bytes));
+        final ByteBuffer echo = ByteBuffer.allocate(bytes.length);
+        while (echo.hasRemaining()) {
+            if (client.read(echo) < 0) throw new IOException("Unexpected end of stream");
+        }
+        return new String(echo.array(), UTF_8);
+    }
+    
+    /**
+     * Tests a round trip and that received buffers stay intact after subsequent reads.
+     * 
+     * @throws Exception should not happen
+     */
+    @Test
+    public void roundTrip() throws Exception {
+        Assume.assumeTrue(UnixDomainSockets.isAvailable());
+        final SocketChannel client = SocketChannel.open(bind());
+        try {
+            Assert.assertEquals("first", roundTrip(client, "first"));
+            Assert.assertEquals("second", roundTrip(client, "second"));
+        } finally {
+            client.close();
+        }
+        Assert.assertEquals("first", received.take().toString(UTF_8));
+        Assert.assertEquals("second", received.take().toString(UTF_8));
+    }
+    
+}
@@ -0,0 +1,84 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferFactory;
+import org.jboss.netty.buffer.DirectChannelBufferFactory;
+import org.jboss.netty.buffer.HeapChannelBufferFactory;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests {@link BufferFactories}.
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+public final class BufferFactoriesTest {
+
+    /**
+     * Tests {@link BufferFactories#parse(String)} with all supported formats.
+     */
+    @Test
+    public void parse() {
+        Assert.assertSame(HeapChannelBufferFactory.getInstance(), BufferFactories.parse("heap"));
+        Assert.assertSame(DirectChannelBufferFactory.getInstance(), BufferFactories.parse(" direct "));
+        Assert.assertTrue(BufferFactories.parse("direct:65536").getBuffer(16).isDirect());
+        Assert.assertTrue(BufferFactories.parse(HeapChannelBufferFactory.class.getName())
+            instanceof HeapChannelBufferFactory);
+    }
+    
+    /**
+     * Tests {@link BufferFactories#parse(String)} with an invalid capacity.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidCapacity() {
+        BufferFactories.parse("direct:0");
+    }
+    
+    /**
+     * Tests {@link BufferFactories#parse(String)} with a class which is no {@link ChannelBufferFactory}.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void noBufferFactory() {
+        BufferFactories.parse(String.class.getName());
+    }
+    
+    /**
+     * Tests {@link BufferFactories#parse(String)} with an unknown class.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void unknown() {
+        BufferFactories.parse("pooled");
+    }
+    
+    /**
+     * Tests {@link CountingChannelBufferFactory}.
+     */
+    @Test
+    public void counting() {
+        final CountingChannelBufferFactory factory = new CountingChannelBufferFactory(BufferFactories.parse("direct"));
+        final ChannelBuffer buffer = factory.getBuffer(new byte[] {1, 2, 3}, 0, 3);
+        factory.getBuffer(0);
+        Assert.assertEquals(3, buffer.readableBytes());
+        Assert.assertEquals(1, factory.getBuffers());
+        Assert.assertEquals(3, factory.getBytes());
+        Assert.assertEquals(3, factory.getDirectBytes());
+    }
+    
+}
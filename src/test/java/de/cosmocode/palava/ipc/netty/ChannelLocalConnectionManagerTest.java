@@ -0,0 +1,139 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.net.SocketAddress;
+import java.util.List;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.SimpleChannelHandler;
+import org.jboss.netty.channel.local.LocalAddress;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+import de.cosmocode.palava.ipc.IpcConnection;
+import de.cosmocode.palava.ipc.IpcConnectionCreateEvent;
+import de.cosmocode.palava.ipc.IpcConnectionDestroyEvent;
+import de.cosmocode.palava.ipc.protocol.DetachedConnection;
+
+/**
+ * Tests {@link ChannelLocalConnectionManager}.
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+public final class ChannelLocalConnectionManagerTest {
+
+    private static final SocketAddress ADDRESS = new LocalAddress("connection-manager-test");
+    
+    private final List<IpcConnection> created = Lists.newArrayList();
+    
+    private final List<IpcConnection> destroyed = Lists.newArrayList();
+    
+    private final ChannelLocalConnectionManager unit = new ChannelLocalConnectionManager(
+        Proxies.of(IpcConnectionCreateEvent.class, new InvocationHandler() {
+            
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                created.add((IpcConnection) args[0]);
+                return null;
+            }
+            
+        }),
+        Proxies.of(IpcConnectionDestroyEvent.class, new InvocationHandler() {
+            
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                destroyed.add((IpcConnection) args[0]);
+                return null;
+            }
+            
+        }));
+    
+    private Channel newChannel(final int id, int handlers) {
+        final ChannelPipeline pipeline = Channels.pipeline();
+        for (int i = 0; i < handlers; i++) {
+            pipeline.addLast("handler-" + i, new SimpleChannelHandler());
+        }
+        pipeline.addLast("connection-manager", unit);
+        return Proxies.of(Channel.class, new InvocationHandler() {
+            
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if ("getPipeline".equals(method.getName())) {
+                    return pipeline;
+                } else if ("getId".equals(method.getName())) {
+                    return id;
+                } else if ("getParent".equals(method.getName())) {
+                    return null;
+                } else {
+                    throw new UnsupportedOperationException(method.getName());
+                }
+            }
+            
+        });
+    }
+    
+    /**
+     * Tests that connections are created on connect, found by their channel and
+     * destroyed on close.
+     */
+    @Test
+    public void lifecycle() {
+        final Channel first = newChannel(1, 0);
+        final Channel second = newChannel(2, 8);
+        Channels.fireChannelConnected(first, ADDRESS);
+        Channels.fireChannelConnected(second, ADDRESS);
+        Assert.assertEquals(2, created.size());
+        
+        final DetachedConnection connection = unit.get(first);
+        Assert.assertSame(created.get(0), connection);
+        Assert.assertEquals("1", connection.getConnectionId());
+        Assert.assertSame(created.get(1), unit.get(second));
+        
+        Channels.fireChannelClosed(first);
+        Assert.assertEquals(1, destroyed.size());
+        Assert.assertSame(connection, destroyed.get(0));
+        Assert.assertSame(created.get(1), unit.get(second));
+    }
+    
+    /**
+     * Tests {@link ChannelLocalConnectionManager#get(Channel)} after the channel has been closed.
+     */
+    @Test(expected = IllegalStateException.class)
+    public void closed() {
+        final Channel channel = newChannel(1, 0);
+        Channels.fireChannelConnected(channel, ADDRESS);
+        Channels.fireChannelClosed(channel);
+        unit.get(channel);
+    }
+    
+    /**
+     * Tests {@link ChannelLocalConnectionManager#get(Channel)} with a channel which never connected.
+     */
+    @Test(expected = IllegalStateException.class)
+    public void unknown() {
+        unit.get(newChannel(1, 0));
+    }
+    
+}
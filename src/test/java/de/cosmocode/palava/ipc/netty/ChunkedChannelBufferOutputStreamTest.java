@@ -0,0 +1,84 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.HeapChannelBufferFactory;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests {@link ChunkedChannelBufferOutputStream}.
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+public final class ChunkedChannelBufferOutputStreamTest {
+
+    private ChunkedChannelBufferOutputStream newStream() {
+        return new ChunkedChannelBufferOutputStream(HeapChannelBufferFactory.getInstance(), 4);
+    }
+    
+    /**
+     * Tests writes spanning multiple chunks.
+     */
+    @Test
+    public void write() {
+        final ChunkedChannelBufferOutputStream stream = newStream();
+        stream.write(1);
+        stream.write(new byte[] {2, 3, 4, 5, 6}, 0, 5);
+        stream.write(new byte[] {0, 7, 8, 9, 10, 11, 12, 13, 14, 15}, 1, 9);
+        Assert.assertEquals(15, stream.size());
+        
+        final ChannelBuffer buffer = stream.buffer();
+        Assert.assertEquals(15, buffer.readableBytes());
+        for (int i = 1; i <= 15; i++) {
+            Assert.assertEquals(i, buffer.readByte());
+        }
+    }
+    
+    /**
+     * Tests that bytes written after {@link ChunkedChannelBufferOutputStream#buffer()}
+     * do not show up in the returned buffer.
+     */
+    @Test
+    public void snapshot() {
+        final ChunkedChannelBufferOutputStream stream = newStream();
+        stream.write(new byte[] {1, 2}, 0, 2);
+        final ChannelBuffer buffer = stream.buffer();
+        stream.write(3);
+        Assert.assertEquals(2, buffer.readableBytes());
+        Assert.assertEquals(3, stream.buffer().readableBytes());
+    }
+    
+    /**
+     * Tests {@link ChunkedChannelBufferOutputStream#buffer()} without any writes.
+     */
+    @Test
+    public void empty() {
+        Assert.assertEquals(0, newStream().buffer().readableBytes());
+    }
+    
+    /**
+     * Tests {@link ChunkedChannelBufferOutputStream#write(byte[], int, int)} with an invalid range.
+     */
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void invalidRange() {
+        newStream().write(new byte[2], 1, 2);
+    }
+    
+}
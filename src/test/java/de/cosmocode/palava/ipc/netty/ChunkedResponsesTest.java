@@ -0,0 +1,98 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.cosmocode.palava.ipc.netty;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import org.jboss.netty.handler.codec.embedder.EncoderEmbedder;
+import org.jboss.netty.handler.stream.ChunkedWriteHandler;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests {@link ChunkedResponses}.
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+public final class ChunkedResponsesTest {
+
+    /**
+     * Tests that every element is written as an individual chunk.
+     */
+    @Test
+    public void chunks() {
+        final EncoderEmbedder<Object> embedder = new EncoderEmbedder<Object>(new ChunkedWriteHandler());
+        embedder.offer(ChunkedResponses.of(Arrays.asList("a", "b", "c")));
+        embedder.finish();
+        Assert.assertArrayEquals(new Object[] {"a", "b", "c"}, embedder.pollAll());
+    }
+    
+    /**
+     * Tests that closeable iterators are closed after the last chunk.
+     */
+    @Test
+    public void close() {
+        final ClosingIterator iterator = new ClosingIterator(Arrays.asList("a", "b").iterator());
+        final EncoderEmbedder<Object> embedder = new EncoderEmbedder<Object>(new ChunkedWriteHandler());
+        embedder.offer(ChunkedResponses.of(iterator));
+        Assert.assertTrue(iterator.closed);
+    }
+    
+    /**
+     * A closeable iterator.
+     *
+     * @since 2.0
+     * @author Willi Schoenborn
+     */
+    private static final class ClosingIterator implements Iterator<Object>, Closeable {
+        
+        private final Iterator<?> iterator;
+        
+        private boolean closed;
+        
+        ClosingIterator(Iterator<?> iterator) {
+            this.iterator = iterator;
+        }
+        
+        @Override
+        public boolean hasNext() {
+            return iterator.hasNext();
+        }
+        
+        @Override
+        public Object next() {
+            return iterator.next();
+        }
+        
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+        
+        @Override
+        public void close() throws IOException {
+            closed = true;
+        }
+        
+    }
+    
+}
@@ -0,0 +1,212 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.cosmocode.palava.ipc.netty;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.handler.codec.embedder.CodecEmbedderException;
+import org.jboss.netty.handler.codec.embedder.DecoderEmbedder;
+import org.jboss.netty.handler.codec.frame.TooLongFrameException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Tests {@link CompressionHandler}.
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+public final class CompressionHandlerTest {
+
+    private static final int THRESHOLD = 64;
+    
+    private static final int MAX_LENGTH = 4096;
+    
+    private final CompressionHandler unit = new CompressionHandler(THRESHOLD, Deflater.BEST_SPEED, MAX_LENGTH);
+    
+    private DecoderEmbedder<ChannelBuffer> newEmbedder() {
+        return new DecoderEmbedder<ChannelBuffer>(unit);
+    }
+    
+    private ChannelBuffer frame(int flags, byte[] payload) {
+        return ChannelBuffers.wrappedBuffer(new byte[] {(byte) flags}, payload);
+    }
+    
+    private ChannelBuffer write(DecoderEmbedder<ChannelBuffer> embedder, byte[] payload) {
+        Channels.write(embedder.getPipeline().getChannel(), ChannelBuffers.wrappedBuffer(payload));
+        return embedder.poll();
+    }
+    
+    private byte[] bytes(ChannelBuffer buffer) {
+        final byte[] bytes = new byte[buffer.readableBytes()];
+        buffer.readBytes(bytes);
+        return bytes;
+    }
+    
+    private byte[] repetitive(int length) {
+        final byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) ('a' + i % 8);
+        }
+        return bytes;
+    }
+    
+    private DecoderEmbedder<ChannelBuffer> negotiated() {
+        final DecoderEmbedder<ChannelBuffer> embedder = newEmbedder();
+        embedder.offer(frame(CompressionHandler.ACCEPTS_DEFLATED, "hello".getBytes()));
+        Assert.assertEquals("hello", new String(bytes(embedder.poll())));
+        return embedder;
+    }
+    
+    /**
+     * Tests that payloads are not compressed before the peer accepted compression.
+     */
+    @Test
+    public void notNegotiated() {
+        final byte[] payload = repetitive(1024);
+        final ChannelBuffer frame = write(newEmbedder(), payload);
+        Assert.assertEquals(CompressionHandler.ACCEPTS_DEFLATED, frame.readUnsignedByte());
+        Assert.assertArrayEquals(payload, bytes(frame));
+    }
+    
+    /**
+     * Tests that payloads below the threshold are not compressed.
+     */
+    @Test
+    public void belowThreshold() {
+        final byte[] payload = repetitive(THRESHOLD - 1);
+        final ChannelBuffer frame = write(negotiated(), payload);
+        Assert.assertEquals(CompressionHandler.ACCEPTS_DEFLATED, frame.readUnsignedByte());
+        Assert.assertArrayEquals(payload, bytes(frame));
+    }
+    
+    /**
+     * Tests that payloads which can't be compressed are sent as is.
+     */
+    @Test
+    public void incompressible() {
+        final byte[] payload = new byte[1024];
+        new Random(0).nextBytes(payload);
+        final ChannelBuffer frame = write(negotiated(), payload);
+        Assert.assertEquals(CompressionHandler.ACCEPTS_DEFLATED, frame.readUnsignedByte());
+        Assert.assertArrayEquals(payload, bytes(frame));
+    }
+    
+    /**
+     * Tests compressing and decompressing a payload.
+     */
+    @Test
+    public void roundTrip() {
+        final byte[] payload = repetitive(1024);
+        final ChannelBuffer frame = write(negotiated(), payload);
+        Assert.assertTrue(frame.readableBytes() < payload.length / 4);
+        final int flags = CompressionHandler.DEFLATED | CompressionHandler.ACCEPTS_DEFLATED;
+        Assert.assertEquals(flags, frame.getUnsignedByte(0));
+        
+        final DecoderEmbedder<ChannelBuffer> embedder = newEmbedder();
+        embedder.offer(frame);
+        Assert.assertArrayEquals(payload, bytes(embedder.poll()));
+    }
+    
+    /**
+     * Tests that payloads of the maximum length are written, longer ones are rejected
+     * before the flag byte pushes them beyond the maximum frame length.
+     */
+    @Test
+    public void maxLength() {
+        final byte[] payload = new byte[MAX_LENGTH];
+        new Random(0).nextBytes(payload);
+        final DecoderEmbedder<ChannelBuffer> embedder = negotiated();
+        Assert.assertEquals(MAX_LENGTH + 1, write(embedder, payload).readableBytes());
+        try {
+            write(embedder, new byte[MAX_LENGTH + 1]);
+            Assert.fail("Expected " + TooLongFrameException.class.getSimpleName());
+        } catch (CodecEmbedderException e) {
+            Assert.assertTrue(e.getCause() instanceof TooLongFrameException);
+        }
+    }
+    
+    /**
+     * Tests that decompressed payloads exceeding the maximum length are rejected.
+     */
+    @Test
+    public void tooLong() {
+        final byte[] payload = new byte[MAX_LENGTH + 1];
+        Arrays.fill(payload, (byte) 'a');
+        final Deflater deflater = new Deflater();
+        deflater.setInput(payload);
+        deflater.finish();
+        final byte[] compressed = new byte[MAX_LENGTH];
+        final int length = deflater.deflate(compressed);
+        deflater.end();
+        
+        try {
+            newEmbedder().offer(frame(CompressionHandler.DEFLATED, Arrays.copyOf(compressed, length)));
+            Assert.fail("Expected " + TooLongFrameException.class.getSimpleName());
+        } catch (CodecEmbedderException e) {
+            Assert.assertTrue(e.getCause() instanceof TooLongFrameException);
+        }
+    }
+    
+    /**
+     * Tests that pooled deflaters and inflaters are reset after a failure and shared
+     * by channels on many short-lived threads.
+     * 
+     * @throws InterruptedException should not happen
+     */
+    @Test
+    public void sharedAcrossThreads() throws InterruptedException {
+        tooLong();
+        roundTrip();
+        
+        final List<Throwable> failures = Collections.synchronizedList(Lists.<Throwable>newArrayList());
+        final List<Thread> threads = Lists.newArrayList();
+        for (int i = 0; i < 32; i++) {
+            final Thread thread = new Thread(new Runnable() {
+                
+                @Override
+                public void run() {
+                    try {
+                        roundTrip();
+                    /* CHECKSTYLE:OFF */
+                    } catch (Throwable e) {
+                    /* CHECKSTYLE:ON */
+                        failures.add(e);
+                    }
+                }
+                
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals(Collections.emptyList(), failures);
+    }
+    
+}
@@ -0,0 +1,165 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.netty.channel.AbstractChannelSink;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelEvent;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Tests the {@link ExecutionMode}s of the {@link ExecutionStage}.
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+public final class ExecutionStageTest {
+
+    private static final int MESSAGES = 100;
+    
+    private final ExecutionStage unit = new ExecutionStage();
+    
+    private final List<Integer> received = Collections.synchronizedList(Lists.<Integer>newArrayList());
+    
+    private final List<String> threads = Collections.synchronizedList(Lists.<String>newArrayList());
+    
+    private final CountDownLatch processed = new CountDownLatch(MESSAGES);
+    
+    private final ChannelPipeline pipeline = Channels.pipeline();
+    
+    private final Channel channel = Proxies.of(Channel.class, new InvocationHandler() {
+        
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            if ("getPipeline".equals(method.getName())) {
+                return pipeline;
+            } else if ("getRemoteAddress".equals(method.getName())) {
+                return null;
+            } else if ("isOpen".equals(method.getName()) || "isReadable".equals(method.getName())) {
+                return true;
+            } else if ("getInterestOps".equals(method.getName())) {
+                return Channel.OP_READ;
+            } else {
+                throw new UnsupportedOperationException(method.getName());
+            }
+        }
+        
+    });
+    
+    /**
+     * Shuts down the executor of the stage.
+     * 
+     * @throws Exception should not happen
+     */
+    @After
+    public void dispose() throws Exception {
+        unit.dispose();
+    }
+    
+    private void process(ExecutionMode mode) throws Exception {
+        unit.setName("test");
+        unit.setMode(mode);
+        unit.setPoolSize(4);
+        unit.initialize();
+        
+        pipeline.addLast("protocol", new SimpleChannelUpstreamHandler() {
+            
+            @Override
+            public void messageReceived(ChannelHandlerContext context, MessageEvent event) {
+                received.add((Integer) event.getMessage());
+                threads.add(Thread.currentThread().getName());
+                processed.countDown();
+            }
+            
+        });
+        unit.install(pipeline);
+        pipeline.attach(channel, new AbstractChannelSink() {
+            
+            @Override
+            public void eventSunk(ChannelPipeline p, ChannelEvent event) {
+                event.getFuture().setSuccess();
+            }
+            
+        });
+        
+        for (int i = 0; i < MESSAGES; i++) {
+            Channels.fireMessageReceived(channel, i);
+        }
+        Assert.assertTrue(processed.await(10, TimeUnit.SECONDS));
+        
+        final List<Integer> expected = Lists.newArrayList();
+        for (int i = 0; i < MESSAGES; i++) {
+            expected.add(i);
+        }
+        Assert.assertEquals(expected, received);
+    }
+    
+    /**
+     * Tests that {@link ExecutionMode#DIRECT} processes requests on the calling thread.
+     * 
+     * @throws Exception should not happen
+     */
+    @Test
+    public void direct() throws Exception {
+        process(ExecutionMode.DIRECT);
+        Assert.assertNull(pipeline.get(ExecutionStage.NAME));
+        Assert.assertEquals(Collections.nCopies(MESSAGES, Thread.currentThread().getName()), threads);
+    }
+    
+    /**
+     * Tests that {@link ExecutionMode#POOLED} processes requests in order on pooled threads.
+     * 
+     * @throws Exception should not happen
+     */
+    @Test
+    public void pooled() throws Exception {
+        process(ExecutionMode.POOLED);
+        Assert.assertNotNull(pipeline.get(ExecutionStage.NAME));
+        for (String thread : threads) {
+            Assert.assertTrue(thread, thread.startsWith("test-execution-"));
+        }
+    }
+    
+    /**
+     * Tests that {@link ExecutionMode#VIRTUAL} processes requests in order off the calling thread.
+     * 
+     * @throws Exception should not happen
+     */
+    @Test
+    public void virtual() throws Exception {
+        process(ExecutionMode.VIRTUAL);
+        Assert.assertNotNull(pipeline.get(ExecutionStage.NAME));
+        Assert.assertFalse(threads.contains(Thread.currentThread().getName()));
+    }
+    
+}
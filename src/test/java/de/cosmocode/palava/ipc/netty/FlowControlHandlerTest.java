@@ -0,0 +1,280 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.cosmocode.palava.ipc.netty;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelEvent;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelState;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.DownstreamChannelStateEvent;
+import org.jboss.netty.channel.DownstreamMessageEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.UpstreamChannelStateEvent;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Tests {@link FlowControlHandler}.
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+public final class FlowControlHandlerTest {
+
+    private final FlowControlHandler unit = new FlowControlHandler(100, 50);
+    
+    private final AtomicInteger interestOps = new AtomicInteger(Channel.OP_READ);
+    
+    private final List<MessageEvent> written = Lists.newArrayList();
+    
+    private final ExecutorService completions = Executors.newFixedThreadPool(4);
+    
+    private volatile Runnable beforeInterestOps;
+    
+    private final Channel channel = Proxies.of(Channel.class, new InvocationHandler() {
+        
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            if ("getRemoteAddress".equals(method.getName())) {
+                return null;
+            } else if ("getInterestOps".equals(method.getName())) {
+                return interestOps.get();
+            } else {
+                throw new UnsupportedOperationException(method.getName());
+            }
+        }
+        
+    });
+    
+    private ChannelHandlerContext newContext(final boolean completeAsync) {
+        return Proxies.of(ChannelHandlerContext.class, new InvocationHandler() {
+            
+            private volatile Object attachment;
+            
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Exception {
+                if ("getAttachment".equals(method.getName())) {
+                    return attachment;
+                } else if ("setAttachment".equals(method.getName())) {
+                    attachment = args[0];
+                    return null;
+                } else if ("getChannel".equals(method.getName())) {
+                    return channel;
+                } else if ("sendUpstream".equals(method.getName())) {
+                    return null;
+                } else if ("sendDownstream".equals(method.getName())) {
+                    final ChannelEvent event = (ChannelEvent) args[0];
+                    if (event instanceof MessageEvent) {
+                        sent((MessageEvent) event, completeAsync);
+                    } else {
+                        if (beforeInterestOps != null) {
+                            beforeInterestOps.run();
+                        }
+                        interestOps.set((Integer) ((ChannelStateEvent) event).getValue());
+                        event.getFuture().setSuccess();
+                    }
+                    return null;
+                } else {
+                    throw new UnsupportedOperationException(method.getName());
+                }
+            }
+            
+        });
+    }
+    
+    private void sent(final MessageEvent event, boolean completeAsync) {
+        if (completeAsync) {
+            completions.execute(new Runnable() {
+                
+                @Override
+                public void run() {
+                    event.getFuture().setSuccess();
+                }
+                
+            });
+        } else {
+            synchronized (written) {
+                written.add(event);
+            }
+        }
+    }
+    
+    private ChannelHandlerContext open(boolean completeAsync) throws Exception {
+        final ChannelHandlerContext context = newContext(completeAsync);
+        unit.handleUpstream(context, new UpstreamChannelStateEvent(channel, ChannelState.OPEN, Boolean.TRUE));
+        return context;
+    }
+    
+    private ChannelFuture write(ChannelHandlerContext context, int size) throws Exception {
+        final ChannelFuture future = Channels.future(channel);
+        unit.handleDownstream(context, new DownstreamMessageEvent(
+            channel, future, ChannelBuffers.wrappedBuffer(new byte[size]), null));
+        return future;
+    }
+    
+    private boolean isReadable() {
+        return (interestOps.get() & Channel.OP_READ) != 0;
+    }
+    
+    /**
+     * Tears down the completion pool.
+     */
+    @After
+    public void shutdown() {
+        completions.shutdownNow();
+    }
+    
+    /**
+     * Tests that reads are suspended above the high water mark and resumed
+     * at the low water mark.
+     * 
+     * @throws Exception should not happen
+     */
+    @Test
+    public void waterMarks() throws Exception {
+        final ChannelHandlerContext context = open(false);
+        write(context, 60);
+        Assert.assertTrue(isReadable());
+        write(context, 60);
+        Assert.assertFalse(isReadable());
+        Assert.assertEquals(1, unit.getSuspended());
+        
+        written.get(0).getFuture().setSuccess();
+        Assert.assertFalse(isReadable());
+        written.get(1).getFuture().setSuccess();
+        Assert.assertTrue(isReadable());
+        Assert.assertEquals(0, unit.getSuspended());
+    }
+    
+    /**
+     * Tests that readability requested by other handlers while suspended is
+     * applied when resuming.
+     * 
+     * @throws Exception should not happen
+     */
+    @Test
+    public void interestOpsWhileSuspended() throws Exception {
+        final ChannelHandlerContext context = open(false);
+        write(context, 120);
+        Assert.assertFalse(isReadable());
+        
+        unit.handleDownstream(context, new DownstreamChannelStateEvent(
+            channel, Channels.future(channel), ChannelState.INTEREST_OPS, Channel.OP_READ));
+        Assert.assertFalse(isReadable());
+        
+        written.get(0).getFuture().setSuccess();
+        Assert.assertTrue(isReadable());
+    }
+    
+    /**
+     * Tests that reads are never left suspended once all writes completed, even if
+     * writes complete concurrently on other threads.
+     * 
+     * @throws Exception should not happen
+     */
+    @Test
+    public void concurrentCompletion() throws Exception {
+        final ChannelHandlerContext context = open(true);
+        final int writes = 20000;
+        final CountDownLatch completed = new CountDownLatch(writes);
+        for (int i = 0; i < writes; i++) {
+            write(context, 40).addListener(new ChannelFutureListener() {
+                
+                @Override
+                public void operationComplete(ChannelFuture future) {
+                    completed.countDown();
+                }
+                
+            });
+        }
+        Assert.assertTrue(completed.await(30, TimeUnit.SECONDS));
+        Assert.assertEquals(0, unit.getSuspended());
+        Assert.assertTrue(isReadable());
+    }
+    
+    /**
+     * Tests that interest ops are sent without holding a lock which is needed to complete writes,
+     * e.g. while a following handler blocks on a lock whose owner completes a write.
+     * 
+     * @throws Exception should not happen
+     */
+    @Test(timeout = 10000)
+    public void sendWithoutLock() throws Exception {
+        final ChannelHandlerContext context = open(false);
+        write(context, 90);
+        
+        final Object batch = new Object();
+        final CountDownLatch held = new CountDownLatch(1);
+        final CountDownLatch sending = new CountDownLatch(1);
+        final CountDownLatch completed = new CountDownLatch(1);
+        beforeInterestOps = new Runnable() {
+            
+            @Override
+            public void run() {
+                sending.countDown();
+                synchronized (batch) {
+                    beforeInterestOps = null;
+                }
+            }
+            
+        };
+        final Thread io = new Thread(new Runnable() {
+            
+            @Override
+            public void run() {
+                synchronized (batch) {
+                    held.countDown();
+                    try {
+                        sending.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    written.get(0).getFuture().setSuccess();
+                    completed.countDown();
+                }
+            }
+            
+        });
+        io.start();
+        held.await();
+        
+        write(context, 20);
+        Assert.assertTrue(completed.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(isReadable());
+        Assert.assertEquals(0, unit.getSuspended());
+        io.join();
+    }
+    
+}
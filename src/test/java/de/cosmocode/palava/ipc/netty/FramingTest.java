@@ -0,0 +1,178 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import java.nio.ByteOrder;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.handler.codec.embedder.CodecEmbedderException;
+import org.jboss.netty.handler.codec.embedder.DecoderEmbedder;
+import org.jboss.netty.handler.codec.embedder.EncoderEmbedder;
+import org.jboss.netty.handler.codec.frame.CorruptedFrameException;
+import org.jboss.netty.handler.codec.frame.TooLongFrameException;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests {@link FramingEncoder} and {@link FramingDecoder}.
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+public final class FramingTest {
+
+    private static final int MAX_FRAME_LENGTH = 16;
+    
+    private ChannelBuffer encode(boolean checksum, String... payloads) {
+        return encode(ByteOrder.BIG_ENDIAN, checksum, payloads);
+    }
+    
+    private ChannelBuffer encode(ByteOrder order, boolean checksum, String... payloads) {
+        final EncoderEmbedder<ChannelBuffer> encoder = new EncoderEmbedder<ChannelBuffer>(
+            new FramingEncoder(MAX_FRAME_LENGTH, checksum));
+        for (String payload : payloads) {
+            encoder.offer(ChannelBuffers.wrappedBuffer(order, payload.getBytes()));
+        }
+        encoder.finish();
+        final ChannelBuffer frames = ChannelBuffers.dynamicBuffer();
+        while (encoder.peek() != null) {
+            frames.writeBytes(encoder.poll());
+        }
+        return frames;
+    }
+    
+    private DecoderEmbedder<ChannelBuffer> newDecoder(boolean checksum) {
+        return new DecoderEmbedder<ChannelBuffer>(new FramingDecoder(MAX_FRAME_LENGTH, checksum));
+    }
+    
+    private String next(DecoderEmbedder<ChannelBuffer> decoder) {
+        return new String(ChannelBuffers.copiedBuffer(decoder.poll()).array());
+    }
+    
+    /**
+     * Tests the wire format.
+     */
+    @Test
+    public void format() {
+        final ChannelBuffer frame = encode(false, "abc");
+        Assert.assertEquals(3, frame.readInt());
+        Assert.assertEquals("abc", new String(ChannelBuffers.copiedBuffer(frame).array()));
+    }
+    
+    /**
+     * Tests encoding and decoding with and without checksums.
+     */
+    @Test
+    public void roundTrip() {
+        for (boolean checksum : new boolean[] {false, true}) {
+            final DecoderEmbedder<ChannelBuffer> decoder = newDecoder(checksum);
+            decoder.offer(encode(checksum, "hello", "world!"));
+            Assert.assertEquals("hello", next(decoder));
+            Assert.assertEquals("world!", next(decoder));
+            Assert.assertNull(decoder.poll());
+        }
+    }
+    
+    /**
+     * Tests that the wire format is big endian, regardless of the byte order of the buffers.
+     */
+    @Test
+    public void littleEndian() {
+        final ChannelBuffer frames = encode(ByteOrder.LITTLE_ENDIAN, true, "hello", "world!");
+        Assert.assertEquals(5, frames.getInt(0));
+        
+        final ChannelBuffer received = ChannelBuffers.buffer(ByteOrder.LITTLE_ENDIAN, frames.readableBytes());
+        received.writeBytes(frames);
+        final DecoderEmbedder<ChannelBuffer> decoder = newDecoder(true);
+        decoder.offer(received.readSlice(10));
+        decoder.offer(received);
+        Assert.assertEquals("hello", next(decoder));
+        Assert.assertEquals("world!", next(decoder));
+    }
+    
+    /**
+     * Tests that frames contained in a received buffer are sliced instead of copied.
+     */
+    @Test
+    public void slice() {
+        final ChannelBuffer frames = ChannelBuffers.copiedBuffer(encode(true, "hello"));
+        final DecoderEmbedder<ChannelBuffer> decoder = newDecoder(true);
+        decoder.offer(frames);
+        Assert.assertSame(frames.array(), decoder.poll().array());
+    }
+    
+    /**
+     * Tests frames split across multiple received buffers.
+     */
+    @Test
+    public void split() {
+        final ChannelBuffer frames = encode(false, "hello", "world!");
+        final DecoderEmbedder<ChannelBuffer> decoder = newDecoder(false);
+        decoder.offer(frames.readSlice(6));
+        Assert.assertNull(decoder.peek());
+        decoder.offer(frames.readSlice(7));
+        Assert.assertEquals("hello", next(decoder));
+        decoder.offer(frames);
+        Assert.assertEquals("world!", next(decoder));
+    }
+    
+    /**
+     * Tests that corrupted frames are detected.
+     */
+    @Test
+    public void corrupted() {
+        final ChannelBuffer frame = ChannelBuffers.copiedBuffer(encode(true, "hello"));
+        frame.setByte(5, 'j');
+        try {
+            newDecoder(true).offer(frame);
+            Assert.fail("Expected " + CorruptedFrameException.class.getSimpleName());
+        } catch (CodecEmbedderException e) {
+            Assert.assertTrue(e.getCause() instanceof CorruptedFrameException);
+        }
+    }
+    
+    /**
+     * Tests that the decoder rejects frames exceeding the maximum frame length.
+     */
+    @Test
+    public void tooLongDecoded() {
+        final ChannelBuffer frame = ChannelBuffers.buffer(4 + MAX_FRAME_LENGTH + 1);
+        frame.writeInt(MAX_FRAME_LENGTH + 1);
+        frame.writeZero(MAX_FRAME_LENGTH + 1);
+        try {
+            newDecoder(false).offer(frame);
+            Assert.fail("Expected " + TooLongFrameException.class.getSimpleName());
+        } catch (CodecEmbedderException e) {
+            Assert.assertTrue(e.getCause() instanceof TooLongFrameException);
+        }
+    }
+    
+    /**
+     * Tests that the encoder rejects payloads exceeding the maximum frame length.
+     */
+    @Test
+    public void tooLongEncoded() {
+        try {
+            encode(false, "this is more than sixteen bytes");
+            Assert.fail("Expected " + TooLongFrameException.class.getSimpleName());
+        } catch (CodecEmbedderException e) {
+            Assert.assertTrue(e.getCause() instanceof TooLongFrameException);
+        }
+    }
+    
+}
@@ -0,0 +1,136 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.netty.channel.AbstractChannelSink;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelEvent;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelState;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.channel.UpstreamChannelStateEvent;
+import org.jboss.netty.handler.timeout.DefaultIdleStateEvent;
+import org.jboss.netty.handler.timeout.IdleState;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Tests {@link IdleReaper}.
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+public final class IdleReaperTest {
+
+    private final IdleReaper unit = new IdleReaper();
+    
+    private final InFlightHandler inFlightHandler = new InFlightHandler();
+    
+    private final List<InFlightHandler.Request> received = Lists.newArrayList();
+    
+    private final AtomicInteger closed = new AtomicInteger();
+    
+    private final ChannelPipeline pipeline = Channels.pipeline();
+    
+    private final Channel channel = Proxies.of(Channel.class, new InvocationHandler() {
+        
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            if ("getPipeline".equals(method.getName())) {
+                return pipeline;
+            } else if ("getRemoteAddress".equals(method.getName())) {
+                return null;
+            } else if ("isOpen".equals(method.getName())) {
+                return Boolean.TRUE;
+            } else if ("close".equals(method.getName())) {
+                closed.incrementAndGet();
+                return Channels.succeededFuture((Channel) proxy);
+            } else {
+                throw new UnsupportedOperationException(method.getName());
+            }
+        }
+        
+    });
+    
+    /**
+     * Sets up a pipeline which tracks requests in flight and opens the channel.
+     */
+    @Before
+    public void open() {
+        pipeline.addLast(IdleStage.REAPER_NAME, unit);
+        pipeline.addLast(InFlightHandler.NAME, inFlightHandler);
+        pipeline.addLast("receiver", new SimpleChannelUpstreamHandler() {
+            
+            @Override
+            public void messageReceived(ChannelHandlerContext context, MessageEvent event) {
+                received.add((InFlightHandler.Request) event);
+            }
+            
+        });
+        pipeline.attach(channel, new AbstractChannelSink() {
+            
+            @Override
+            public void eventSunk(ChannelPipeline p, ChannelEvent event) {
+                throw new UnsupportedOperationException(event.toString());
+            }
+            
+        });
+        pipeline.sendUpstream(new UpstreamChannelStateEvent(channel, ChannelState.OPEN, Boolean.TRUE));
+    }
+    
+    private void idle(IdleState state) {
+        pipeline.sendUpstream(new DefaultIdleStateEvent(channel, state, System.currentTimeMillis()));
+    }
+    
+    /**
+     * Tests that idle channels are closed.
+     */
+    @Test
+    public void idle() {
+        idle(IdleState.READER_IDLE);
+        Assert.assertEquals(1, closed.get());
+        Assert.assertEquals(1, unit.getReaped());
+    }
+    
+    /**
+     * Tests that channels are kept open as long as a request is in flight.
+     */
+    @Test
+    public void inFlight() {
+        Channels.fireMessageReceived(channel, "request");
+        idle(IdleState.READER_IDLE);
+        idle(IdleState.ALL_IDLE);
+        Assert.assertEquals(0, closed.get());
+        Assert.assertEquals(0, unit.getReaped());
+        
+        received.get(0).complete();
+        idle(IdleState.READER_IDLE);
+        Assert.assertEquals(1, closed.get());
+    }
+    
+}
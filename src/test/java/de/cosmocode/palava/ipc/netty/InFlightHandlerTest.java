@@ -0,0 +1,168 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.netty.channel.AbstractChannelSink;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelEvent;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelState;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.DownstreamChannelStateEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.channel.UpstreamChannelStateEvent;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Tests {@link InFlightHandler}.
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+public final class InFlightHandlerTest {
+
+    private final InFlightHandler unit = new InFlightHandler();
+    
+    private final List<InFlightHandler.Request> received = Lists.newArrayList();
+    
+    private final List<Integer> interestOps = Lists.newArrayList();
+    
+    private final AtomicInteger closed = new AtomicInteger();
+    
+    private final ChannelPipeline pipeline = Channels.pipeline();
+    
+    private final Channel channel = Proxies.of(Channel.class, new InvocationHandler() {
+        
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            if ("getPipeline".equals(method.getName())) {
+                return pipeline;
+            } else if ("getRemoteAddress".equals(method.getName())) {
+                return null;
+            } else if ("close".equals(method.getName())) {
+                closed.incrementAndGet();
+                return Channels.succeededFuture((Channel) proxy);
+            } else {
+                throw new UnsupportedOperationException(method.getName());
+            }
+        }
+        
+    });
+    
+    /**
+     * Attaches the pipeline to a sink which records interest ops requests and opens the channel.
+     */
+    @Before
+    public void open() {
+        pipeline.addLast(InFlightHandler.NAME, unit);
+        pipeline.addLast("receiver", new SimpleChannelUpstreamHandler() {
+            
+            @Override
+            public void messageReceived(ChannelHandlerContext context, MessageEvent event) {
+                received.add((InFlightHandler.Request) event);
+            }
+            
+        });
+        pipeline.attach(channel, new AbstractChannelSink() {
+            
+            @Override
+            public void eventSunk(ChannelPipeline p, ChannelEvent event) {
+                interestOps.add((Integer) ((ChannelStateEvent) event).getValue());
+            }
+            
+        });
+        pipeline.sendUpstream(new UpstreamChannelStateEvent(channel, ChannelState.OPEN, Boolean.TRUE));
+    }
+    
+    private void setInterestOps(int ops) {
+        pipeline.sendDownstream(new DownstreamChannelStateEvent(
+            channel, Channels.future(channel), ChannelState.INTEREST_OPS, ops));
+    }
+    
+    /**
+     * Tests that requests are counted per channel until they are completed.
+     */
+    @Test
+    public void pending() {
+        Assert.assertTrue(unit.isIdle(channel));
+        Channels.fireMessageReceived(channel, "a");
+        Channels.fireMessageReceived(channel, "b");
+        Assert.assertFalse(unit.isIdle(channel));
+        Assert.assertEquals(2, unit.getTotal(Collections.singleton(channel)));
+        
+        received.get(0).complete();
+        received.get(0).complete();
+        Assert.assertEquals(1, unit.getTotal(Collections.singleton(channel)));
+        received.get(1).operationComplete(Channels.succeededFuture(channel));
+        Assert.assertTrue(unit.isIdle(channel));
+        Assert.assertEquals(0, unit.getTotal(Collections.singleton(channel)));
+    }
+    
+    /**
+     * Tests that reading can't be resumed once draining started.
+     */
+    @Test
+    public void drain() {
+        setInterestOps(Channel.OP_READ);
+        unit.drain();
+        setInterestOps(Channel.OP_NONE);
+        setInterestOps(Channel.OP_READ);
+        Assert.assertEquals(Lists.newArrayList(Channel.OP_READ, Channel.OP_NONE, Channel.OP_NONE), interestOps);
+    }
+    
+    /**
+     * Tests that a draining channel is closed once its last request has been answered.
+     */
+    @Test
+    public void closeWhenDrained() {
+        Channels.fireMessageReceived(channel, "a");
+        Channels.fireMessageReceived(channel, "b");
+        received.get(0).complete();
+        Assert.assertEquals(0, closed.get());
+        
+        unit.drain();
+        Assert.assertEquals(0, closed.get());
+        received.get(1).complete();
+        received.get(1).complete();
+        Assert.assertEquals(1, closed.get());
+    }
+    
+    /**
+     * Tests that answering all requests does not close the channel unless draining.
+     */
+    @Test
+    public void keepOpenUnlessDraining() {
+        Channels.fireMessageReceived(channel, "a");
+        received.get(0).complete();
+        Assert.assertTrue(unit.isIdle(channel));
+        Assert.assertEquals(0, closed.get());
+    }
+    
+}
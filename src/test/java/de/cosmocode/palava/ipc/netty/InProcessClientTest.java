@@ -0,0 +1,134 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import java.util.List;
+
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.channel.local.DefaultLocalServerChannelFactory;
+import org.jboss.netty.channel.local.LocalAddress;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+/**
+ * Tests {@link InProcessClient}.
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+public final class InProcessClientTest {
+
+    private static final String NAME = "in-process-test";
+    
+    private final List<Object> requests = Lists.newArrayList();
+    
+    private final List<Thread> threads = Lists.newArrayList();
+    
+    private ServerBootstrap bootstrap;
+    
+    private Channel server;
+    
+    /**
+     * Binds an in-process endpoint which answers every request but "ignore".
+     */
+    @Before
+    public void bind() {
+        bootstrap = new ServerBootstrap(new DefaultLocalServerChannelFactory());
+        bootstrap.getPipeline().addLast("handler", new SimpleChannelUpstreamHandler() {
+            
+            @Override
+            public void messageReceived(ChannelHandlerContext context, MessageEvent event) {
+                final Object request = event.getMessage();
+                requests.add(request);
+                threads.add(Thread.currentThread());
+                if (!"ignore".equals(request)) {
+                    event.getChannel().write(ImmutableList.of(request));
+                }
+            }
+            
+        });
+        server = bootstrap.bind(new LocalAddress(NAME));
+    }
+    
+    /**
+     * Closes the endpoint.
+     */
+    @After
+    public void close() {
+        server.close().awaitUninterruptibly();
+        bootstrap.releaseExternalResources();
+    }
+    
+    /**
+     * Tests that requests and responses are passed as they are on the calling thread.
+     */
+    @Test
+    public void roundTrip() {
+        final InProcessClient client = InProcessClient.connect(NAME);
+        try {
+            final Object request = new Object();
+            Assert.assertEquals(ImmutableList.of(request), client.call(request));
+            Assert.assertSame(request, requests.get(0));
+            Assert.assertEquals(ImmutableList.of("second"), client.call("second"));
+            Assert.assertEquals(ImmutableList.of(Thread.currentThread(), Thread.currentThread()), threads);
+        } finally {
+            client.close();
+        }
+    }
+    
+    /**
+     * Tests {@link InProcessClient#call(Object)} with a request which is not answered.
+     */
+    @Test
+    public void noResponse() {
+        final InProcessClient client = InProcessClient.connect(NAME);
+        try {
+            Assert.assertNull(client.call("ignore"));
+            Assert.assertEquals(ImmutableList.of("ignore"), requests);
+        } finally {
+            client.close();
+        }
+    }
+    
+    /**
+     * Tests {@link InProcessClient#connect(String)} with an unknown endpoint.
+     */
+    @Test(expected = IllegalStateException.class)
+    public void unknown() {
+        InProcessClient.connect("unknown");
+    }
+    
+    /**
+     * Tests {@link InProcessClient#call(Object)} after {@link InProcessClient#close()}.
+     */
+    @Test(expected = IllegalStateException.class)
+    public void closed() {
+        final InProcessClient client = InProcessClient.connect(NAME);
+        client.close();
+        client.call("request");
+    }
+    
+}
@@ -0,0 +1,133 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.concurrent.Executors;
+
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link InheritedServerChannelFactory}.
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+public final class InheritedServerChannelFactoryTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    
+    private ServerSocketChannel socket;
+    
+    private InheritedServerChannelFactory factory;
+    
+    private ServerBootstrap bootstrap;
+    
+    private Channel server;
+    
+    /**
+     * Opens the server socket which would be inherited from the parent process.
+     * 
+     * @throws IOException should not happen
+     */
+    @Before
+    public void open() throws IOException {
+        socket = ServerSocketChannel.open();
+        socket.socket().bind(new InetSocketAddress("127.0.0.1", 0));
+        factory = new InheritedServerChannelFactory(socket, 
+            Executors.newCachedThreadPool(), Executors.newCachedThreadPool());
+    }
+    
+    /**
+     * Closes the server and releases its threads.
+     * 
+     * @throws IOException should not happen
+     */
+    @After
+    public void close() throws IOException {
+        if (server != null) {
+            server.close().awaitUninterruptibly();
+        }
+        if (bootstrap != null) {
+            bootstrap.releaseExternalResources();
+        } else {
+            factory.releaseExternalResources();
+        }
+        socket.close();
+    }
+    
+    private String receive(SocketChannel client, int length) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (client.read(buffer) < 0) throw new IOException("Unexpected end of stream");
+        }
+        return new String(buffer.array(), UTF_8);
+    }
+    
+    /**
+     * Tests that the channel adopts the address of the inherited socket, regardless of the
+     * configured one, and serves connections accepted on it.
+     * 
+     * @throws IOException should not happen
+     */
+    @Test
+    public void adopt() throws IOException {
+        bootstrap = new ServerBootstrap(factory);
+        bootstrap.getPipeline().addLast("echo", new SimpleChannelUpstreamHandler() {
+            
+            @Override
+            public void messageReceived(ChannelHandlerContext context, MessageEvent event) {
+                event.getChannel().write(event.getMessage());
+            }
+            
+        });
+        server = bootstrap.bind(new InetSocketAddress("127.0.0.1", 0));
+        Assert.assertEquals(socket.socket().getLocalSocketAddress(), server.getLocalAddress());
+        
+        final SocketChannel client = SocketChannel.open(socket.socket().getLocalSocketAddress());
+        try {
+            client.write(ByteBuffer.wrap("inherited".getBytes(UTF_8)));
+            Assert.assertEquals("inherited", receive(client, 9));
+        } finally {
+            client.close();
+        }
+    }
+    
+    /**
+     * Tests that the inherited socket can only be adopted once.
+     */
+    @Test(expected = IllegalStateException.class)
+    public void adoptTwice() {
+        server = factory.newChannel(Channels.pipeline());
+        factory.newChannel(Channels.pipeline());
+    }
+    
+}
@@ -0,0 +1,76 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests {@link LatencyHistogram}.
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+public final class LatencyHistogramTest {
+
+    /**
+     * Tests that every value lies within its bucket and the relative error stays below 12.5%.
+     */
+    @Test
+    public void buckets() {
+        for (long value = 0; value < 1000000; value += 7) {
+            final int index = LatencyHistogram.indexOf(value);
+            final long upper = LatencyHistogram.upperBoundOf(index);
+            Assert.assertTrue(value + " > " + upper, value <= upper);
+            Assert.assertTrue(value + " < " + upper, upper - value <= value / 8);
+            if (index > 0) {
+                Assert.assertTrue(value > LatencyHistogram.upperBoundOf(index - 1));
+            }
+        }
+        Assert.assertEquals(Long.MAX_VALUE, LatencyHistogram.upperBoundOf(LatencyHistogram.indexOf(Long.MAX_VALUE)));
+    }
+    
+    /**
+     * Tests {@link LatencyHistogram#getPercentile(double)}.
+     */
+    @Test
+    public void percentiles() {
+        final LatencyHistogram unit = new LatencyHistogram();
+        Assert.assertEquals(0, unit.getPercentile(99));
+        
+        for (int i = 1; i <= 1000; i++) {
+            unit.record(i * 1000L);
+        }
+        
+        Assert.assertEquals(1000, unit.getCount());
+        Assert.assertEquals(500500, unit.getMean(), 0.0);
+        assertWithin(500000, unit.getPercentile(50));
+        assertWithin(990000, unit.getPercentile(99));
+        assertWithin(999000, unit.getPercentile(99.9));
+        assertWithin(1000000, unit.getPercentile(100));
+        
+        unit.reset();
+        Assert.assertEquals(0, unit.getCount());
+        Assert.assertEquals(0, unit.getPercentile(50));
+    }
+    
+    private void assertWithin(long expected, long actual) {
+        Assert.assertTrue(expected + " > " + actual, expected <= actual);
+        Assert.assertTrue(expected + " << " + actual, actual - expected <= expected / 8);
+    }
+    
+}
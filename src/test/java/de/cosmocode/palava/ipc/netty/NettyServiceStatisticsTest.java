@@ -0,0 +1,169 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.List;
+
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelPipelineFactory;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.local.DefaultLocalServerChannelFactory;
+import org.jboss.netty.channel.local.LocalAddress;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+import de.cosmocode.palava.core.Registry;
+import de.cosmocode.palava.core.lifecycle.LifecycleException;
+import de.cosmocode.palava.ipc.protocol.DetachedConnection;
+import de.cosmocode.palava.ipc.protocol.Protocol;
+import de.cosmocode.palava.jmx.MBeanService;
+
+/**
+ * Tests the {@link ProtocolStatistics} registered by the {@link NettyService}.
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+public final class NettyServiceStatisticsTest {
+
+    private final List<ProtocolStatistics> registered = Lists.newArrayList();
+    
+    private final InvocationHandler unsupported = new InvocationHandler() {
+        
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            throw new UnsupportedOperationException(method.getName());
+        }
+        
+    };
+    
+    private final Protocol protocol = Proxies.of(Protocol.class, new InvocationHandler() {
+        
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            if ("supports".equals(method.getName())) {
+                return true;
+            } else if ("process".equals(method.getName())) {
+                return "pong";
+            } else {
+                throw new UnsupportedOperationException(method.getName());
+            }
+        }
+        
+    });
+    
+    private final ConnectionManager manager = Proxies.of(ConnectionManager.class, new InvocationHandler() {
+        
+        private final DetachedConnection connection = Proxies.of(DetachedConnection.class, unsupported);
+        
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            if ("get".equals(method.getName())) {
+                return connection;
+            } else {
+                throw new UnsupportedOperationException(method.getName());
+            }
+        }
+        
+    });
+    
+    private final MBeanService mBeanService = Proxies.of(MBeanService.class, new InvocationHandler() {
+        
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            if ("register".equals(method.getName()) && args[0] instanceof ProtocolStatistics) {
+                registered.add((ProtocolStatistics) args[0]);
+            }
+            return null;
+        }
+        
+    });
+    
+    private final Registry registry = Proxies.of(Registry.class, new InvocationHandler() {
+        
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            return null;
+        }
+        
+    });
+    
+    private final ChannelPipelineFactory pipelineFactory = new ChannelPipelineFactory() {
+        
+        @Override
+        public ChannelPipeline getPipeline() {
+            return Channels.pipeline(new ProtocolHandler(manager, Collections.singletonList(protocol)));
+        }
+        
+    };
+    
+    private NettyService service;
+    
+    /**
+     * Stops the service.
+     * 
+     * @throws LifecycleException should not happen
+     */
+    @After
+    public void stop() throws LifecycleException {
+        if (service == null) return;
+        service.eventPreFrameworkStop();
+        service.dispose();
+    }
+    
+    private NettyService start(String name, int latencySampleRate) throws LifecycleException {
+        final FramingStage framingStage = new FramingStage();
+        service = new NettyService(new DefaultLocalServerChannelFactory(), registry, mBeanService, pipelineFactory,
+            new ExecutionStage(), new WriteCoalescingStage(), new StreamingStage(), framingStage,
+            new CompressionStage(framingStage), new FlowControlStage(), new AdmissionStage(), new IdleStage(),
+            new LocalAddress(name));
+        service.setName(name);
+        service.setInProcessName(name + "-in-process");
+        service.setLatencySampleRate(latencySampleRate);
+        service.initialize();
+        service.eventPostFrameworkStart();
+        return service;
+    }
+    
+    /**
+     * Tests that the configured latency sample rate reaches the registered statistics.
+     * 
+     * @throws LifecycleException should not happen
+     */
+    @Test
+    public void latencySampleRate() throws LifecycleException {
+        start("statistics", 3);
+        
+        final InProcessClient client = InProcessClient.connect("statistics-in-process");
+        try {
+            Assert.assertEquals("pong", client.call("ping"));
+        } finally {
+            client.close();
+        }
+        
+        Assert.assertEquals(1, registered.size());
+        Assert.assertEquals(3, registered.get(0).getSampleRate());
+        Assert.assertEquals(1, registered.get(0).getRequests());
+    }
+    
+}
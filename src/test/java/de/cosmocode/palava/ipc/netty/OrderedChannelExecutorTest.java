@@ -0,0 +1,202 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelEvent;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.UpstreamMessageEvent;
+import org.jboss.netty.handler.execution.ChannelEventRunnable;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Tests {@link OrderedChannelExecutor}.
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+public final class OrderedChannelExecutorTest {
+
+    private static final int EVENTS = 500;
+    
+    private final ExecutorService pool = Executors.newCachedThreadPool();
+    
+    private final AtomicInteger running = new AtomicInteger();
+    
+    private final AtomicInteger maxRunning = new AtomicInteger();
+    
+    private Channel newChannel() {
+        return Proxies.of(Channel.class, new InvocationHandler() {
+            
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if ("isOpen".equals(method.getName())) {
+                    return Boolean.TRUE;
+                } else if ("getRemoteAddress".equals(method.getName())) {
+                    return null;
+                } else {
+                    throw new UnsupportedOperationException(method.getName());
+                }
+            }
+            
+        });
+    }
+    
+    private ChannelHandlerContext newContext(final List<Object> received, final CountDownLatch latch) {
+        return Proxies.of(ChannelHandlerContext.class, new InvocationHandler() {
+            
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws InterruptedException {
+                if ("sendUpstream".equals(method.getName())) {
+                    final int current = running.incrementAndGet();
+                    while (true) {
+                        final int max = maxRunning.get();
+                        if (current <= max || maxRunning.compareAndSet(max, current)) break;
+                    }
+                    Thread.sleep(0, 1000);
+                    received.add(((UpstreamMessageEvent) args[0]).getMessage());
+                    running.decrementAndGet();
+                    latch.countDown();
+                    return null;
+                } else {
+                    throw new UnsupportedOperationException(method.getName());
+                }
+            }
+            
+        });
+    }
+    
+    /**
+     * Tears down the underlying pool.
+     */
+    @After
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+    
+    /**
+     * Tests that events of the same channel are executed in order, while the
+     * concurrency limit is obeyed.
+     * 
+     * @throws InterruptedException should not happen
+     */
+    @Test
+    public void ordered() throws InterruptedException {
+        final OrderedChannelExecutor unit = new OrderedChannelExecutor(pool, 2, 0);
+        final CountDownLatch latch = new CountDownLatch(EVENTS * 4);
+        final List<List<Object>> received = Lists.newArrayList();
+        final List<Channel> channels = Lists.newArrayList();
+        final List<ChannelHandlerContext> contexts = Lists.newArrayList();
+        
+        for (int i = 0; i < 4; i++) {
+            final List<Object> messages = Lists.newArrayList();
+            received.add(messages);
+            channels.add(newChannel());
+            contexts.add(newContext(messages, latch));
+        }
+        
+        for (int event = 0; event < EVENTS; event++) {
+            for (int i = 0; i < channels.size(); i++) {
+                final ChannelEvent message = new UpstreamMessageEvent(channels.get(i), event, null);
+                unit.execute(new ChannelEventRunnable(contexts.get(i), message));
+            }
+        }
+        
+        Assert.assertTrue(latch.await(30, TimeUnit.SECONDS));
+        for (List<Object> messages : received) {
+            Assert.assertEquals(EVENTS, messages.size());
+            for (int event = 0; event < EVENTS; event++) {
+                Assert.assertEquals(event, messages.get(event));
+            }
+        }
+        Assert.assertTrue("Concurrency limit exceeded: " + maxRunning, maxRunning.get() <= 2);
+    }
+    
+    /**
+     * Tests that reads are suspended while the pending messages of a channel
+     * exceed the limit and resumed once they have been processed.
+     * 
+     * @throws InterruptedException should not happen
+     */
+    @Test
+    public void bounded() throws InterruptedException {
+        final List<Boolean> readable = new CopyOnWriteArrayList<Boolean>();
+        final Channel channel = Proxies.of(Channel.class, new InvocationHandler() {
+            
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if ("isOpen".equals(method.getName())) {
+                    return Boolean.TRUE;
+                } else if ("getRemoteAddress".equals(method.getName())) {
+                    return null;
+                } else if ("setReadable".equals(method.getName())) {
+                    readable.add((Boolean) args[0]);
+                    return null;
+                } else {
+                    throw new UnsupportedOperationException(method.getName());
+                }
+            }
+            
+        });
+        
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch processed = new CountDownLatch(4);
+        final ChannelHandlerContext context = Proxies.of(ChannelHandlerContext.class, new InvocationHandler() {
+            
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws InterruptedException {
+                if ("sendUpstream".equals(method.getName())) {
+                    blocked.await();
+                    processed.countDown();
+                    return null;
+                } else {
+                    throw new UnsupportedOperationException(method.getName());
+                }
+            }
+            
+        });
+        
+        final OrderedChannelExecutor unit = new OrderedChannelExecutor(pool, 2, 4096);
+        for (int i = 0; i < 4; i++) {
+            final ChannelEvent message = new UpstreamMessageEvent(channel, ChannelBuffers.buffer(1024), null);
+            unit.execute(new ChannelEventRunnable(context, message));
+        }
+        Assert.assertEquals(Lists.newArrayList(false), readable);
+        
+        blocked.countDown();
+        Assert.assertTrue(processed.await(30, TimeUnit.SECONDS));
+        pool.shutdown();
+        Assert.assertTrue(pool.awaitTermination(30, TimeUnit.SECONDS));
+        Assert.assertEquals(Lists.newArrayList(false, true), readable);
+    }
+    
+}
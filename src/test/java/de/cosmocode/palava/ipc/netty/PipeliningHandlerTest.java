@@ -0,0 +1,244 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelEvent;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelState;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.DownstreamMessageEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.UpstreamChannelStateEvent;
+import org.jboss.netty.channel.UpstreamMessageEvent;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+/**
+ * Tests {@link PipeliningHandler}.
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+public final class PipeliningHandlerTest {
+
+    private static final int REQUESTS = 50;
+    
+    private final ExecutorService pool = Executors.newFixedThreadPool(8);
+    
+    private final PipeliningHandler unit = new PipeliningHandler(pool);
+    
+    private final List<Object> written = Lists.newArrayList();
+    
+    private final CountDownLatch latch = new CountDownLatch(REQUESTS);
+    
+    private final Channel channel = Proxies.of(Channel.class, new InvocationHandler() {
+        
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            if ("getRemoteAddress".equals(method.getName())) {
+                return null;
+            } else {
+                throw new UnsupportedOperationException(method.getName());
+            }
+        }
+        
+    });
+    
+    private final ChannelHandlerContext context = Proxies.of(ChannelHandlerContext.class, new InvocationHandler() {
+        
+        private final AtomicReference<Object> attachment = new AtomicReference<Object>();
+        
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Exception {
+            if ("getAttachment".equals(method.getName())) {
+                return attachment.get();
+            } else if ("setAttachment".equals(method.getName())) {
+                attachment.set(args[0]);
+                return null;
+            } else if ("sendUpstream".equals(method.getName())) {
+                // simulates a protocol which answers odd requests only
+                final int request = (Integer) ((MessageEvent) args[0]).getMessage();
+                Thread.sleep(REQUESTS - request);
+                if (request % 2 == 1) {
+                    unit.writeRequested((ChannelHandlerContext) proxy, new DownstreamMessageEvent(
+                        channel, Channels.future(channel), "response-" + request, null));
+                }
+                latch.countDown();
+                return null;
+            } else if ("sendDownstream".equals(method.getName())) {
+                synchronized (written) {
+                    written.add(((MessageEvent) args[0]).getMessage());
+                }
+                return null;
+            } else {
+                throw new UnsupportedOperationException(method.getName());
+            }
+        }
+        
+    });
+    
+    /**
+     * Creates a context which answers every request and records all events
+     * leaving the given handler as "response-n", "closed" and "close".
+     */
+    private ChannelHandlerContext newContext(final PipeliningHandler handler, final List<Object> events) {
+        return Proxies.of(ChannelHandlerContext.class, new InvocationHandler() {
+            
+            private Object attachment;
+            
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Exception {
+                if ("getAttachment".equals(method.getName())) {
+                    return attachment;
+                } else if ("setAttachment".equals(method.getName())) {
+                    attachment = args[0];
+                    return null;
+                } else if ("getChannel".equals(method.getName())) {
+                    return channel;
+                } else if ("sendUpstream".equals(method.getName())) {
+                    final ChannelEvent event = (ChannelEvent) args[0];
+                    if (event instanceof MessageEvent) {
+                        final Object response = "response-" + ((MessageEvent) event).getMessage();
+                        handler.writeRequested((ChannelHandlerContext) proxy, new DownstreamMessageEvent(
+                            channel, Channels.future(channel), response, null));
+                    } else {
+                        events.add("closed");
+                    }
+                    return null;
+                } else if ("sendDownstream".equals(method.getName())) {
+                    final ChannelEvent event = (ChannelEvent) args[0];
+                    events.add(event instanceof MessageEvent ? ((MessageEvent) event).getMessage() : "close");
+                    return null;
+                } else {
+                    throw new UnsupportedOperationException(method.getName());
+                }
+            }
+            
+        });
+    }
+    
+    /**
+     * Tears down the underlying pool.
+     */
+    @After
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+    
+    /**
+     * Tests that responses are written in request order, even if
+     * later requests complete first.
+     * 
+     * @throws Exception should not happen
+     */
+    @Test
+    public void ordered() throws Exception {
+        final List<Object> expected = Lists.newArrayList();
+        for (int request = 0; request < REQUESTS; request++) {
+            unit.messageReceived(context, new UpstreamMessageEvent(channel, request, null));
+            if (request % 2 == 1) {
+                expected.add("response-" + request);
+            }
+        }
+        
+        Assert.assertTrue(latch.await(30, TimeUnit.SECONDS));
+        pool.shutdown();
+        Assert.assertTrue(pool.awaitTermination(30, TimeUnit.SECONDS));
+        
+        synchronized (written) {
+            Assert.assertEquals(expected, ImmutableList.copyOf(written));
+        }
+    }
+    
+    /**
+     * Tests that a rejected request closes the channel without holding back
+     * the responses of later requests.
+     * 
+     * @throws Exception should not happen
+     */
+    @Test
+    public void rejected() throws Exception {
+        final List<Runnable> tasks = Lists.newArrayList();
+        final PipeliningHandler handler = new PipeliningHandler(new Executor() {
+            
+            @Override
+            public void execute(Runnable command) {
+                if (tasks.size() == 1) {
+                    tasks.add(null);
+                    throw new RejectedExecutionException();
+                }
+                tasks.add(command);
+            }
+            
+        });
+        final List<Object> events = Lists.newArrayList();
+        final ChannelHandlerContext context = newContext(handler, events);
+        
+        for (int request = 0; request < 3; request++) {
+            handler.messageReceived(context, new UpstreamMessageEvent(channel, request, null));
+        }
+        Assert.assertEquals(ImmutableList.of("close"), events);
+        
+        tasks.get(2).run();
+        tasks.get(0).run();
+        Assert.assertEquals(ImmutableList.of("close", "response-0", "response-2"), events);
+    }
+    
+    /**
+     * Tests that closing is passed on only after all received requests have been processed.
+     * 
+     * @throws Exception should not happen
+     */
+    @Test
+    public void closedAfterRequests() throws Exception {
+        final List<Runnable> tasks = Lists.newArrayList();
+        final PipeliningHandler handler = new PipeliningHandler(new Executor() {
+            
+            @Override
+            public void execute(Runnable command) {
+                tasks.add(command);
+            }
+            
+        });
+        final List<Object> events = Lists.newArrayList();
+        final ChannelHandlerContext context = newContext(handler, events);
+        
+        handler.messageReceived(context, new UpstreamMessageEvent(channel, 0, null));
+        handler.handleUpstream(context, new UpstreamChannelStateEvent(channel, ChannelState.OPEN, Boolean.FALSE));
+        Assert.assertEquals(ImmutableList.of(), events);
+        
+        tasks.get(0).run();
+        Assert.assertEquals(ImmutableList.of("response-0", "closed"), events);
+    }
+    
+}
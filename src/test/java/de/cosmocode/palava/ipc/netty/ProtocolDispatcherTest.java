@@ -0,0 +1,152 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.base.Function;
+import com.google.common.base.Functions;
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+
+import de.cosmocode.palava.ipc.protocol.Protocol;
+
+/**
+ * Tests {@link ProtocolDispatcher}.
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+public final class ProtocolDispatcherTest {
+
+    private static final Function<Protocol, ProtocolStatistics> STATISTICS = 
+        new Function<Protocol, ProtocolStatistics>() {
+            
+            @Override
+            public ProtocolStatistics apply(Protocol from) {
+                return new ProtocolStatistics(from, 1);
+            }
+            
+        };
+    
+    private Protocol protocol(final Predicate<Object> supports, Class<?>... interfaces) {
+        final Class<?>[] types = Arrays.copyOf(interfaces, interfaces.length + 1);
+        types[interfaces.length] = Protocol.class;
+        return (Protocol) Proxies.of(new InvocationHandler() {
+            
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if ("supports".equals(method.getName())) {
+                    return supports.apply(args[0]);
+                } else {
+                    throw new UnsupportedOperationException(method.getName());
+                }
+            }
+            
+        }, types);
+    }
+    
+    private Protocol classBased(Class<?> type) {
+        return protocol(Predicates.instanceOf(type));
+    }
+    
+    private Protocol contentBased(Object request) {
+        return protocol(Predicates.<Object>equalTo(request), ContentBasedProtocol.class);
+    }
+    
+    /**
+     * Tests {@link ProtocolDispatcher#find(Object)} with class based protocols.
+     */
+    @Test
+    public void classBasedHit() {
+        final Protocol strings = classBased(String.class);
+        final Protocol integers = classBased(Integer.class);
+        final ProtocolDispatcher unit = new ProtocolDispatcher(Arrays.asList(strings, integers), STATISTICS);
+        
+        Assert.assertSame(integers, unit.find(1).getProtocol());
+        Assert.assertSame(integers, unit.find(2).getProtocol());
+        Assert.assertSame(strings, unit.find("a").getProtocol());
+        Assert.assertEquals(1, unit.getHits());
+        Assert.assertEquals(2, unit.getMisses());
+    }
+    
+    /**
+     * Tests {@link ProtocolDispatcher#find(Object)} with content based protocols
+     * preceding a class based one.
+     */
+    @Test
+    public void contentBased() {
+        final Protocol special = contentBased("special");
+        final Protocol strings = classBased(String.class);
+        final ProtocolDispatcher unit = new ProtocolDispatcher(Arrays.asList(special, strings), STATISTICS);
+        
+        Assert.assertSame(strings, unit.find("plain").getProtocol());
+        Assert.assertSame(special, unit.find("special").getProtocol());
+        Assert.assertSame(strings, unit.find("other").getProtocol());
+        Assert.assertEquals(2, unit.getHits());
+        Assert.assertEquals(1, unit.getMisses());
+    }
+    
+    /**
+     * Tests {@link ProtocolDispatcher#find(Object)} with an unsupported request.
+     */
+    @Test(expected = NoSuchElementException.class)
+    public void unsupported() {
+        new ProtocolDispatcher(Arrays.asList(classBased(String.class)), STATISTICS).find(1);
+    }
+    
+    /**
+     * Tests that {@link ProtocolDispatcher#find(Object)} returns the statistics
+     * of the protocol which were attached when the candidate was cached.
+     */
+    @Test
+    public void statistics() {
+        final Protocol strings = classBased(String.class);
+        final ProtocolStatistics stats = new ProtocolStatistics(strings, 1);
+        final ProtocolDispatcher unit = new ProtocolDispatcher(Arrays.asList(strings), 
+            Functions.forMap(Collections.singletonMap(strings, stats)));
+        
+        Assert.assertSame(stats, unit.find("a").getStatistics());
+        Assert.assertSame(stats, unit.find("b").getStatistics());
+        Assert.assertEquals(1, unit.getMisses());
+    }
+    
+    /**
+     * Tests {@link ProtocolDispatcher#invalidate()}.
+     */
+    @Test
+    public void invalidate() {
+        final List<Protocol> protocols = Arrays.asList(classBased(Number.class), classBased(Integer.class));
+        final ProtocolDispatcher unit = new ProtocolDispatcher(protocols, STATISTICS);
+        
+        Assert.assertSame(protocols.get(0), unit.find(1).getProtocol());
+        protocols.set(0, classBased(String.class));
+        Assert.assertNotSame(protocols.get(1), unit.find(1).getProtocol());
+        unit.invalidate();
+        Assert.assertSame(protocols.get(1), unit.find(1).getProtocol());
+        Assert.assertEquals(2, unit.getMisses());
+    }
+    
+}
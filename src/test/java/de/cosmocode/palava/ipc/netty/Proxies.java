@@ -0,0 +1,77 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.cosmocode.palava.ipc.netty;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * Static utility class for creating test fixtures using dynamic proxies.
+ * Proxies compare by identity, all other methods are delegated to the given handler.
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+final class Proxies {
+
+    private Proxies() {
+        
+    }
+    
+    /**
+     * Creates a proxy implementing the given type.
+     * 
+     * @since 2.0
+     * @param <T> the generic type
+     * @param type the implemented interface
+     * @param handler the handler for all methods but equals, hashCode and toString
+     * @return a new proxy
+     */
+    static <T> T of(Class<T> type, InvocationHandler handler) {
+        return type.cast(of(handler, type));
+    }
+    
+    /**
+     * Creates a proxy implementing all of the given types.
+     * 
+     * @since 2.0
+     * @param handler the handler for all methods but equals, hashCode and toString
+     * @param types the implemented interfaces
+     * @return a new proxy
+     */
+    static Object of(final InvocationHandler handler, Class<?>... types) {
+        return Proxy.newProxyInstance(Proxies.class.getClassLoader(), types, new InvocationHandler() {
+            
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if ("hashCode".equals(method.getName()) && method.getParameterTypes().length == 0) {
+                    return System.identityHashCode(proxy);
+                } else if ("equals".equals(method.getName()) && method.getParameterTypes().length == 1) {
+                    return proxy == args[0];
+                } else if ("toString".equals(method.getName()) && method.getParameterTypes().length == 0) {
+                    return "Proxy@" + Integer.toHexString(System.identityHashCode(proxy));
+                } else {
+                    return handler.invoke(proxy, method, args);
+                }
+            }
+            
+        });
+    }
+    
+}
@@ -0,0 +1,149 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.Executors;
+
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelException;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.ServerChannel;
+import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Tests {@link ReusePort}.
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+public final class ReusePortTest {
+
+    private final NioServerSocketChannelFactory factory = new NioServerSocketChannelFactory(
+        Executors.newCachedThreadPool(), Executors.newCachedThreadPool());
+    
+    private final List<Channel> channels = Lists.newArrayList();
+    
+    /**
+     * Skips all tests if the current runtime does not support SO_REUSEPORT.
+     */
+    @Before
+    public void assumeAvailable() {
+        Assume.assumeTrue(ReusePort.isAvailable());
+    }
+    
+    /**
+     * Closes all channels and releases their threads.
+     */
+    @After
+    public void close() {
+        for (Channel channel : channels) {
+            channel.close().awaitUninterruptibly();
+        }
+        factory.releaseExternalResources();
+    }
+    
+    private ServerChannel newChannel(boolean reusePort) {
+        final ServerChannel channel = factory.newChannel(Channels.pipeline());
+        channels.add(channel);
+        if (reusePort) {
+            ReusePort.enable(channel);
+        }
+        return channel;
+    }
+    
+    /**
+     * Tests that two channels with SO_REUSEPORT enabled can be bound to the same port.
+     */
+    @Test
+    public void sharedPort() {
+        final Channel first = newChannel(true);
+        Assert.assertTrue(first.bind(new InetSocketAddress("127.0.0.1", 0)).awaitUninterruptibly().isSuccess());
+        final InetSocketAddress address = (InetSocketAddress) first.getLocalAddress();
+        
+        final Channel second = newChannel(true);
+        final ChannelFuture future = second.bind(address).awaitUninterruptibly();
+        Assert.assertTrue(String.valueOf(future.getCause()), future.isSuccess());
+        Assert.assertEquals(address, second.getLocalAddress());
+    }
+    
+    /**
+     * Tests that a second channel without SO_REUSEPORT can not be bound to the same port.
+     */
+    @Test
+    public void conflict() {
+        final Channel first = newChannel(true);
+        Assert.assertTrue(first.bind(new InetSocketAddress("127.0.0.1", 0)).awaitUninterruptibly().isSuccess());
+        final InetSocketAddress address = (InetSocketAddress) first.getLocalAddress();
+        
+        final Channel second = newChannel(false);
+        Assert.assertFalse(second.bind(address).awaitUninterruptibly().isSuccess());
+    }
+    
+    /**
+     * Tests that a {@link ServerBootstrap} using a {@link ReusePortServerChannelFactory}
+     * can bind the same address twice.
+     */
+    @Test
+    public void bootstrap() {
+        final ServerBootstrap bootstrap = new ServerBootstrap(new ReusePortServerChannelFactory(factory));
+        final Channel first = bootstrap.bind(new InetSocketAddress("127.0.0.1", 0));
+        channels.add(first);
+        final Channel second = bootstrap.bind(first.getLocalAddress());
+        channels.add(second);
+        Assert.assertEquals(first.getLocalAddress(), second.getLocalAddress());
+    }
+    
+    /**
+     * Tests that a {@link ServerBootstrap} using a plain factory can not bind the same address twice.
+     */
+    @Test(expected = ChannelException.class)
+    public void bootstrapConflict() {
+        final ServerBootstrap bootstrap = new ServerBootstrap(factory);
+        final Channel first = bootstrap.bind(new InetSocketAddress("127.0.0.1", 0));
+        channels.add(first);
+        channels.add(bootstrap.bind(first.getLocalAddress()));
+    }
+    
+    /**
+     * Tests {@link ReusePort#enable(Channel)} with a channel which is not socket based.
+     */
+    @Test(expected = ChannelException.class)
+    public void unsupported() {
+        ReusePort.enable(Proxies.of(ServerChannel.class, new InvocationHandler() {
+            
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                throw new UnsupportedOperationException(method.getName());
+            }
+            
+        }));
+    }
+    
+}
@@ -0,0 +1,154 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelPipelineFactory;
+import org.jboss.netty.channel.Channels;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.cosmocode.palava.core.lifecycle.LifecycleException;
+
+/**
+ * Tests {@link SharedNioServerSocketChannelFactory}.
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+public final class SharedNioServerSocketChannelFactoryTest {
+
+    private final ExecutorService boss = Executors.newCachedThreadPool();
+    
+    private final ExecutorService worker = Executors.newCachedThreadPool();
+    
+    private final ConfigurableNioServerSocketChannelFactory delegate =
+        new ConfigurableNioServerSocketChannelFactory(boss, worker);
+    
+    private final SharedNioServerSocketChannelFactory unit = new SharedNioServerSocketChannelFactory(delegate);
+    
+    /**
+     * Initializes the shared delegate.
+     * 
+     * @throws LifecycleException should not happen
+     */
+    @Before
+    public void initialize() throws LifecycleException {
+        delegate.initialize();
+    }
+    
+    /**
+     * Disposes the shared delegate.
+     * 
+     * @throws LifecycleException should not happen
+     */
+    @After
+    public void dispose() throws LifecycleException {
+        delegate.dispose();
+    }
+    
+    private Channel bind() {
+        final ServerBootstrap bootstrap = new ServerBootstrap(unit);
+        bootstrap.setPipelineFactory(new ChannelPipelineFactory() {
+            
+            @Override
+            public ChannelPipeline getPipeline() throws Exception {
+                return Channels.pipeline(new EchoHandler());
+            }
+            
+        });
+        return bootstrap.bind(new InetSocketAddress("127.0.0.1", 0));
+    }
+    
+    private void assertEchoes(Channel channel) throws IOException {
+        final Socket socket = new Socket();
+        try {
+            socket.setSoTimeout(10000);
+            socket.connect(channel.getLocalAddress(), 10000);
+            socket.getOutputStream().write(42);
+            socket.getOutputStream().flush();
+            final InputStream input = socket.getInputStream();
+            Assert.assertEquals(42, input.read());
+        } finally {
+            socket.close();
+        }
+    }
+    
+    /**
+     * Tests that two services sharing one factory are served by the same nio workers
+     * and that disposing one of them keeps the other one running.
+     * 
+     * @throws IOException should not happen
+     */
+    @Test
+    public void disposeIndependently() throws IOException {
+        final Channel first = bind();
+        final Channel second = bind();
+        assertEchoes(first);
+        assertEchoes(second);
+        
+        // what the first service does when it is disposed
+        first.close().awaitUninterruptibly();
+        unit.releaseExternalResources();
+        
+        Assert.assertFalse(first.isBound());
+        Assert.assertTrue(second.isBound());
+        Assert.assertFalse(boss.isShutdown());
+        Assert.assertFalse(worker.isShutdown());
+        assertEchoes(second);
+        
+        second.close().awaitUninterruptibly();
+        unit.releaseExternalResources();
+        
+        // a service started later still gets a working channel
+        final Channel third = bind();
+        assertEchoes(third);
+        third.close().awaitUninterruptibly();
+    }
+    
+    /**
+     * Tests that {@link SharedNioServerSocketChannelFactory#releaseExternalResources()}
+     * is a no-op and that the threads are released once the delegate is disposed.
+     * 
+     * @throws LifecycleException should not happen
+     * @throws InterruptedException should not happen
+     */
+    @Test
+    public void releaseExternalResources() throws LifecycleException, InterruptedException {
+        unit.releaseExternalResources();
+        unit.releaseExternalResources();
+        Assert.assertFalse(boss.isShutdown());
+        Assert.assertFalse(worker.isShutdown());
+        
+        delegate.dispose();
+        Assert.assertTrue(boss.awaitTermination(10, TimeUnit.SECONDS));
+        Assert.assertTrue(worker.awaitTermination(10, TimeUnit.SECONDS));
+    }
+    
+}
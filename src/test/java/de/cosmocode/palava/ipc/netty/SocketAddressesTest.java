@@ -0,0 +1,85 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.Arrays;
+
+import org.jboss.netty.channel.local.LocalAddress;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ * Tests {@link SocketAddresses}.
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+public final class SocketAddressesTest {
+
+    /**
+     * Tests {@link SocketAddresses#parse(String)} with all supported formats.
+     */
+    @Test
+    public void parse() {
+        Assert.assertEquals(new InetSocketAddress("localhost", 8081), SocketAddresses.parse("localhost:8081"));
+        Assert.assertEquals(new InetSocketAddress(8081), SocketAddresses.parse("*:8081"));
+        Assert.assertEquals(new InetSocketAddress("::1", 8081), SocketAddresses.parse("[::1]:8081"));
+        Assert.assertEquals(new LocalAddress("json"), SocketAddresses.parse("local:json"));
+    }
+    
+    /**
+     * Tests {@link SocketAddresses#parseAll(String)}.
+     */
+    @Test
+    public void parseAll() {
+        Assert.assertEquals(Arrays.asList(
+            new InetSocketAddress("127.0.0.1", 8081), new LocalAddress("json")
+        ), SocketAddresses.parseAll(" 127.0.0.1:8081, local:json ,"));
+    }
+    
+    /**
+     * Tests {@link SocketAddresses#parse(String)} with a unix domain socket path.
+     */
+    @Test
+    public void parseUnix() {
+        Assume.assumeTrue(UnixDomainSockets.isAvailable());
+        final SocketAddress address = SocketAddresses.parse("unix:/var/run/palava.sock");
+        Assert.assertTrue(UnixDomainSockets.isUnixDomainAddress(address));
+        Assert.assertEquals(new File("/var/run/palava.sock"), UnixDomainSockets.fileOf(address));
+    }
+    
+    /**
+     * Tests {@link SocketAddresses#parse(String)} with a missing port.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void missingPort() {
+        SocketAddresses.parse("localhost");
+    }
+    
+    /**
+     * Tests {@link SocketAddresses#parse(String)} with an invalid port.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidPort() {
+        SocketAddresses.parse("localhost:http");
+    }
+    
+}
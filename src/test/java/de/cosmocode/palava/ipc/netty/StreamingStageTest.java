@@ -0,0 +1,99 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.handler.stream.ChunkedWriteHandler;
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.cosmocode.palava.core.lifecycle.LifecycleException;
+import de.cosmocode.palava.ipc.protocol.Protocol;
+
+/**
+ * Tests {@link StreamingStage}.
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+public final class StreamingStageTest {
+
+    private final StreamingStage unit = new StreamingStage();
+    
+    private final ConnectionManager manager = Proxies.of(ConnectionManager.class, new InvocationHandler() {
+        
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            throw new UnsupportedOperationException(method.getName());
+        }
+        
+    });
+    
+    /**
+     * Tests that streaming installs a {@link ChunkedWriteHandler} right in front of the {@link ProtocolHandler}.
+     * 
+     * @throws LifecycleException should not happen
+     */
+    @Test
+    public void install() throws LifecycleException {
+        unit.setEnabled(true);
+        unit.initialize();
+        
+        final ChannelPipeline pipeline = Channels.pipeline();
+        pipeline.addLast("decoder", new SimpleChannelUpstreamHandler());
+        pipeline.addLast("protocol", new ProtocolHandler(manager, Collections.<Protocol>emptyList()));
+        unit.install(pipeline);
+        Assert.assertTrue(pipeline.get(StreamingStage.NAME) instanceof ChunkedWriteHandler);
+        Assert.assertEquals(Arrays.asList("decoder", StreamingStage.NAME, "protocol"), pipeline.getNames());
+    }
+    
+    /**
+     * Tests that streaming is rejected in combination with pipelining.
+     * 
+     * @throws LifecycleException should not happen
+     */
+    @Test(expected = IllegalStateException.class)
+    public void pipelining() throws LifecycleException {
+        unit.setEnabled(true);
+        unit.setPipelining(true);
+        unit.initialize();
+    }
+    
+    /**
+     * Tests that pipelining alone is accepted if streaming is disabled.
+     * 
+     * @throws LifecycleException should not happen
+     */
+    @Test
+    public void pipeliningWithoutStreaming() throws LifecycleException {
+        unit.setPipelining(true);
+        unit.initialize();
+        
+        final ChannelPipeline pipeline = Channels.pipeline();
+        pipeline.addLast("protocol", new ProtocolHandler(manager, Collections.<Protocol>emptyList()));
+        unit.install(pipeline);
+        Assert.assertNull(pipeline.get(StreamingStage.NAME));
+    }
+    
+}
@@ -0,0 +1,138 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests {@link VirtualOioServerSocketChannelFactory}.
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+public final class VirtualOioServerSocketChannelFactoryTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    
+    private final ExecutorService boss = Executors.newCachedThreadPool();
+    
+    private final BlockingQueue<String> received = new LinkedBlockingQueue<String>();
+    
+    private final BlockingQueue<Channel> suspended = new LinkedBlockingQueue<Channel>();
+    
+    private final AtomicInteger messages = new AtomicInteger();
+    
+    private ServerBootstrap bootstrap;
+    
+    private Channel server;
+    
+    /**
+     * Closes the server and releases its threads.
+     */
+    @After
+    public void close() {
+        if (server != null) {
+            server.close().awaitUninterruptibly();
+        }
+        if (bootstrap != null) {
+            bootstrap.releaseExternalResources();
+        }
+    }
+    
+    private InetSocketAddress bind() throws Exception {
+        final VirtualOioServerSocketChannelFactory factory = new VirtualOioServerSocketChannelFactory(boss);
+        factory.initialize();
+        bootstrap = new ServerBootstrap(factory);
+        bootstrap.getPipeline().addLast("echo", new SimpleChannelUpstreamHandler() {
+            
+            @Override
+            public void messageReceived(ChannelHandlerContext context, MessageEvent event) {
+                final ChannelBuffer buffer = (ChannelBuffer) event.getMessage();
+                final Channel channel = event.getChannel();
+                received.add(buffer.toString(UTF_8));
+                channel.write(buffer);
+                if (messages.incrementAndGet() == 1) {
+                    channel.setReadable(false);
+                    suspended.add(channel);
+                }
+            }
+            
+        });
+        server = bootstrap.bind(new InetSocketAddress("127.0.0.1", 0));
+        return (InetSocketAddress) server.getLocalAddress();
+    }
+    
+    private void send(SocketChannel client, String message) throws IOException {
+        client.write(ByteBuffer.wrap(message.getBytes(UTF_8)));
+    }
+    
+    private String receive(SocketChannel client, int length) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (client.read(buffer) < 0) throw new IOException("Unexpected end of stream");
+        }
+        return new String(buffer.array(), UTF_8);
+    }
+    
+    /**
+     * Tests a round trip in which reads are suspended and resumed in between.
+     * 
+     * @throws Exception should not happen
+     */
+    @Test
+    public void suspendAndResume() throws Exception {
+        final SocketChannel client = SocketChannel.open(bind());
+        try {
+            send(client, "first");
+            Assert.assertEquals("first", receive(client, 5));
+            Assert.assertEquals("first", received.take());
+            final Channel channel = suspended.take();
+            
+            send(client, "second");
+            Assert.assertNull(received.poll(200, TimeUnit.MILLISECONDS));
+            Assert.assertTrue(channel.isOpen());
+            
+            channel.setReadable(true);
+            Assert.assertEquals("second", receive(client, 6));
+            Assert.assertEquals("second", received.take());
+            Assert.assertTrue(channel.isOpen());
+        } finally {
+            client.close();
+        }
+    }
+    
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.cosmocode.palava.ipc.netty;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ * Tests {@link VirtualThreads}.
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+public final class VirtualThreadsTest {
+
+    /**
+     * Tests that the platform thread fallback never runs more threads than allowed
+     * and queues surplus tasks instead.
+     * 
+     * @throws InterruptedException should not happen
+     */
+    @Test
+    public void boundedFallback() throws InterruptedException {
+        Assume.assumeTrue(!VirtualThreads.isAvailable());
+        
+        final ExecutorService unit = VirtualThreads.newThreadPerTaskExecutor("bounded", 2);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch completed = new CountDownLatch(10);
+        try {
+            for (int i = 0; i < 10; i++) {
+                unit.execute(new Runnable() {
+                    
+                    @Override
+                    public void run() {
+                        final int current = running.incrementAndGet();
+                        while (true) {
+                            final int max = maxRunning.get();
+                            if (current <= max || maxRunning.compareAndSet(max, current)) break;
+                        }
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        } finally {
+                            running.decrementAndGet();
+                            completed.countDown();
+                        }
+                    }
+                    
+                });
+            }
+            
+            Thread.sleep(100);
+            Assert.assertEquals(2, running.get());
+            release.countDown();
+            Assert.assertTrue(completed.await(10, TimeUnit.SECONDS));
+            Assert.assertEquals(2, maxRunning.get());
+        } finally {
+            unit.shutdownNow();
+        }
+    }
+    
+}
@@ -0,0 +1,257 @@
+/**
+ * Copyright 2010 CosmoCode GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.cosmocode.palava.ipc.netty;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelState;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.DownstreamMessageEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.UpstreamChannelStateEvent;
+import org.jboss.netty.channel.UpstreamMessageEvent;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.Timer;
+import org.jboss.netty.util.TimerTask;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Tests {@link WriteCoalescingHandler}.
+ *
+ * @since 2.0
+ * @author Willi Schoenborn
+ */
+public final class WriteCoalescingHandlerTest {
+
+    private static final int MAX_BYTES = 16;
+    
+    private final List<TimerTask> scheduled = Lists.newArrayList();
+    
+    private final List<MessageEvent> sent = Lists.newArrayList();
+    
+    private volatile Runnable beforeSend;
+    
+    private final Timer timer = Proxies.of(Timer.class, new InvocationHandler() {
+        
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            if ("newTimeout".equals(method.getName())) {
+                final TimerTask task = (TimerTask) args[0];
+                scheduled.add(task);
+                return Proxies.of(Timeout.class, new InvocationHandler() {
+                    
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if ("cancel".equals(method.getName())) {
+                            scheduled.remove(task);
+                            return null;
+                        } else {
+                            throw new UnsupportedOperationException(method.getName());
+                        }
+                    }
+                    
+                });
+            } else {
+                throw new UnsupportedOperationException(method.getName());
+            }
+        }
+        
+    });
+    
+    private final WriteCoalescingHandler unit = new WriteCoalescingHandler(timer, 1, TimeUnit.MILLISECONDS, MAX_BYTES);
+    
+    private final Channel channel = Proxies.of(Channel.class, new InvocationHandler() {
+        
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            if ("getRemoteAddress".equals(method.getName())) {
+                return null;
+            } else {
+                throw new UnsupportedOperationException(method.getName());
+            }
+        }
+        
+    });
+    
+    private final ChannelHandlerContext context = Proxies.of(ChannelHandlerContext.class, new InvocationHandler() {
+        
+        private Object attachment;
+        
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Exception {
+            if ("getAttachment".equals(method.getName())) {
+                return attachment;
+            } else if ("setAttachment".equals(method.getName())) {
+                attachment = args[0];
+                return null;
+            } else if ("getChannel".equals(method.getName())) {
+                return channel;
+            } else if ("sendUpstream".equals(method.getName())) {
+                if (args[0] instanceof MessageEvent) {
+                    // simulates a protocol answering a request with two writes
+                    write("ab");
+                    write("cd");
+                }
+                return null;
+            } else if ("sendDownstream".equals(method.getName())) {
+                if (beforeSend != null) {
+                    beforeSend.run();
+                }
+                sent.add((MessageEvent) args[0]);
+                return null;
+            } else {
+                throw new UnsupportedOperationException(method.getName());
+            }
+        }
+        
+    });
+    
+    private ChannelFuture write(String message) throws Exception {
+        final ChannelFuture future = Channels.future(channel);
+        unit.handleDownstream(context, new DownstreamMessageEvent(
+            channel, future, ChannelBuffers.wrappedBuffer(message.getBytes()), null));
+        return future;
+    }
+    
+    private String sent(int index) {
+        final ChannelBuffer buffer = (ChannelBuffer) sent.get(index).getMessage();
+        return buffer.toString(Charset.forName("US-ASCII"));
+    }
+    
+    /**
+     * Opens the channel.
+     * 
+     * @throws Exception should not happen
+     */
+    @Before
+    public void open() throws Exception {
+        unit.handleUpstream(context, new UpstreamChannelStateEvent(channel, ChannelState.OPEN, Boolean.TRUE));
+    }
+    
+    /**
+     * Tests that writes are held back until the delay expired and then written at once.
+     * 
+     * @throws Exception should not happen
+     */
+    @Test
+    public void delay() throws Exception {
+        final ChannelFuture first = write("ab");
+        final ChannelFuture second = write("cd");
+        Assert.assertTrue(sent.isEmpty());
+        Assert.assertEquals(1, scheduled.size());
+        
+        scheduled.get(0).run(null);
+        Assert.assertEquals(1, sent.size());
+        Assert.assertEquals("abcd", sent(0));
+        Assert.assertTrue(scheduled.isEmpty());
+        
+        Assert.assertFalse(first.isDone());
+        sent.get(0).getFuture().setSuccess();
+        Assert.assertTrue(first.isSuccess());
+        Assert.assertTrue(second.isSuccess());
+        Assert.assertEquals(1, unit.getBatches());
+        Assert.assertEquals(2, unit.getWrites());
+    }
+    
+    /**
+     * Tests that writes are flushed as soon as the byte limit is reached.
+     * 
+     * @throws Exception should not happen
+     */
+    @Test
+    public void maxBytes() throws Exception {
+        write("0123456789");
+        Assert.assertTrue(sent.isEmpty());
+        write("abcdef");
+        Assert.assertEquals(1, sent.size());
+        Assert.assertEquals("0123456789abcdef", sent(0));
+        Assert.assertTrue(scheduled.isEmpty());
+    }
+    
+    /**
+     * Tests that writes issued while reading are flushed at the end of the read, without a timer.
+     * 
+     * @throws Exception should not happen
+     */
+    @Test
+    public void readCycle() throws Exception {
+        unit.handleUpstream(context, new UpstreamMessageEvent(channel, ChannelBuffers.EMPTY_BUFFER, null));
+        Assert.assertEquals(1, sent.size());
+        Assert.assertEquals("abcd", sent(0));
+        Assert.assertTrue(scheduled.isEmpty());
+    }
+    
+    /**
+     * Tests that writes on other threads are accepted while a batch is being sent,
+     * i.e. that sending does not hold the lock of the batch.
+     * 
+     * @throws Exception should not happen
+     */
+    @Test(timeout = 10000)
+    public void sendWithoutLock() throws Exception {
+        final AtomicBoolean written = new AtomicBoolean();
+        beforeSend = new Runnable() {
+            
+            @Override
+            public void run() {
+                beforeSend = null;
+                final Thread other = new Thread(new Runnable() {
+                    
+                    @Override
+                    public void run() {
+                        try {
+                            write("ef");
+                            written.set(true);
+                        } catch (Exception e) {
+                            throw new IllegalStateException(e);
+                        }
+                    }
+                    
+                });
+                other.start();
+                try {
+                    other.join(5000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            
+        };
+        
+        write("0123456789abcdef");
+        Assert.assertTrue(written.get());
+        Assert.assertEquals(1, sent.size());
+        Assert.assertEquals("0123456789abcdef", sent(0));
+        Assert.assertEquals(1, scheduled.size());
+    }
+    
+}